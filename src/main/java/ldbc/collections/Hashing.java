@@ -0,0 +1,68 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.collections;
+
+/**
+ * Hashing helpers shared by the open-addressing collections of this
+ * package.
+ */
+final class Hashing {
+
+    /** The largest table capacity (a power of two). */
+    static final int maxCapacity = 1 << 30;
+
+    /** The fraction of the slots we let fill up before doubling a table. */
+    static final float loadFactor = 0.5f;
+
+    /** A minimal constructor. */
+    private Hashing() {}
+
+    /**
+     * Scramble the bits of a key so nearby identifiers spread over the table.
+     * @param key  A key
+     * @return a well mixed hash code for the given key
+     */
+    static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+
+    /**
+     * Compute the table capacity needed to hold some number of keys.
+     * @param expectedSize  The number of keys expected
+     * @return a power of two large enough to hold the given number of keys without resizing
+     */
+    static int capacityFor(int expectedSize) {
+        long needed = (long)Math.ceil(Math.max(expectedSize, 2) / loadFactor);
+        if (needed > maxCapacity)
+            return maxCapacity;
+        int capacity = 4;
+        while (capacity < needed)
+            capacity <<= 1;
+        return capacity;
+    }
+
+    /**
+     * Compute the number of keys a table may hold before it must grow.
+     * @param capacity  The table capacity
+     * @return the largest number of keys the table may hold
+     */
+    static int thresholdFor(int capacity) {
+        return (int)(capacity * (capacity == maxCapacity ? 0.9f : loadFactor));
+    }
+
+    /**
+     * Compute the capacity of a table after it grows.
+     * @param capacity  The current table capacity
+     * @return the next table capacity
+     * @throws IllegalStateException if the table cannot grow any further
+     */
+    static int grow(int capacity) {
+        if (capacity == maxCapacity)
+            throw new IllegalStateException("Hash table is full");
+        return capacity << 1;
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.collections;
+
+import java.util.Arrays;
+
+/**
+ * The Long2LongHashMap class implements a map from primitive longs to
+ * primitive longs.
+ *
+ * <p>Like {@link LongHashSet}, it probes two parallel arrays of keys
+ * and values linearly, uses zero to mark a free slot, and keeps the
+ * entry for the key zero, if any, on the side.  Entries cannot be
+ * removed individually.
+ */
+public class Long2LongHashMap {
+    private long[] keys;
+    private long[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+    private boolean hasZero;
+    private long zeroValue;
+
+    /** Construct an empty map with a small default capacity. */
+    public Long2LongHashMap() {
+        this(8);
+    }
+
+    /**
+     * Construct an empty map.
+     * @param expectedSize  The number of entries expected
+     */
+    public Long2LongHashMap(int expectedSize) {
+        allocate(Hashing.capacityFor(expectedSize));
+    }
+
+    /**
+     * Return the value associated with a key.
+     * @param key           A key
+     * @param defaultValue  The value to return if the key is absent
+     * @return the value associated with the given key or the default value if none
+     */
+    public long get(long key, long defaultValue) {
+        if (key == 0)
+            return hasZero ? zeroValue : defaultValue;
+        int i = Hashing.mix(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key)
+                return values[i];
+            i = (i + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Return true if this map contains an entry for the given key.
+     * @param key  A key
+     * @return true if this map contains an entry for the given key
+     */
+    public boolean containsKey(long key) {
+        if (key == 0)
+            return hasZero;
+        int i = Hashing.mix(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key)
+                return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Associate a value with a key.
+     * @param key    A key
+     * @param value  The value to associate with the key
+     */
+    public void put(long key, long value) {
+        if (key == 0) {
+            if (!hasZero) {
+                hasZero = true;
+                ++size;
+            }
+            zeroValue = value;
+            return;
+        }
+        int i = slot(key);
+        if (keys[i] == key) {
+            values[i] = value;
+            return;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold)
+            rehash(Hashing.grow(keys.length));
+    }
+
+    /**
+     * Return the number of entries in this map.
+     * @return the number of entries in this map
+     */
+    public int size() { return size; }
+
+    /**
+     * Return true if this map is empty.
+     * @return true if this map contains no entries
+     */
+    public boolean isEmpty() { return size == 0; }
+
+    /** Remove all the entries from this map. */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZero = false;
+        size = 0;
+    }
+
+    /**
+     * Return a cursor over the entries of this map.
+     *
+     * <p>The cursor starts before the first entry.  The map must not
+     * change while the cursor is in use.
+     *
+     * @return a cursor over the entries of this map in no particular order
+     */
+    public Cursor cursor() { return new Cursor(); }
+
+    /**
+     * A cursor over the entries of a Long2LongHashMap.
+     */
+    public class Cursor {
+        // -1 stands for the entry of the key zero.
+        private int index = -2;
+
+        /** A minimal constructor. */
+        private Cursor() {}
+
+        /**
+         * Move to the next entry.
+         * @return true if there is a next entry
+         */
+        public boolean next() {
+            if (index == -2) {
+                index = -1;
+                if (hasZero)
+                    return true;
+            }
+            while (++index < keys.length)
+                if (keys[index] != 0)
+                    return true;
+            return false;
+        }
+
+        /**
+         * Return the key of the current entry.
+         * @return the key of the current entry
+         */
+        public long key() { return index == -1 ? 0 : keys[index]; }
+
+        /**
+         * Return the value of the current entry.
+         * @return the value of the current entry
+         */
+        public long value() { return index == -1 ? zeroValue : values[index]; }
+    }
+
+    // Find the slot holding the given (non-zero) key or the free slot
+    // where it belongs.
+    private int slot(long key) {
+        int i = Hashing.mix(key) & mask;
+        while (keys[i] != 0 && keys[i] != key)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+        threshold = Hashing.thresholdFor(capacity);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = slot(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+}
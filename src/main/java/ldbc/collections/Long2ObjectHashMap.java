@@ -0,0 +1,210 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.collections;
+
+import java.util.Arrays;
+
+/**
+ * The Long2ObjectHashMap class implements a map from primitive longs
+ * to objects.
+ *
+ * <p>Like {@link Long2IntHashMap}, it probes two parallel arrays of
+ * keys and values linearly, uses zero to mark a free slot, and keeps
+ * the entry for the key zero, if any, on the side.  Entries cannot be
+ * removed individually.  Null values are not allowed.
+ *
+ * @param <V>  The type of the values
+ */
+public class Long2ObjectHashMap<V> {
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+    private int threshold;
+    private boolean hasZero;
+    private V zeroValue;
+
+    /** Construct an empty map with a small default capacity. */
+    public Long2ObjectHashMap() {
+        this(8);
+    }
+
+    /**
+     * Construct an empty map.
+     * @param expectedSize  The number of entries expected
+     */
+    public Long2ObjectHashMap(int expectedSize) {
+        allocate(Hashing.capacityFor(expectedSize));
+    }
+
+    /**
+     * Return the value associated with a key.
+     * @param key  A key
+     * @return the value associated with the given key or null if none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if (key == 0)
+            return hasZero ? zeroValue : null;
+        int i = Hashing.mix(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key)
+                return (V)values[i];
+            i = (i + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * Return true if this map contains an entry for the given key.
+     * @param key  A key
+     * @return true if this map contains an entry for the given key
+     */
+    public boolean containsKey(long key) {
+        if (key == 0)
+            return hasZero;
+        int i = Hashing.mix(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key)
+                return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Associate a value with a key.
+     * @param key    A key
+     * @param value  The value to associate with the key (not null)
+     * @return the value previously associated with the given key or null if none
+     * @throws NullPointerException if the value is null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        if (key == 0) {
+            V previous = zeroValue;
+            if (!hasZero) {
+                hasZero = true;
+                ++size;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int i = slot(key);
+        if (keys[i] == key) {
+            V previous = (V)values[i];
+            values[i] = value;
+            return previous;
+        }
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold)
+            rehash(Hashing.grow(keys.length));
+        return null;
+    }
+
+    /**
+     * Return the number of entries in this map.
+     * @return the number of entries in this map
+     */
+    public int size() { return size; }
+
+    /**
+     * Return true if this map is empty.
+     * @return true if this map contains no entries
+     */
+    public boolean isEmpty() { return size == 0; }
+
+    /** Remove all the entries from this map. */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        Arrays.fill(values, null);
+        hasZero = false;
+        zeroValue = null;
+        size = 0;
+    }
+
+    /**
+     * Return a cursor over the entries of this map.
+     *
+     * <p>The cursor starts before the first entry.  The map must not
+     * change while the cursor is in use.
+     *
+     * @return a cursor over the entries of this map in no particular order
+     */
+    public Cursor cursor() { return new Cursor(); }
+
+    /**
+     * A cursor over the entries of a Long2ObjectHashMap.
+     */
+    public class Cursor {
+        // -1 stands for the entry of the key zero.
+        private int index = -2;
+
+        /** A minimal constructor. */
+        private Cursor() {}
+
+        /**
+         * Move to the next entry.
+         * @return true if there is a next entry
+         */
+        public boolean next() {
+            if (index == -2) {
+                index = -1;
+                if (hasZero)
+                    return true;
+            }
+            while (++index < keys.length)
+                if (keys[index] != 0)
+                    return true;
+            return false;
+        }
+
+        /**
+         * Return the key of the current entry.
+         * @return the key of the current entry
+         */
+        public long key() { return index == -1 ? 0 : keys[index]; }
+
+        /**
+         * Return the value of the current entry.
+         * @return the value of the current entry
+         */
+        @SuppressWarnings("unchecked")
+        public V value() { return index == -1 ? zeroValue : (V)values[index]; }
+    }
+
+    // Find the slot holding the given (non-zero) key or the free slot
+    // where it belongs.
+    private int slot(long key) {
+        int i = Hashing.mix(key) & mask;
+        while (keys[i] != 0 && keys[i] != key)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = Hashing.thresholdFor(capacity);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = slot(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.collections;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The LongArrayDeque class implements a double-ended queue of
+ * primitive longs.
+ *
+ * <p>The elements live in a circular array whose capacity is a power
+ * of two and doubles as needed.  Besides queue operations, the class
+ * supports indexed access so breadth-first searches can also use it
+ * as a growable list of the persons at some distance.
+ */
+public class LongArrayDeque {
+    private long[] elements;
+    private int head;
+    private int size;
+
+    /** Construct an empty deque with a small default capacity. */
+    public LongArrayDeque() {
+        this(16);
+    }
+
+    /**
+     * Construct an empty deque.
+     * @param expectedSize  The number of elements expected
+     */
+    public LongArrayDeque(int expectedSize) {
+        int capacity = 4;
+        while (capacity < expectedSize && capacity < Hashing.maxCapacity)
+            capacity <<= 1;
+        elements = new long[capacity];
+    }
+
+    /**
+     * Insert an element at the front of this deque.
+     * @param element  An element
+     */
+    public void addFirst(long element) {
+        if (size == elements.length)
+            grow();
+        head = (head - 1) & (elements.length - 1);
+        elements[head] = element;
+        ++size;
+    }
+
+    /**
+     * Insert an element at the end of this deque.
+     * @param element  An element
+     */
+    public void addLast(long element) {
+        if (size == elements.length)
+            grow();
+        elements[(head + size) & (elements.length - 1)] = element;
+        ++size;
+    }
+
+    /**
+     * Insert an element at the end of this deque.
+     * @param element  An element
+     */
+    public void add(long element) { addLast(element); }
+
+    /**
+     * Insert some elements at the end of this deque.
+     * @param array  Some elements
+     */
+    public void addAll(long[] array) {
+        for (long element : array)
+            addLast(element);
+    }
+
+    /**
+     * Remove the element at the front of this deque.
+     * @return the element at the front of this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public long removeFirst() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        long element = elements[head];
+        head = (head + 1) & (elements.length - 1);
+        --size;
+        return element;
+    }
+
+    /**
+     * Remove the element at the end of this deque.
+     * @return the element at the end of this deque
+     * @throws NoSuchElementException if this deque is empty
+     */
+    public long removeLast() {
+        if (size == 0)
+            throw new NoSuchElementException();
+        --size;
+        return elements[(head + size) & (elements.length - 1)];
+    }
+
+    /**
+     * Return the element at the given position.
+     * @param index  The element's position from the front of this deque
+     * @return the element at the given position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public long get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return elements[(head + index) & (elements.length - 1)];
+    }
+
+    /**
+     * Return the number of elements in this deque.
+     * @return the number of elements in this deque
+     */
+    public int size() { return size; }
+
+    /**
+     * Return true if this deque is empty.
+     * @return true if this deque contains no elements
+     */
+    public boolean isEmpty() { return size == 0; }
+
+    /** Remove all the elements from this deque. */
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    /**
+     * Return the elements of this deque.
+     * @return a new array holding the elements of this deque from front to end
+     */
+    public long[] toArray() {
+        long[] array = new long[size];
+        int first = Math.min(size, elements.length - head);
+        System.arraycopy(elements, head, array, 0, first);
+        System.arraycopy(elements, 0, array, first, size - first);
+        return array;
+    }
+
+    private void grow() {
+        if (elements.length == Hashing.maxCapacity)
+            throw new IllegalStateException("Deque is full");
+        long[] grown = toArray();
+        elements = new long[elements.length << 1];
+        System.arraycopy(grown, 0, elements, 0, size);
+        head = 0;
+    }
+
+}
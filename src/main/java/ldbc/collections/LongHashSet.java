@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.collections;
+
+import java.util.Arrays;
+
+/**
+ * The LongHashSet class implements a set of primitive longs.
+ *
+ * <p>Unlike a HashSet&lt;Long&gt;, it neither boxes its keys nor
+ * allocates a node per key: the keys live in a single array probed
+ * linearly (open addressing).  Zero marks a free slot, so we track
+ * whether the set holds the key zero separately.  Keys cannot be
+ * removed individually; the queries using this class only ever grow
+ * their sets.
+ */
+public class LongHashSet {
+    private long[] keys;
+    private int mask;
+    private int size;
+    private int threshold;
+    private boolean hasZero;
+
+    /** Construct an empty set with a small default capacity. */
+    public LongHashSet() {
+        this(8);
+    }
+
+    /**
+     * Construct an empty set.
+     * @param expectedSize  The number of keys expected
+     */
+    public LongHashSet(int expectedSize) {
+        allocate(Hashing.capacityFor(expectedSize));
+    }
+
+    /**
+     * Add a key to this set.
+     * @param key  A key
+     * @return true if the set did not already contain the given key
+     */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (hasZero)
+                return false;
+            hasZero = true;
+            ++size;
+            return true;
+        }
+        int i = Hashing.mix(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key)
+                return false;
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        if (++size > threshold)
+            rehash(Hashing.grow(keys.length));
+        return true;
+    }
+
+    /**
+     * Return true if this set contains the given key.
+     * @param key  A key
+     * @return true if this set contains the given key
+     */
+    public boolean contains(long key) {
+        if (key == 0)
+            return hasZero;
+        int i = Hashing.mix(key) & mask;
+        while (keys[i] != 0) {
+            if (keys[i] == key)
+                return true;
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * Return the number of keys in this set.
+     * @return the number of keys in this set
+     */
+    public int size() { return size; }
+
+    /**
+     * Return true if this set is empty.
+     * @return true if this set contains no keys
+     */
+    public boolean isEmpty() { return size == 0; }
+
+    /** Remove all the keys from this set. */
+    public void clear() {
+        Arrays.fill(keys, 0);
+        hasZero = false;
+        size = 0;
+    }
+
+    /**
+     * Return the keys of this set.
+     * @return a new array holding the keys of this set in no particular order
+     */
+    public long[] toArray() {
+        long[] array = new long[size];
+        int n = 0;
+        if (hasZero)
+            array[n++] = 0;
+        for (long key : keys)
+            if (key != 0)
+                array[n++] = key;
+        return array;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        mask = capacity - 1;
+        threshold = Hashing.thresholdFor(capacity);
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        allocate(capacity);
+        for (long key : oldKeys) {
+            if (key != 0) {
+                int i = Hashing.mix(key) & mask;
+                while (keys[i] != 0)
+                    i = (i + 1) & mask;
+                keys[i] = key;
+            }
+        }
+    }
+
+}
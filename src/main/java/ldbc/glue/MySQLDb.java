@@ -69,6 +69,7 @@ import com.zaxxer.hikari.HikariDataSource;
 
 import java.io.IOException;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 
 import java.util.Map;
@@ -76,12 +77,28 @@ import java.util.List;
 
 import ldbc.queries.*;
 
+import ldbc.utils.ConnectedComponents;
+import ldbc.utils.ConnectionSettings;
+import ldbc.utils.DimensionCache;
+import ldbc.utils.EgoNetworkCache;
+import ldbc.utils.KnowsGraph;
+import ldbc.utils.LandmarkIndex;
+import ldbc.utils.MessageCache;
+import ldbc.utils.PersonCache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * The MySQLDB class interfaces between the LDBC driver and this
  * MySQL-based LDBC SNB implementation.
  */
 public class MySQLDb extends Db {
 
+    // The driver we build against does not hand us its logging
+    // service, so we log alongside the connection pool.
+    private static final Logger logger = LoggerFactory.getLogger(MySQLDb.class);
+
     private MySQLDbConnectionState state = null;
 
     @Override
@@ -121,7 +138,121 @@ public class MySQLDb extends Db {
         registerOperationHandler(LdbcUpdate7AddComment.class, UpdateQuery7Handler.class);
         registerOperationHandler(LdbcUpdate8AddFriendship.class, UpdateQuery8Handler.class);
 
-        state = new MySQLDbConnectionState(properties.get("url"), properties.get("user"), properties.get("password"));
+        /* Size the pool and tune Connector/J. */
+        ConnectionSettings settings;
+        try {
+            settings = new ConnectionSettings(properties);
+        }
+        catch (IllegalArgumentException e) {
+            throw new DbException(e.getMessage());
+        }
+        logger.info("{}", settings);
+
+        state = new MySQLDbConnectionState(properties.get("url"), properties.get("user"), properties.get("password"), settings);
+
+        /* Cache the dimensions no update query changes. */
+        try (Connection c = state.getClient().getConnection()) {
+            DimensionCache.setCurrent(DimensionCache.load(c));
+            c.commit();
+        }
+        catch (SQLException e) {
+            throw new DbException(e.getMessage());
+        }
+
+        /* Take an in-memory snapshot of the Knows relationship unless told otherwise. */
+        if (!"false".equals(properties.get("useKnowsGraph"))) {
+            /* Map the bulk loader's snapshot file if told to; take a snapshot from the database otherwise. */
+            if (properties.get("knowsGraphFile") != null) {
+                try {
+                    KnowsGraph.setCurrent(KnowsGraph.open(properties.get("knowsGraphFile")));
+                }
+                catch (IOException e) {
+                    throw new DbException(e.getMessage());
+                }
+            }
+            else {
+                try (Connection c = state.getClient().getConnection()) {
+                    KnowsGraph.setCurrent(KnowsGraph.load(c));
+                    c.commit();
+                }
+                catch (SQLException e) {
+                    throw new DbException(e.getMessage());
+                }
+            }
+        }
+
+        /* Index the connected components of the Knows relationship unless told otherwise. */
+        if (!"false".equals(properties.get("useConnectedComponents"))) {
+            KnowsGraph graph = KnowsGraph.current();
+            if (graph != null)
+                ConnectedComponents.setCurrent(ConnectedComponents.build(graph));
+            else {
+                try (Connection c = state.getClient().getConnection()) {
+                    ConnectedComponents.setCurrent(ConnectedComponents.load(c));
+                    c.commit();
+                }
+                catch (SQLException e) {
+                    throw new DbException(e.getMessage());
+                }
+            }
+        }
+
+        /* Compute the landmark distances over the in-memory Knows graph, if any. */
+        if (KnowsGraph.current() != null) {
+            int landmarkCount = LandmarkIndex.defaultLandmarkCount;
+            if (properties.get("landmarkCount") != null) {
+                try {
+                    landmarkCount = Integer.parseInt(properties.get("landmarkCount"));
+                }
+                catch (NumberFormatException e) {
+                    throw new DbException("landmarkCount: " + e.getMessage());
+                }
+            }
+            if (landmarkCount > 0)
+                LandmarkIndex.setCurrent(LandmarkIndex.build(KnowsGraph.current(), landmarkCount));
+        }
+
+        /* Size the cache of friends and friends of friends. */
+        if (properties.get("egoNetworkCacheSize") != null) {
+            try {
+                EgoNetworkCache.setCurrent(new EgoNetworkCache(Long.parseLong(properties.get("egoNetworkCacheSize"))));
+            }
+            catch (NumberFormatException e) {
+                throw new DbException("egoNetworkCacheSize: " + e.getMessage());
+            }
+        }
+
+        /* Size the cache of person profiles. */
+        if (properties.get("personCacheSize") != null) {
+            int personCacheSize;
+            try {
+                personCacheSize = Integer.parseInt(properties.get("personCacheSize"));
+            }
+            catch (NumberFormatException e) {
+                throw new DbException("personCacheSize: " + e.getMessage());
+            }
+            if (personCacheSize < 0)
+                throw new DbException("personCacheSize: Less than 0: " + personCacheSize);
+            PersonCache.setCurrent(new PersonCache(personCacheSize));
+        }
+
+        /* Size the cache of message creators and parents. */
+        if (properties.get("messageCacheBudget") != null) {
+            try {
+                MessageCache.setCurrent(new MessageCache(Long.parseLong(properties.get("messageCacheBudget"))));
+            }
+            catch (NumberFormatException e) {
+                throw new DbException("messageCacheBudget: " + e.getMessage());
+            }
+        }
+
+        /* Prepare the statements of every operation on every connection. */
+        try {
+            state.prepareSessions();
+        }
+        catch (SQLException e) {
+            throw new DbException(e.getMessage());
+        }
     }
 
     @Override
@@ -11,7 +11,19 @@ import com.zaxxer.hikari.HikariDataSource;
 
 import java.io.IOException;
 
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import ldbc.queries.*;
+
+import ldbc.utils.ConnectionSettings;
 import ldbc.utils.Db;
+import ldbc.utils.LdbcUtils;
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
 
 /**
  * The MySQLDbConnectionState class implements a connection manager
@@ -21,23 +33,24 @@ public class MySQLDbConnectionState extends DbConnectionState {
 
     private HikariDataSource client;
 
-    public MySQLDbConnectionState(String url, String user, String password) {
+    /**
+     * Construct a connection manager.
+     * @param url       A database URL
+     * @param user      The database user on whose behalf the connections are made
+     * @param password  The user's password
+     * @param settings  The settings of the pool and of Connector/J
+     */
+    public MySQLDbConnectionState(String url, String user, String password, ConnectionSettings settings) {
         HikariConfig config = new HikariConfig();
         config.setJdbcUrl(url);
         config.setUsername(user);
         config.setPassword(password);
         config.setAutoCommit(false);
-        config.addDataSourceProperty("cachePrepStmts", true);
-        config.addDataSourceProperty("prepStmts", true);
-        config.addDataSourceProperty("prepStmtCacheSize", 250);
-        config.addDataSourceProperty("dataSource.prepStmtCacheSqlLimit", 2048);
-        config.addDataSourceProperty("dataSource.useServerPrepStmts", true);
-        config.addDataSourceProperty("dataSource.useLocalSessionState", true);
-        config.addDataSourceProperty("dataSource.rewriteBatchedStatements", true);
-        config.addDataSourceProperty("dataSource.cacheResultSetMetadata", true);
-        config.addDataSourceProperty("dataSource.cacheServerConfiguration", true);
-        config.addDataSourceProperty("dataSource.elideSetAutoCommits", true);
-        config.addDataSourceProperty("dataSource.maintainTimeStats", false);
+        config.setMaximumPoolSize(settings.poolSize());
+        config.setMinimumIdle(settings.minimumIdle());
+        Properties properties = settings.connectorProperties();
+        for (String name : properties.stringPropertyNames())
+            config.addDataSourceProperty(name, properties.getProperty(name));
 
         client = new HikariDataSource(config);
     }
@@ -46,6 +59,62 @@ public class MySQLDbConnectionState extends DbConnectionState {
         return client;
     }
 
+    /**
+     * Open a session on every connection of the pool, preparing the
+     * statements of all 29 operations and of the LdbcUtils helpers.
+     *
+     * <p>We hold all the connections of the pool at once, so the pool
+     * has to open each of them and we prepare the statements of every
+     * one before the first operation runs.
+     * @throws SQLException if a database access error occurs
+     */
+    public void prepareSessions() throws SQLException {
+        StatementCache.prepareUpFront(Query1.preparedQueries);
+        StatementCache.prepareUpFront(Query2.preparedQueries);
+        StatementCache.prepareUpFront(Query3.preparedQueries);
+        StatementCache.prepareUpFront(Query4.preparedQueries);
+        StatementCache.prepareUpFront(Query5.preparedQueries);
+        StatementCache.prepareUpFront(Query6.preparedQueries);
+        StatementCache.prepareUpFront(Query7.preparedQueries);
+        StatementCache.prepareUpFront(Query8.preparedQueries);
+        StatementCache.prepareUpFront(Query9.preparedQueries);
+        StatementCache.prepareUpFront(Query10.preparedQueries);
+        StatementCache.prepareUpFront(Query11.preparedQueries);
+        StatementCache.prepareUpFront(Query12.preparedQueries);
+        StatementCache.prepareUpFront(Query13.preparedQueries);
+        StatementCache.prepareUpFront(Query14.preparedQueries);
+        StatementCache.prepareUpFront(ShortQuery1.preparedQueries);
+        StatementCache.prepareUpFront(ShortQuery2.preparedQueries);
+        StatementCache.prepareUpFront(ShortQuery3.preparedQueries);
+        StatementCache.prepareUpFront(ShortQuery4.preparedQueries);
+        StatementCache.prepareUpFront(ShortQuery5.preparedQueries);
+        StatementCache.prepareUpFront(ShortQuery6.preparedQueries);
+        StatementCache.prepareUpFront(ShortQuery7.preparedQueries);
+        StatementCache.prepareUpFront(UpdateQuery1.preparedQueries);
+        StatementCache.prepareUpFront(UpdateQuery2.preparedQueries);
+        StatementCache.prepareUpFront(UpdateQuery3.preparedQueries);
+        StatementCache.prepareUpFront(UpdateQuery4.preparedQueries);
+        StatementCache.prepareUpFront(UpdateQuery5.preparedQueries);
+        StatementCache.prepareUpFront(UpdateQuery6.preparedQueries);
+        StatementCache.prepareUpFront(UpdateQuery7.preparedQueries);
+        StatementCache.prepareUpFront(UpdateQuery8.preparedQueries);
+        StatementCache.prepareUpFront(LdbcUtils.preparedQueries());
+
+        List<Transaction> sessions = new ArrayList<>();
+        try {
+            for (int i = 0; i < client.getMaximumPoolSize(); i++) {
+                Transaction t = new Transaction(client);
+                sessions.add(t);
+                StatementCache.openSession(t.connection());
+                t.commit();
+            }
+        }
+        finally {
+            for (Transaction t : sessions)
+                t.close();
+        }
+    }
+
     @Override
     public void close() throws IOException {
     }
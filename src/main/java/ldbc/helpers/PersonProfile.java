@@ -0,0 +1,103 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.helpers;
+
+/**
+ * The PersonProfile class holds the attributes of a person stored in
+ * the Person table along with the city where they live.
+ *
+ * <p>No update query changes these attributes once the person exists,
+ * so PersonCache keeps profiles in memory for the queries that read
+ * persons over and over.
+ */
+public class PersonProfile {
+    private final long personId;
+    private final String firstName;
+    private final String lastName;
+    private final String gender;
+    private final long birthday;
+    private final long creationDate;
+    private final String locationIP;
+    private final String browserUsed;
+    private final long cityId;
+
+    /**
+     * Construct a PersonProfile object.
+     * @param personId      The person's unique identifier
+     * @param firstName     Their first name
+     * @param lastName      Their last name
+     * @param gender        Their gender
+     * @param birthday      Their birthday (milliseconds since the start of the epoch)
+     * @param creationDate  The creation date of their profile (milliseconds since the start of the epoch)
+     * @param locationIP    The IP address from which they created their profile
+     * @param browserUsed   The browser with which they created their profile
+     * @param cityId        The identifier of the city where they live or -1 if unknown
+     */
+    public PersonProfile(long personId, String firstName, String lastName, String gender, long birthday, long creationDate, String locationIP, String browserUsed, long cityId) {
+        this.personId = personId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.gender = gender;
+        this.birthday = birthday;
+        this.creationDate = creationDate;
+        this.locationIP = locationIP;
+        this.browserUsed = browserUsed;
+        this.cityId = cityId;
+    }
+
+    /**
+     * Return the person's identifier.
+     * @return the person's unique identifier
+     */
+    public long personId() { return personId; }
+
+    /**
+     * Return the person's first name.
+     * @return the person's first name
+     */
+    public String firstName() { return firstName; }
+
+    /**
+     * Return the person's last name.
+     * @return the person's last name
+     */
+    public String lastName() { return lastName; }
+
+    /**
+     * Return the person's gender.
+     * @return the person's gender
+     */
+    public String gender() { return gender; }
+
+    /**
+     * Return the person's birthday.
+     * @return the person's birthday (milliseconds since the start of the epoch)
+     */
+    public long birthday() { return birthday; }
+
+    /**
+     * Return the creation date of the person's profile.
+     * @return the creation date (milliseconds since the start of the epoch)
+     */
+    public long creationDate() { return creationDate; }
+
+    /**
+     * Return the IP address from which the person created their profile.
+     * @return an IP address
+     */
+    public String locationIP() { return locationIP; }
+
+    /**
+     * Return the browser with which the person created their profile.
+     * @return a browser's name
+     */
+    public String browserUsed() { return browserUsed; }
+
+    /**
+     * Return the city where the person lives.
+     * @return the identifier of the person's city or -1 if unknown
+     */
+    public long cityId() { return cityId; }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.helpers;
+
+/**
+ * The PersonSummary class holds the person attributes the queries
+ * most often need to decorate their results.
+ *
+ * <p>LdbcUtils.getPersonSummaries gets these attributes for many
+ * persons from the person cache, with one SQL query for those not
+ * cached rather than one per attribute and per person.
+ */
+public class PersonSummary {
+    private final long personId;
+    private final String firstName;
+    private final String lastName;
+    private final String gender;
+    private final String cityName;
+
+    /**
+     * Construct a PersonSummary object.
+     * @param personId   The person's unique identifier
+     * @param firstName  Their first name
+     * @param lastName   Their last name
+     * @param gender     Their gender
+     * @param cityName   The name of the city where they live
+     */
+    public PersonSummary(long personId, String firstName, String lastName, String gender, String cityName) {
+        this.personId = personId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.gender = gender;
+        this.cityName = cityName;
+    }
+
+    /**
+     * Return the person's identifier.
+     * @return the person's unique identifier
+     */
+    public long personId() { return personId; }
+
+    /**
+     * Return the person's first name.
+     * @return the person's first name or null if not found
+     */
+    public String firstName() { return firstName; }
+
+    /**
+     * Return the person's last name.
+     * @return the person's last name or null if not found
+     */
+    public String lastName() { return lastName; }
+
+    /**
+     * Return the person's gender.
+     * @return the person's gender or null if not found
+     */
+    public String gender() { return gender; }
+
+    /**
+     * Return the name of the city where the person lives.
+     * @return the name of the person's city or null if not found
+     */
+    public String cityName() { return cityName; }
+}
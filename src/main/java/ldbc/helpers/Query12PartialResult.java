@@ -4,14 +4,13 @@
 
 package ldbc.helpers;
 
-import java.util.Set;
-import java.util.TreeSet;
+import ldbc.collections.LongHashSet;
 
 /**
  * A temporary holder of one query 12 partial result.
  */
 public class Query12PartialResult {
-    private final Set<Long> tags;
+    private final LongHashSet tags;
     private int replyCount;
 
     /**
@@ -25,7 +24,7 @@ public class Query12PartialResult {
      * @param tagId      A tag's unique identifier
      */
     public Query12PartialResult(long tagId) {
-        this.tags = new TreeSet<>();
+        this.tags = new LongHashSet();
         this.tags.add(tagId);
         this.replyCount = 1;
     }
@@ -40,7 +39,7 @@ public class Query12PartialResult {
      * Return the tags associated to posts to which this friend replied.
      * @return the set of tags associated to posts to which this friend replied
      */
-    public Set<Long> tags() { return tags; }
+    public LongHashSet tags() { return tags; }
 
     /**
      * Increment the number of replies made by this friend.
@@ -4,15 +4,15 @@
 
 package ldbc.helpers;
 
-import java.util.List;
-
 /**
  * The Query1SortResult class defines a structure to hold one query 1
  * result temporarily.
  *
  * <p>We accumulate query 1 results temporarily in a priority queue
  * derived from this class.  We use a priority queue so we can easily
- * identify unneeded elements.
+ * identify unneeded elements.  It only holds the fields of the Person
+ * row itself; we look up the other details (emails, languages, and so
+ * on) once we know which friends make the cut.
  */
 public class Query1SortResult implements Comparable<Query1SortResult> {
     private final long friendId;
@@ -23,11 +23,6 @@ public class Query1SortResult implements Comparable<Query1SortResult> {
     private final String friendGender;
     private final String friendBrowserUsed;
     private final String friendLocationIP;
-    private final List<String> friendEmails;
-    private final List<String> friendLanguages;
-    private final String friendPlace;
-    private final List<List<Object>> friendSchools;
-    private final List<List<Object>> friendOrganizations;
 
     /**
      * Construct a Query1SortResult object.
@@ -39,18 +34,10 @@ public class Query1SortResult implements Comparable<Query1SortResult> {
      * @param friendGender              Their gender
      * @param friendBrowserUsed         The browser they used
      * @param friendLocationIP          Their IP address
-     * @param friendEmails              A list of their email addresses
-     * @param friendLanguages           A list of the languages they speak
-     * @param friendPlace               Their location
-     * @param friendSchools             A list of the schools they have attended
-     * @param friendOrganizations       A list of the organizations to which they have belonged
      */
     public Query1SortResult(long friendId, String friendLastName, int friendDistanceFromPerson,
                             long friendBirthday, long friendCreationDate, String friendGender,
-                            String friendBrowserUsed, String friendLocationIP,
-                            List<String> friendEmails, List<String> friendLanguages,
-                            String friendPlace, List<List<Object>> friendSchools,
-                            List<List<Object>> friendOrganizations) {
+                            String friendBrowserUsed, String friendLocationIP) {
         this.friendId = friendId;
         this.friendLastName = friendLastName;
         this.friendDistanceFromPerson = friendDistanceFromPerson;
@@ -59,11 +46,6 @@ public class Query1SortResult implements Comparable<Query1SortResult> {
         this.friendGender = friendGender;
         this.friendBrowserUsed = friendBrowserUsed;
         this.friendLocationIP = friendLocationIP;
-        this.friendEmails = friendEmails;
-        this.friendLanguages = friendLanguages;
-        this.friendPlace = friendPlace;
-        this.friendSchools = friendSchools;
-        this.friendOrganizations = friendOrganizations;
     }
 
     /**
@@ -114,36 +96,6 @@ public class Query1SortResult implements Comparable<Query1SortResult> {
      */
     public String friendLocationIP() { return friendLocationIP; }
 
-    /**
-     * Return the friend's emails.
-     * @return a list of this friend's emails
-     */
-    public List<String> friendEmails() { return friendEmails; }
-
-    /**
-     * Return the friend's spoken languages.
-     * @return a list of this friend's spoken languages
-     */
-    public List<String> friendLanguages() { return friendLanguages; }
-
-    /**
-     * Return the friend's location.
-     * @return the friend's location
-     */
-    public String friendPlace() { return friendPlace; }
-
-    /**
-     * Return the schools attended by this friend.
-     * @return a list of the schools attended by this friend
-     */
-    public List<List<Object>> friendSchools() { return friendSchools; }
-
-    /**
-     * Return the organizations to which this friend has belonged.
-     * @return a list of the organizations to which this friend has belonged
-     */
-    public List<List<Object>> friendOrganizations() { return friendOrganizations; }
-
     /**
      * Define a sort order for this class.
      *
@@ -14,23 +14,17 @@ package ldbc.helpers;
  */
 public class Query3SortResult implements Comparable<Query3SortResult> {
     private final long friendId;
-    private final String friendFirstName;
-    private final String friendLastName;
     private final long xCount;
     private final long yCount;
 
     /**
      * Construct a Query3SortResult object.
-     * @param friendId         The friend's unique identifier
-     * @param friendFirstName  Their first name
-     * @param friendLastName   Their last name
-     * @param xCount           Number of messages from country X made by this friend
-     * @param yCount           Number of messages from country Y made by this friend
+     * @param friendId  The friend's unique identifier
+     * @param xCount    Number of messages from country X made by this friend
+     * @param yCount    Number of messages from country Y made by this friend
      */
-    public Query3SortResult(long friendId, String friendFirstName, String friendLastName, long xCount, long yCount) {
+    public Query3SortResult(long friendId, long xCount, long yCount) {
         this.friendId = friendId;
-        this.friendFirstName = friendFirstName;
-        this.friendLastName = friendLastName;
         this.xCount = xCount;
         this.yCount = yCount;
     }
@@ -41,18 +35,6 @@ public class Query3SortResult implements Comparable<Query3SortResult> {
      */
     public long friendId() { return friendId; }
 
-    /**
-     * Return the friend's first name.
-     * @return the friend's first name
-     */
-    public String friendFirstName() { return friendFirstName; }
-
-    /**
-     * Return the friend's last name.
-     * @return the friend's last name
-     */
-    public String friendLastName() { return friendLastName; }
-
     /**
      * Return the number of message from country X made by this friend.
      * @return the number of message from country X made by this friend
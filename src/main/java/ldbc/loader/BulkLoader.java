@@ -4,33 +4,41 @@
 
 package ldbc.loader;
 
-import java.io.BufferedWriter;
+import com.mysql.cj.jdbc.JdbcStatement;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 import java.text.ParseException;
-import java.text.SimpleDateFormat;
 
-import java.util.Date;
-import java.util.regex.MatchResult;
-import java.util.regex.Pattern;
-import java.util.Scanner;
-import java.util.TimeZone;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ldbc.utils.Configuration;
 import ldbc.utils.Db;
+import ldbc.utils.KnowsGraphFile;
 
 /**
  * The BulkLoader class implements an application that loads an LDBC
@@ -43,9 +51,6 @@ public class BulkLoader {
 
     private static String progName = "BulkLoader";
 
-    private static SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-    private static SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-
     /**
      * Load an LDBC SNB dataset in a MySQL database.
      *
@@ -55,17 +60,15 @@ public class BulkLoader {
      * @param args  Unused
      */
     public static void main(String[] args) {
-
-        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-        timeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
-
         try {
             Configuration config = new Configuration();
             String url = "jdbc:mysql://" + config.host() + ":" + config.port() + "/" + config.database();
             Connection db = Db.connect(url, config.user(), config.password());
             purge(db, config.database());
-            load(db, config.database(), config.datasetDirectory());
+            load(db, url, config);
             createIndices(db, config.database());
+            deriveTables(db, config.database());
+            writeKnowsGraph(db, config.database(), config.datasetDirectory());
         }
         catch (Configuration.ConfigurationFileNotFoundException e) {
             System.err.println(progName + ": " + e.getMessage());
@@ -79,6 +82,10 @@ public class BulkLoader {
             System.err.println(progName + ": " + e.getMessage());
             System.exit(1);
         }
+        catch (Configuration.InvalidConfigurationException e) {
+            System.err.println(progName + ": " + e.getMessage());
+            System.exit(1);
+        }
         catch (FileNotFoundException e) {
             System.err.println(progName + ": " + e.getMessage());
             System.exit(1);
@@ -104,13 +111,160 @@ public class BulkLoader {
         stmt.close();
     }
 
-    private static void load(Connection db, String database, String datasetDirectory) throws IOException, FileNotFoundException, ParseException, SQLException {
+    /**
+     * Load the tables, spreading them over several worker connections.
+     *
+     * <p>We create every table first, so the entries of the tables
+     * array loading the same table (the merged Message,
+     * MessageHasCreatorPerson, and CommentReplyOfMessage tables and
+     * the two halves of PersonKnowsPerson) need not wait for one
+     * another.  Files larger than the split size are cut into parts of
+     * whole lines, each loaded by its own LOAD DATA statement, so
+     * several workers fill a large table at once.  The workers take
+     * the parts largest first, keeping the biggest files from being
+     * left for last, and take the parts of a file in file order, so
+     * the rows of a file sorted by identifier mostly reach the primary
+     * key in order.
+     */
+    private static void load(Connection db, final String url, final Configuration config) throws IOException, ParseException, SQLException {
+        for (TableInformation table : tables)
+            createTable(db, config.database(), table.name, table.structure);
+
+        final List<TablePart> parts = new ArrayList<>();
         for (TableInformation table : tables) {
-            System.out.println("Processing " + table.sourceFilename);
-            createTable(db, database, table.name, table.structure);
-            copyFileAndFilter(datasetDirectory + "/" + table.sourceFilename, "/var/lib/mysql-files/" + table.sourceFilename, table.filter);
-            loadTable(db, database, table.name, "/var/lib/mysql-files/" + table.sourceFilename);
+            long[] offsets = TableStream.split(config.datasetDirectory() + "/" + table.sourceFilename, config.loaderSplitSize());
+            for (int i = 0; i + 1 < offsets.length; i++) {
+                String stagingFilename = "/var/lib/mysql-files/" + parts.size() + "_" + table.sourceFilename;
+                parts.add(new TablePart(table, offsets[i], offsets[i + 1], i + 1, offsets.length - 1, offsets[offsets.length - 1], stagingFilename));
+            }
         }
+        // The sort is stable, so the parts of a file stay in order.
+        Collections.sort(parts, new Comparator<TablePart>() {
+            @Override
+            public int compare(TablePart p1, TablePart p2) {
+                return Long.compare(p2.fileSize / p2.partCount, p1.fileSize / p1.partCount);
+            }
+        });
+
+        // Streaming to the database requires the driver's permission.
+        final Properties properties = new Properties();
+        if (config.loaderLocalInfile())
+            properties.setProperty("allowLoadLocalInfile", "true");
+
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicBoolean failed = new AtomicBoolean();
+        final ExecutorService transformers = Executors.newFixedThreadPool(config.loaderTransformThreads());
+        final StageTimes times = new StageTimes();
+        int workerCount = Math.min(config.loaderThreads(), parts.size());
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount);
+        List<Future<Void>> results = new ArrayList<>();
+        for (int i = 0; i < workerCount; i++) {
+            results.add(workers.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException, ParseException, SQLException {
+                    TableStream rows = null;
+                    TableStream nextRows = null;
+                    try (Connection c = Db.connect(url, config.user(), config.password(), properties)) {
+                        setUpWorkerSession(c, config.loaderSkipBinaryLog());
+                        TablePart part = nextPart();
+                        if (part != null)
+                            rows = open(part);
+                        while (part != null && !failed.get()) {
+                            // Read and transcode the next part while this one loads.
+                            TablePart nextPart = nextPart();
+                            if (nextPart != null)
+                                nextRows = open(nextPart);
+
+                            TableInformation table = part.table;
+                            if (part.partCount == 1)
+                                System.out.println("Processing " + table.sourceFilename);
+                            else
+                                System.out.println("Processing " + table.sourceFilename + " (part " + part.number + " of " + part.partCount + ")");
+                            // Only the first part holds the title line.
+                            int ignoredLines = part.start == 0 ? 1 : 0;
+                            long start = System.nanoTime();
+                            if (config.loaderLocalInfile())
+                                streamTable(c, config.database(), table.name, table.sourceFilename, ignoredLines, rows);
+                            else {
+                                rows.writeTo(part.stagingFilename);
+                                loadTable(c, config.database(), table.name, part.stagingFilename, ignoredLines);
+                            }
+                            times.addLoading(System.nanoTime() - start);
+                            rows.close();
+
+                            part = nextPart;
+                            rows = nextRows;
+                            nextRows = null;
+                        }
+                    }
+                    catch (IOException | ParseException | SQLException | RuntimeException e) {
+                        failed.set(true);
+                        throw e;
+                    }
+                    finally {
+                        if (rows != null)
+                            rows.close();
+                        if (nextRows != null)
+                            nextRows.close();
+                    }
+                    return null;
+                }
+
+                private TablePart nextPart() {
+                    if (failed.get())
+                        return null;
+                    int p = next.getAndIncrement();
+                    return p < parts.size() ? parts.get(p) : null;
+                }
+
+                private TableStream open(TablePart part) {
+                    return new TableStream(config.datasetDirectory() + "/" + part.table.sourceFilename, part.start, part.end, part.table.filter, transformers, times);
+                }
+            }));
+        }
+        workers.shutdown();
+
+        try {
+            for (Future<Void> result : results)
+                result.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading tables");
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof ParseException)
+                throw (ParseException)cause;
+            if (cause instanceof SQLException)
+                throw (SQLException)cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            throw (Error)cause;
+        }
+        finally {
+            workers.shutdownNow();
+            transformers.shutdownNow();
+        }
+        System.out.println("Stage times: " + times);
+    }
+
+    /**
+     * Skip the checks and logging a bulk load of fresh tables does not need.
+     *
+     * <p>These settings only last as long as the worker's session.
+     * Skipping the binary log requires privileges the loader may not
+     * have, hence the option.
+     */
+    private static void setUpWorkerSession(Connection c, boolean skipBinaryLog) throws SQLException {
+        Statement stmt = c.createStatement();
+        stmt.execute("SET SESSION unique_checks = 0");
+        stmt.execute("SET SESSION foreign_key_checks = 0");
+        if (skipBinaryLog)
+            stmt.execute("SET SESSION sql_log_bin = 0");
+        stmt.close();
     }
 
     private static void createTable(Connection db, String database, String name, String structure) throws SQLException {
@@ -134,140 +288,75 @@ public class BulkLoader {
         }
     }
 
-    private static void copyFileAndFilter(String sourceFilename, String destinationFilename, String filter) throws IOException,  FileNotFoundException,  ParseException {
-        Pattern pattern = Pattern.compile(buildRegularExpression(filter));
-        long lineNumber = 1;
-        try (
-            Scanner s = new Scanner(new File(sourceFilename));
-            PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(destinationFilename)));
-        ) {
-            while (s.findInLine(pattern) != null) {
-                MatchResult match = s.match();
-                out.println(filter(filter, match, lineNumber == 1));
-                s.nextLine();
-                lineNumber++;
-            }
-        }
+    private static void loadTable(Connection db, String database, String name, String sourceFilename, int ignoredLines) throws SQLException {
+        Statement stmt = db.createStatement();
+        stmt.executeUpdate("LOAD DATA INFILE '" + sourceFilename + "' INTO TABLE " + database + "." + name + " FIELDS TERMINATED by '|' IGNORE " + ignoredLines + " LINES");
+        stmt.close();
     }
 
-    private static String buildRegularExpression(String filter) {
-        int len = filter.replaceAll("0", "").length();
-        StringBuilder sb = new StringBuilder();
-        while (len > 1) {
-            sb.append("(.*)\\|");
-            len--;
+    /**
+     * Stream a transcoded dataset file to the database.
+     *
+     * <p>Rather than stage the transcoded file on the database host,
+     * we hand Connector/J the stream of transcoded chunks, which it
+     * sends with LOAD DATA LOCAL INFILE; the file name in the
+     * statement is then ignored.  The source file is read once and
+     * nothing is written to disk.
+     */
+    private static void streamTable(Connection db, String database, String name, String sourceFilename, int ignoredLines, TableStream rows) throws IOException, ParseException, SQLException {
+        try (Statement stmt = db.createStatement()) {
+            stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(rows.asInputStream());
+            stmt.executeUpdate("LOAD DATA LOCAL INFILE '" + sourceFilename + "' INTO TABLE " + database + "." + name + " FIELDS TERMINATED by '|' IGNORE " + ignoredLines + " LINES");
         }
-        sb.append("(.*)");
-        return sb.toString();
-    }
-
-    private static String filter(String filter, MatchResult match, boolean isTitleLine) throws ParseException {
-        if (isTitleLine)
-            return filterTitleLine(filter, match);
-        else
-            return filterNonTitleLine(filter, match);
-    }
-
-    private static String filterTitleLine(String filter, MatchResult match) {
-        int len = filter.length();
-        char[] f = filter.toCharArray();
-        int filterIndex = 0;
-        int inputFieldIndex = 0;
-        StringBuilder sb = new StringBuilder();
-        boolean firstColumnIsSwapped = false;
-        while (filterIndex < len) {
-            switch (f[filterIndex]) {
-            case 'C': // copy
-            case 'T': // transform an ISO 8601 time into epoch
-            case 'D': // transform a date into epoch
-                sb.append(match.group(inputFieldIndex + 1));
-                sb.append('|');
-                inputFieldIndex++;
-                break;
-            case 'X': // delete
-                inputFieldIndex++;
-                break;
-            case '0': // fill with nothing
-                sb.append("nothing");
-                sb.append('|');
-                break;
-            case 'S': // swap two neighboring columns
-                if (firstColumnIsSwapped)
-                    sb.append(match.group(inputFieldIndex));
-                else
-                    sb.append(match.group(inputFieldIndex + 2));
-                sb.append('|');
-                firstColumnIsSwapped = true;
-                inputFieldIndex++;
-                break;
-            }
-            filterIndex++;
+        catch (SQLException e) {
+            // Report the line the driver could not send, if any.
+            if (rows.failure() != null)
+                throw rows.failure();
+            throw e;
         }
-        return sb.toString();
     }
 
-    private static String filterNonTitleLine(String filter, MatchResult match) throws ParseException {
-        int len = filter.length();
-        char[] f = filter.toCharArray();
-        int filterIndex = 0;
-        int inputFieldIndex = 0;
-        StringBuilder sb = new StringBuilder();
-        boolean firstColumnIsSwapped = false;
-        while (filterIndex < len) {
-            switch (f[filterIndex]) {
-            case 'C': // copy
-                sb.append(match.group(inputFieldIndex + 1));
-                sb.append('|');
-                inputFieldIndex++;
-                break;
-            case 'X': // delete
-                inputFieldIndex++;
-                break;
-            case 'T': // transform an ISO 8601 time into epoch
-                sb.append(timeFormat.parse(match.group(inputFieldIndex + 1)).getTime());
-                sb.append('|');
-                inputFieldIndex++;
-                break;
-            case 'D': // transform a date into epoch
-                sb.append(dateFormat.parse(match.group(inputFieldIndex + 1)).getTime());
-                sb.append('|');
-                inputFieldIndex++;
-                break;
-            case '0': // fill with nothing
-                sb.append('|');
-                break;
-            case 'S': // swap two neighboring columns
-                if (firstColumnIsSwapped)
-                    sb.append(match.group(inputFieldIndex));
-                else
-                    sb.append(match.group(inputFieldIndex + 2));
-                sb.append('|');
-                firstColumnIsSwapped = true;
-                inputFieldIndex++;
-                break;
-            }
-            filterIndex++;
+    private static void createIndices(Connection db, String database) throws SQLException {
+        for (IndexInformation index : indices) {
+            System.out.println("Creating " + index.indexName + " index");
+            createIndex(db, database, index.indexName, index.tableName, index.columnName);
         }
-        return sb.toString();
     }
 
-    private static void loadTable(Connection db, String database, String name, String sourceFilename) throws SQLException {
+    private static void createIndex(Connection db, String database, String indexName, String tableName, String columnName) throws SQLException {
         Statement stmt = db.createStatement();
-        stmt.executeUpdate("LOAD DATA INFILE '" + sourceFilename + "' INTO TABLE " + database + "." + name + " FIELDS TERMINATED by '|' IGNORE 1 LINES");
+        stmt.executeUpdate("CREATE INDEX " + indexName + " ON " + database + "." + tableName + "(" + columnName + ")");
         stmt.close();
     }
 
-    private static void createIndices(Connection db, String database) throws SQLException {
-        for (IndexInformation index : indices) {
-            System.out.println("Creating " + index.indexName + " index");
-            createIndex(db, database, index.indexName, index.tableName, index.columnName);
+    private static void deriveTables(Connection db, String database) throws SQLException {
+        for (DerivedTableInformation table : derivedTables) {
+            System.out.println("Deriving " + table.name);
+            createTable(db, database, table.name, table.structure);
+            Statement stmt = db.createStatement();
+            stmt.execute("USE " + database);
+            stmt.executeUpdate("INSERT INTO " + table.name + " " + table.query);
+            stmt.close();
+
+            // Grow the table one round at a time until a round adds
+            // no rows.
+            if (table.iterationQuery != null) {
+                PreparedStatement pstmt = db.prepareStatement("INSERT INTO " + table.name + " " + table.iterationQuery);
+                int round = 0;
+                do {
+                    pstmt.setInt(1, round++);
+                } while (pstmt.executeUpdate() != 0);
+                pstmt.close();
+            }
         }
     }
 
-    private static void createIndex(Connection db, String database, String indexName, String tableName, String columnName) throws SQLException {
+    private static void writeKnowsGraph(Connection db, String database, String datasetDirectory) throws IOException, SQLException {
+        System.out.println("Writing " + KnowsGraphFile.defaultFilename);
         Statement stmt = db.createStatement();
-        stmt.executeUpdate("CREATE INDEX " + indexName + " ON " + database + "." + tableName + "(" + columnName + ")");
+        stmt.execute("USE " + database);
         stmt.close();
+        KnowsGraphFile.write(db, datasetDirectory + "/" + KnowsGraphFile.defaultFilename);
     }
 
     private static class TableInformation {
@@ -283,6 +372,26 @@ public class BulkLoader {
         }
     }
 
+    // A range of whole lines of a dataset file, loaded by one statement.
+    private static class TablePart {
+        TableInformation table;
+        long start;
+        long end;
+        int number;
+        int partCount;
+        long fileSize;
+        String stagingFilename;
+        private TablePart(TableInformation table, long start, long end, int number, int partCount, long fileSize, String stagingFilename) {
+            this.table = table;
+            this.start = start;
+            this.end = end;
+            this.number = number;
+            this.partCount = partCount;
+            this.fileSize = fileSize;
+            this.stagingFilename = stagingFilename;
+        }
+    }
+
     static TableInformation[] tables = {
         // Entities
         new TableInformation(
@@ -688,4 +797,74 @@ public class BulkLoader {
         ),
     };
 
+    private static class DerivedTableInformation {
+        String name;
+        String structure;
+        String query; // populates the table from tables loaded earlier
+        String iterationQuery; // if not null, adds more rows given the round number (0, 1, ...) until it adds none
+        private DerivedTableInformation(String name, String structure, String query) {
+            this(name, structure, query, null);
+        }
+        private DerivedTableInformation(String name, String structure, String query, String iterationQuery) {
+            this.name = name;
+            this.structure = structure;
+            this.query = query;
+            this.iterationQuery = iterationQuery;
+        }
+    }
+
+    static DerivedTableInformation[] derivedTables = {
+        // Number of replies person1 made to posts and to comments
+        // created by person2 (query 14's interaction weights).
+        new DerivedTableInformation(
+            "PersonInteraction",
+            "person1Id BIGINT NOT NULL, " +
+                "person2Id BIGINT NOT NULL, " +
+                "postReplies INT NOT NULL, " +
+                "commentReplies INT NOT NULL, " +
+                "PRIMARY KEY (person1Id, person2Id)",
+            "   SELECT ReplyCreator.personId, " +
+                "          ParentCreator.personId, " +
+                "          SUM(ParentReply.commentId IS NULL), " +
+                "          SUM(ParentReply.commentId IS NOT NULL) " +
+                "     FROM CommentReplyOfMessage " +
+                "     JOIN MessageHasCreatorPerson AS ReplyCreator " +
+                "       ON ReplyCreator.messageId = CommentReplyOfMessage.commentId " +
+                "     JOIN MessageHasCreatorPerson AS ParentCreator " +
+                "       ON ParentCreator.messageId = CommentReplyOfMessage.messageId " +
+                "LEFT JOIN CommentReplyOfMessage AS ParentReply " + // A post is not a reply.
+                "       ON ParentReply.commentId = CommentReplyOfMessage.messageId " +
+                " GROUP BY ReplyCreator.personId, " +
+                "          ParentCreator.personId"
+        ),
+        // The post at the root of the reply tree of every message,
+        // along with the post's forum and the message's depth in the
+        // tree.  MySQL 8 could derive it with WITH RECURSIVE, but we
+        // still support MySQL 5.7, which cannot, so we start with the
+        // posts and add the replies to the messages of the previous
+        // depth, one depth per round.
+        new DerivedTableInformation(
+            "MessageRootPost",
+            "messageId BIGINT NOT NULL, " +
+                "rootPostId BIGINT NOT NULL, " +
+                "forumId BIGINT NOT NULL, " +
+                "depth INT NOT NULL, " +
+                "PRIMARY KEY (messageId), " +
+                "INDEX (depth)",
+            "   SELECT ForumContainerOfPost.postId, " +
+                "          ForumContainerOfPost.postId, " +
+                "          ForumContainerOfPost.forumId, " +
+                "          0 " +
+                "     FROM ForumContainerOfPost",
+            "   SELECT CommentReplyOfMessage.commentId, " +
+                "          Parent.rootPostId, " +
+                "          Parent.forumId, " +
+                "          Parent.depth + 1 " +
+                "     FROM MessageRootPost AS Parent " +
+                "     JOIN CommentReplyOfMessage " +
+                "       ON CommentReplyOfMessage.messageId = Parent.messageId " +
+                "    WHERE Parent.depth = ?"
+        ),
+    };
+
 }
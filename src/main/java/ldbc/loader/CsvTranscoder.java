@@ -0,0 +1,321 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.loader;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import java.text.ParseException;
+
+import java.util.Arrays;
+
+/**
+ * The CsvTranscoder class transforms a CSV file of an LDBC SNB
+ * dataset into the file the database loads, following a filter.
+ *
+ * <p>The filter has one letter per output column: 'C' copies the next
+ * input field, 'X' deletes it, 'T' replaces an ISO 8601 time with the
+ * milliseconds since the start of the epoch, 'D' does the same with a
+ * date, '0' inserts an empty column, and 'S' swaps two neighboring
+ * fields (the filter then holds "SS").  The title line goes through
+ * as is, except for deleted fields and inserted columns, which are
+ * called "nothing".  Every output column ends with a '|'.
+ *
+ * <p>We work on the bytes of the files in large chunks.  We neither
+ * decode characters nor allocate anything per line: fields are
+ * ranges of the input buffer, and times and dates are parsed and
+ * printed by hand.  When a line holds more separators than the
+ * filter expects, the first field takes the extra ones, as the
+ * regular expressions of earlier versions did.
+ *
+ * <p>A transcoder transcodes a chunk of lines held in memory, so that
+ * several threads may transcode the chunks of one file at once; it
+ * handles one chunk at a time.
+ */
+public class CsvTranscoder {
+
+    // The most bytes an output column may take beyond its input field.
+    private static final int maxColumnGrowth = 24;
+
+    private static final byte separator = '|';
+    private static final byte[] nothing = "nothing".getBytes(StandardCharsets.US_ASCII);
+
+    private static final long millisPerDay = 24L * 60 * 60 * 1000;
+
+    private final byte[] filter;
+
+    // The number of input fields of every line.
+    private final int fieldCount;
+
+    // The boundaries of the input fields of the current line.
+    private final int[] fieldStarts;
+    private final int[] fieldEnds;
+
+    // The state of the chunk being transcoded.
+    private boolean isTitleLine;
+    private long lineCount;
+
+    // The pending output.
+    private byte[] output;
+    private int outputLength = 0;
+
+    /**
+     * Construct a transcoder.
+     * @param filter  A filter, one letter per output column
+     */
+    public CsvTranscoder(String filter) {
+        this.filter = filter.getBytes(StandardCharsets.US_ASCII);
+        int count = 0;
+        for (byte f : this.filter)
+            if (f != '0')
+                count++;
+        fieldCount = count;
+        fieldStarts = new int[count];
+        fieldEnds = new int[count];
+    }
+
+    /**
+     * Transcode some lines held in memory.
+     *
+     * <p>Chunks of a file cut at line ends may be transcoded
+     * independently, each with its own transcoder, and the outputs
+     * concatenated in order.
+     * @param b                An array holding the lines
+     * @param start            The index of the first byte of the first line
+     * @param end              The index one past the last byte of the last line
+     * @param withTitleLine    Whether the first line is the title line
+     * @param firstLineNumber  The number of the first line, used in error messages
+     * @return a buffer holding the transcoded lines
+     * @throws ParseException if a line lacks fields or holds an invalid time or date
+     */
+    public ByteBuffer transcodeChunk(byte[] b, int start, int end, boolean withTitleLine, long firstLineNumber) throws ParseException {
+        isTitleLine = withTitleLine;
+        lineCount = firstLineNumber - 1;
+        output = new byte[end - start + (end - start) / 4 + 1024];
+        outputLength = 0;
+        transcodeLines(b, start, end);
+        return ByteBuffer.wrap(output, 0, outputLength);
+    }
+
+    /** Transcode the lines of a range of bytes, the last one needing no line end. */
+    private void transcodeLines(byte[] b, int start, int end) throws ParseException {
+        while (start < end) {
+            int newline = indexOf(b, start, end, (byte)'\n');
+            int lineEnd = newline == -1 ? end : newline;
+            int contentEnd = lineEnd;
+            if (contentEnd > start && b[contentEnd - 1] == '\r')
+                contentEnd--;
+            reserve(contentEnd - start + maxColumnGrowth * filter.length + 1);
+            transcodeLine(b, start, contentEnd, isTitleLine, lineCount + 1);
+            isTitleLine = false;
+            lineCount++;
+            start = newline == -1 ? end : newline + 1;
+        }
+    }
+
+    private void transcodeLine(byte[] b, int start, int end, boolean isTitleLine, long lineNumber) throws ParseException {
+        // Split the line from its end so the first field takes any
+        // extra separators.
+        int fieldEnd = end;
+        for (int i = fieldCount - 1; i > 0; i--) {
+            int p = lastIndexOf(b, start, fieldEnd, separator);
+            if (p == -1)
+                throw new ParseException("line " + lineNumber + ": Expected " + fieldCount + " fields", 0);
+            fieldStarts[i] = p + 1;
+            fieldEnds[i] = fieldEnd;
+            fieldEnd = p;
+        }
+        fieldStarts[0] = start;
+        fieldEnds[0] = fieldEnd;
+
+        int field = 0;
+        boolean firstColumnIsSwapped = false;
+        for (byte f : filter) {
+            switch (f) {
+            case 'C': // copy
+                put(b, fieldStarts[field], fieldEnds[field]);
+                put(separator);
+                field++;
+                break;
+            case 'X': // delete
+                field++;
+                break;
+            case 'T': // transform an ISO 8601 time into epoch
+                if (isTitleLine)
+                    put(b, fieldStarts[field], fieldEnds[field]);
+                else
+                    put(parseTime(b, fieldStarts[field], fieldEnds[field], lineNumber));
+                put(separator);
+                field++;
+                break;
+            case 'D': // transform a date into epoch
+                if (isTitleLine)
+                    put(b, fieldStarts[field], fieldEnds[field]);
+                else
+                    put(parseDate(b, fieldStarts[field], fieldEnds[field], lineNumber));
+                put(separator);
+                field++;
+                break;
+            case '0': // fill with nothing
+                if (isTitleLine)
+                    put(nothing, 0, nothing.length);
+                put(separator);
+                break;
+            case 'S': // swap two neighboring columns
+                int swapped = firstColumnIsSwapped ? field - 1 : field + 1;
+                put(b, fieldStarts[swapped], fieldEnds[swapped]);
+                put(separator);
+                firstColumnIsSwapped = true;
+                field++;
+                break;
+            }
+        }
+        put((byte)'\n');
+    }
+
+    /**
+     * Parse a time like 2010-03-13T02:10:23.099+0000.
+     *
+     * <p>The zone is either 'Z' or an offset of hours and minutes, with
+     * or without a colon.
+     */
+    private static long parseTime(byte[] b, int start, int end, long lineNumber) throws ParseException {
+        if (end - start >= 24 && b[start + 10] == 'T' && b[start + 13] == ':' && b[start + 16] == ':' && b[start + 19] == '.') {
+            long days = parseDays(b, start);
+            int hour = parseDigits(b, start + 11, 2);
+            int minute = parseDigits(b, start + 14, 2);
+            int second = parseDigits(b, start + 17, 2);
+            int milli = parseDigits(b, start + 20, 3);
+            int offset = parseOffset(b, start + 23, end);
+            if (days != Long.MIN_VALUE && hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60 && milli >= 0 && offset != Integer.MIN_VALUE)
+                return days * millisPerDay + ((hour * 60 + minute - offset) * 60 + second) * 1000L + milli;
+        }
+        throw new ParseException("line " + lineNumber + ": Unparseable time: \"" + new String(b, start, end - start, StandardCharsets.UTF_8) + "\"", 0);
+    }
+
+    /** Parse a date like 1989-12-03. */
+    private static long parseDate(byte[] b, int start, int end, long lineNumber) throws ParseException {
+        if (end - start == 10) {
+            long days = parseDays(b, start);
+            if (days != Long.MIN_VALUE)
+                return days * millisPerDay;
+        }
+        throw new ParseException("line " + lineNumber + ": Unparseable date: \"" + new String(b, start, end - start, StandardCharsets.UTF_8) + "\"", 0);
+    }
+
+    /**
+     * Return the days since the start of the epoch of a yyyy-MM-dd date.
+     * @return the number of days or Long.MIN_VALUE if not a date
+     */
+    private static long parseDays(byte[] b, int start) {
+        if (b[start + 4] != '-' || b[start + 7] != '-')
+            return Long.MIN_VALUE;
+        int year = parseDigits(b, start, 4);
+        int month = parseDigits(b, start + 5, 2);
+        int day = parseDigits(b, start + 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month))
+            return Long.MIN_VALUE;
+
+        // Count the days of the proleptic Gregorian calendar in eras
+        // of 400 years starting on March 1.
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /** Return the number of days of a month of the proleptic Gregorian calendar. */
+    private static int daysInMonth(int year, int month) {
+        if (month == 2)
+            return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    /**
+     * Return the offset from UTC in minutes of a zone like Z, +0100, or -05:00.
+     * @return the offset or Integer.MIN_VALUE if not a zone
+     */
+    private static int parseOffset(byte[] b, int start, int end) {
+        if (end - start == 1 && b[start] == 'Z')
+            return 0;
+        int sign;
+        if (end - start < 5 || (b[start] != '+' && b[start] != '-'))
+            return Integer.MIN_VALUE;
+        sign = b[start] == '-' ? -1 : 1;
+        int hours = parseDigits(b, start + 1, 2);
+        int minutes;
+        if (end - start == 5)
+            minutes = parseDigits(b, start + 3, 2);
+        else if (end - start == 6 && b[start + 3] == ':')
+            minutes = parseDigits(b, start + 4, 2);
+        else
+            return Integer.MIN_VALUE;
+        if (hours < 0 || minutes < 0)
+            return Integer.MIN_VALUE;
+        return sign * (hours * 60 + minutes);
+    }
+
+    /**
+     * Return the number written with the given digits.
+     * @return the number or -1 if not all digits
+     */
+    private static int parseDigits(byte[] b, int start, int count) {
+        int n = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            n = n * 10 + digit;
+        }
+        return n;
+    }
+
+    private static int indexOf(byte[] b, int start, int end, byte value) {
+        for (int i = start; i < end; i++)
+            if (b[i] == value)
+                return i;
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] b, int start, int end, byte value) {
+        for (int i = end - 1; i >= start; i--)
+            if (b[i] == value)
+                return i;
+        return -1;
+    }
+
+    /** Make room for some bytes of output, growing the output. */
+    private void reserve(int length) {
+        if (output.length - outputLength < length)
+            output = Arrays.copyOf(output, Math.max(output.length * 2, outputLength + length));
+    }
+
+    private void put(byte value) {
+        output[outputLength++] = value;
+    }
+
+    private void put(byte[] b, int start, int end) {
+        System.arraycopy(b, start, output, outputLength, end - start);
+        outputLength += end - start;
+    }
+
+    private void put(long value) {
+        if (value < 0) {
+            put((byte)'-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value / 10; v != 0; v /= 10)
+            digits++;
+        for (int i = outputLength + digits - 1; i >= outputLength; i--) {
+            output[i] = (byte)('0' + value % 10);
+            value /= 10;
+        }
+        outputLength += digits;
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.loader;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The StageTimes class adds up the time spent in each stage of the
+ * loading pipeline, across all tables and threads.
+ *
+ * <p>Besides the time every stage spends working, we count the time
+ * the reader waits for room in the queues of transcoded chunks and
+ * the time the loaders wait for chunks.  A reader that mostly waits
+ * means the loaders are the bottleneck; loaders that mostly wait
+ * mean the reader or the transform are.
+ */
+public class StageTimes {
+
+    private final AtomicLong reading = new AtomicLong();
+    private final AtomicLong readerWaiting = new AtomicLong();
+    private final AtomicLong transforming = new AtomicLong();
+    private final AtomicLong loading = new AtomicLong();
+    private final AtomicLong loaderWaiting = new AtomicLong();
+
+    /**
+     * Count time spent reading dataset files.
+     * @param nanos  A duration in nanoseconds
+     */
+    public void addReading(long nanos) { reading.addAndGet(nanos); }
+
+    /**
+     * Count time the reader spent waiting for room in a queue.
+     * @param nanos  A duration in nanoseconds
+     */
+    public void addReaderWaiting(long nanos) { readerWaiting.addAndGet(nanos); }
+
+    /**
+     * Count time spent transcoding chunks.
+     * @param nanos  A duration in nanoseconds
+     */
+    public void addTransforming(long nanos) { transforming.addAndGet(nanos); }
+
+    /**
+     * Count time spent loading tables, waiting for chunks included.
+     * @param nanos  A duration in nanoseconds
+     */
+    public void addLoading(long nanos) { loading.addAndGet(nanos); }
+
+    /**
+     * Count time a loader spent waiting for a chunk.
+     * @param nanos  A duration in nanoseconds
+     */
+    public void addLoaderWaiting(long nanos) { loaderWaiting.addAndGet(nanos); }
+
+    /**
+     * Describe the time spent in each stage.
+     * @return the seconds spent in each stage, summed over threads
+     */
+    @Override
+    public String toString() {
+        return String.format("read %.1fs (waiting %.1fs), transform %.1fs, load %.1fs (waiting %.1fs)",
+                             seconds(reading), seconds(readerWaiting), seconds(transforming),
+                             seconds(loading.get() - loaderWaiting.get()), seconds(loaderWaiting));
+    }
+
+    private static double seconds(AtomicLong nanos) { return seconds(nanos.get()); }
+
+    private static double seconds(long nanos) { return nanos / 1e9; }
+
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.loader;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.text.ParseException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The TableStream class reads and transcodes a dataset file ahead of
+ * its loading, in a pipeline of stages.
+ *
+ * <p>A reader thread cuts the file into chunks of whole lines and
+ * hands each chunk to a pool of transform threads, so the chunks of a
+ * file are transcoded in parallel.  The reader queues the pending
+ * results in file order; the loader takes them from the queue as it
+ * sends them to the database.  The queue is bounded, so the reader
+ * stays a few chunks ahead of the loader at most and the memory taken
+ * by a stream stays bounded.
+ *
+ * <p>A stream may also cover a range of a file only, cut at line
+ * ends by split, so that several streams load a large file at once.
+ * Only the range at the start of the file holds the title line.
+ */
+public class TableStream implements Closeable {
+
+    // The number of bytes read at once.
+    private static final int chunkSize = 1 << 20;
+
+    // The number of chunks read ahead of the loader.
+    private static final int queueCapacity = 4;
+
+    // The result queued after the last chunk.
+    private static final Future<ByteBuffer> endOfFile = CompletableFuture.completedFuture(null);
+
+    // The number of bytes scanned at once for a line end.
+    private static final int scanSize = 1 << 16;
+
+    private final BlockingQueue<Future<ByteBuffer>> chunks = new ArrayBlockingQueue<>(queueCapacity);
+    private final StageTimes times;
+    private final Thread reader;
+    private boolean atEnd = false;
+
+    // The exception that ended the stream, if any.
+    private ParseException failure;
+
+    /**
+     * Start reading and transcoding a range of a dataset file.
+     * @param sourceFilename  The name of a CSV file of the dataset
+     * @param start           The offset of the first byte of the range, at the start of a line
+     * @param end             The offset one past the last byte of the range, at the start of a line or past the end of the file
+     * @param filter          The filter of the file's table (see CsvTranscoder)
+     * @param transformers    The threads transcoding the chunks
+     * @param times           The counters of the time spent in each stage
+     */
+    public TableStream(final String sourceFilename, final long start, final long end, final String filter, final ExecutorService transformers, StageTimes times) {
+        this.times = times;
+        reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                read(sourceFilename, start, end, filter, transformers);
+            }
+        }, "Reader of " + sourceFilename + (start == 0 ? "" : " from " + start));
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Cut a file into ranges of whole lines of about the given size.
+     *
+     * <p>We aim at ranges of equal sizes and move every cut forward
+     * to the start of the next line; only the ranges at the end may
+     * be shorter.
+     * @param sourceFilename  The name of a CSV file of the dataset
+     * @param rangeSize       The desired number of bytes per range (0 for a single range)
+     * @return the offsets of the starts of the ranges followed by the size of the file
+     * @throws IOException if an I/O error occurs
+     */
+    public static long[] split(String sourceFilename, long rangeSize) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(sourceFilename), StandardOpenOption.READ)) {
+            long size = in.size();
+            List<Long> cuts = new ArrayList<>();
+            cuts.add(0L);
+            long rangeCount = rangeSize == 0 ? 1 : Math.max(1, (size + rangeSize - 1) / rangeSize);
+            ByteBuffer b = ByteBuffer.allocate(scanSize);
+            for (long i = 1; i < rangeCount; i++) {
+                long cut = Math.max(size / rangeCount * i, cuts.get(cuts.size() - 1));
+                cut = nextLineStart(in, cut, b);
+                if (cut < size && cut > cuts.get(cuts.size() - 1))
+                    cuts.add(cut);
+            }
+            cuts.add(size);
+            long[] offsets = new long[cuts.size()];
+            for (int i = 0; i < offsets.length; i++)
+                offsets[i] = cuts.get(i);
+            return offsets;
+        }
+    }
+
+    /**
+     * Return the next transcoded chunk of the file.
+     * @return a buffer holding whole transcoded lines or null at the end of the file
+     * @throws IOException if an I/O error occurs
+     * @throws ParseException if a line lacks fields or holds an invalid time or date
+     */
+    public ByteBuffer next() throws IOException, ParseException {
+        if (atEnd)
+            return null;
+        long start = System.nanoTime();
+        try {
+            ByteBuffer chunk = chunks.take().get();
+            atEnd = chunk == null;
+            return chunk;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a chunk", e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ParseException)
+                throw (ParseException)cause;
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            throw (Error)cause;
+        }
+        finally {
+            times.addLoaderWaiting(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Write the transcoded file.
+     * @param destinationFilename  The name of the file to write
+     * @throws IOException if an I/O error occurs
+     * @throws ParseException if a line lacks fields or holds an invalid time or date
+     */
+    public void writeTo(String destinationFilename) throws IOException, ParseException {
+        try (FileChannel out = FileChannel.open(Paths.get(destinationFilename), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer chunk;
+            while ((chunk = next()) != null)
+                while (chunk.hasRemaining())
+                    out.write(chunk);
+        }
+    }
+
+    /**
+     * Return the transcoded file as a stream.
+     *
+     * <p>Since streams may only throw IOException, a line that cannot
+     * be parsed makes the stream throw one, and failure returns the
+     * original exception.
+     * @return a stream of transcoded lines
+     */
+    public InputStream asInputStream() {
+        return new InputStream() {
+            private ByteBuffer chunk = ByteBuffer.allocate(0);
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int offset, int length) throws IOException {
+                while (!chunk.hasRemaining()) {
+                    try {
+                        chunk = next();
+                    }
+                    catch (ParseException e) {
+                        failure = e;
+                        throw new IOException(e.getMessage(), e);
+                    }
+                    if (chunk == null) {
+                        chunk = ByteBuffer.allocate(0);
+                        return -1;
+                    }
+                }
+                int count = Math.min(length, chunk.remaining());
+                chunk.get(b, offset, count);
+                return count;
+            }
+        };
+    }
+
+    /**
+     * Return why the stream returned by asInputStream failed.
+     * @return the exception raised while parsing or null if none
+     */
+    public ParseException failure() { return failure; }
+
+    /** Stop reading the file and drop the chunks not yet taken. */
+    @Override
+    public void close() {
+        reader.interrupt();
+        Future<ByteBuffer> chunk;
+        while ((chunk = chunks.poll()) != null)
+            chunk.cancel(false);
+    }
+
+    private void read(String sourceFilename, long rangeStart, long rangeEnd, final String filter, ExecutorService transformers) {
+        try {
+            try (FileChannel in = FileChannel.open(Paths.get(sourceFilename), StandardOpenOption.READ)) {
+                in.position(rangeStart);
+                long remaining = rangeEnd - rangeStart;
+                byte[] b = new byte[chunkSize];
+                int length = 0;
+                long lineNumber = 1;
+                boolean atEndOfFile = false;
+                while (!atEndOfFile) {
+                    long start = System.nanoTime();
+                    int count = remaining == 0 ? -1 : in.read(ByteBuffer.wrap(b, length, (int)Math.min(b.length - length, remaining)));
+                    times.addReading(System.nanoTime() - start);
+                    atEndOfFile = count == -1;
+                    if (!atEndOfFile)
+                        remaining -= count;
+                    if (!atEndOfFile)
+                        length += count;
+                    if (!atEndOfFile && length < b.length)
+                        continue;
+
+                    // Cut the chunk after its last line end, making
+                    // room for lines longer than a chunk.
+                    int end = length;
+                    if (!atEndOfFile) {
+                        while (end > 0 && b[end - 1] != '\n')
+                            end--;
+                        if (end == 0) {
+                            b = Arrays.copyOf(b, b.length * 2);
+                            continue;
+                        }
+                    }
+                    if (end > 0) {
+                        queue(transformers.submit(transform(filter, b, end, rangeStart, lineNumber)));
+                        lineNumber += countLines(b, end);
+                    }
+                    byte[] rest = new byte[Math.max(chunkSize, 2 * (length - end))];
+                    System.arraycopy(b, end, rest, 0, length - end);
+                    b = rest;
+                    length -= end;
+                }
+            }
+            catch (IOException | RuntimeException e) {
+                // Let the loader know.
+                CompletableFuture<ByteBuffer> failed = new CompletableFuture<>();
+                failed.completeExceptionally(e);
+                queue(failed);
+                return;
+            }
+            queue(endOfFile);
+        }
+        catch (InterruptedException e) {
+            // Closed: nobody takes the chunks any more.
+        }
+    }
+
+    // Line numbers count from the start of the range, which only
+    // holds the title line at the start of the file.
+    private Callable<ByteBuffer> transform(final String filter, final byte[] b, final int end, final long rangeStart, final long firstLineNumber) {
+        return new Callable<ByteBuffer>() {
+            @Override
+            public ByteBuffer call() throws ParseException {
+                long start = System.nanoTime();
+                try {
+                    return new CsvTranscoder(filter).transcodeChunk(b, 0, end, rangeStart == 0 && firstLineNumber == 1, firstLineNumber);
+                }
+                catch (ParseException e) {
+                    if (rangeStart == 0)
+                        throw e;
+                    throw new ParseException("range from byte " + rangeStart + ", " + e.getMessage(), e.getErrorOffset());
+                }
+                finally {
+                    times.addTransforming(System.nanoTime() - start);
+                }
+            }
+        };
+    }
+
+    private void queue(Future<ByteBuffer> chunk) throws InterruptedException {
+        long start = System.nanoTime();
+        chunks.put(chunk);
+        times.addReaderWaiting(System.nanoTime() - start);
+    }
+
+    // Return the offset of the start of the first line beginning at or
+    // after the given offset, or the size of the file if none does.
+    private static long nextLineStart(FileChannel in, long offset, ByteBuffer b) throws IOException {
+        if (offset == 0)
+            return 0;
+        // The cut falls at a line start if the byte before it ends a line.
+        long position = offset - 1;
+        while (true) {
+            b.clear();
+            int count = in.read(b, position);
+            if (count == -1)
+                return in.size();
+            for (int i = 0; i < count; i++)
+                if (b.get(i) == '\n')
+                    return position + i + 1;
+            position += count;
+        }
+    }
+
+    private static long countLines(byte[] b, int end) {
+        long count = 0;
+        for (int i = 0; i < end; i++)
+            if (b[i] == '\n')
+                count++;
+        return count;
+    }
+
+}
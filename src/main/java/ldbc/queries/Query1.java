@@ -17,20 +17,23 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
-import java.util.Set;
 import java.util.TimeZone;
 
 import java.text.SimpleDateFormat;
 
+import ldbc.collections.LongArrayDeque;
+import ldbc.collections.LongHashSet;
+
 import ldbc.helpers.Query1SortResult;
 
 import ldbc.utils.Explanation;
+import ldbc.utils.KnowsGraph;
 import ldbc.utils.LdbcUtils;
+import ldbc.utils.Transaction;
 
 /**
  * The Query1 class implements an application that runs complex read
@@ -45,14 +48,34 @@ public class Query1 implements ExecutableQuery {
     private static final String queryParameterFilename = "interactive_1_param.txt";
     private static final String queryParameterFileLinePattern = "(\\d+)\\|(.+)";
     private static final int queryLimit = 20;
-    // Friend of a person (and details about that friend).
+    // Friends of a list of persons and their first names.
+    // Parameters 1 and up: persons
     private static final String queryString =
+        "   SELECT PersonKnowsPerson.person2Id, Person.firstName " +
+        "     FROM PersonKnowsPerson, Person " +
+        "    WHERE Person.id = PersonKnowsPerson.person2Id " +
+        "      AND PersonKnowsPerson.person1Id IN ({ids})";
+    // Persons with a given first name among a list of persons.
+    // Parameter 1: first name
+    // Parameters 2 and up: persons
+    private static final String personQueryString =
         "   SELECT Person.id, Person.firstName, Person.lastName, " +
         "          Person.birthday, Person.creationDate, Person.gender, " +
         "          Person.browserUsed, Person.locationIP " +
-        "     FROM Person, PersonKnowsPerson " +
-        "    WHERE PersonKnowsPerson.person1Id = ? " +
-        "      AND Person.id = PersonKnowsPerson.person2Id";
+        "     FROM Person " +
+        "    WHERE Person.firstName = ? " +
+        "      AND Person.id IN ({ids})";
+    // Both queries run once per slice of at most
+    // LdbcUtils.maxInListSize persons.
+    private static final String[] queries = LdbcUtils.withInLists(queryString);
+    private static final String[] personQueries = LdbcUtils.withInLists(personQueryString);
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = new String[queries.length + personQueries.length];
+    static {
+        System.arraycopy(queries, 0, preparedQueries, 0, queries.length);
+        System.arraycopy(personQueries, 0, preparedQueries, queries.length, personQueries.length);
+    }
 
     /** A minimal constructor. */
     private Query1() {}
@@ -86,107 +109,151 @@ public class Query1 implements ExecutableQuery {
         // queue reaches 'limit + 1' elements.
         Queue<Query1SortResult> queue = new PriorityQueue<>(limit + 1);
 
+        List<LdbcQuery1Result> results = new ArrayList<>();
+
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            // First, using a breadth first search, find the friends
+            // within the appropriate distance who are matching the
+            // search criteria.
+            findMatchingFriends(c, KnowsGraph.current(), personId, firstName, limit, queue);
+
+            // Dequeue the friends in reverse order.
+            List<Query1SortResult> friends = new ArrayList<>();
+            long[] friendIds = new long[queue.size()];
+            while (queue.size() != 0) {
+                Query1SortResult e = queue.poll(); // Dequeue.
+                friends.add(0, e); // Add at the front.
+                friendIds[queue.size()] = e.friendId();
+            }
+
+            // Then, look up the details of the remaining friends,
+            // one query per kind of detail.
+            Map<Long, List<String>> emails = LdbcUtils.getEmails(c, friendIds);
+            Map<Long, List<String>> languages = LdbcUtils.getLanguages(c, friendIds);
+            Map<Long, String> places = LdbcUtils.findPlaces(c, friendIds);
+            Map<Long, List<List<Object>>> schools = LdbcUtils.findSchools(c, friendIds);
+            Map<Long, List<List<Object>>> organizations = LdbcUtils.findOrganizations(c, friendIds);
+
+            t.commit();
+
+            for (Query1SortResult e : friends) {
+                LdbcQuery1Result result = new LdbcQuery1Result(
+                    e.friendId(),
+                    e.friendLastName(),
+                    e.friendDistanceFromPerson(),
+                    e.friendBirthday(),
+                    e.friendCreationDate(),
+                    e.friendGender(),
+                    e.friendBrowserUsed(),
+                    e.friendLocationIP(),
+                    emails.get(e.friendId()),
+                    languages.get(e.friendId()),
+                    places.get(e.friendId()),
+                    schools.get(e.friendId()),
+                    organizations.get(e.friendId()));
+                results.add(result);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Find the friends with the given first name.
+     *
+     * We walk the Knows relationship breadth first one distance at a
+     * time.  With an in-memory graph, we expand the frontier in
+     * memory; otherwise, we fetch the friends of the whole frontier,
+     * along with their first names only, in batches of IN lists.
+     * Either way, we then read the full Person rows of the matching
+     * persons at that distance only.  We stop early once the queue is
+     * full: persons further away can no longer make the cut.
+     *
+     * @param c          A database connection
+     * @param graph      A snapshot of the Knows relationship or null to use the database
+     * @param personId   The person's unique identifier
+     * @param firstName  A first name
+     * @param limit      An upper bound on the number of results returned
+     * @param queue      The priority queue holding the results found so far
+     * @throws SQLException if a database access error occurs
+     */
+    private static void findMatchingFriends(Connection c, KnowsGraph graph, long personId, String firstName, int limit, Queue<Query1SortResult> queue) throws SQLException {
         // Breadth-first search:
         // open: the nodes at the current distance
         // nextOpen: the nodes at the current distance + 1
+        // candidates: the nodes in nextOpen which may match
         // close: the nodes we have already seen
-        Queue<Long> open = new LinkedList<>();
-        Queue<Long> nextOpen = new LinkedList<>();
-        Set<Long> close = new HashSet<>();
+        LongArrayDeque open = new LongArrayDeque();
+        LongHashSet close = new LongHashSet();
+        KnowsGraph.FriendCursor cursor = graph == null ? null : graph.friendCursor();
 
-        int distance = 1;
         open.add(personId);
         close.add(personId);
 
-        ResultSet r = null;
-
-        // First, using a breadth first search, find the friends
-        // within the appropriate distance who are matching the search
-        // criteria.
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(queryString)) {
-
-            bfs:
-            while (distance < 4) {
-
-                for (Long person : open) {
+        for (int distance = 1; distance < 4 && queue.size() < limit && !open.isEmpty(); distance++) {
+            LongArrayDeque nextOpen = new LongArrayDeque();
+            LongArrayDeque candidates;
+            if (graph != null) {
+                for (int i = 0; i < open.size(); i++) {
+                    cursor.open(open.get(i));
+                    while (cursor.next())
+                        if (close.add(cursor.friendId()))
+                            nextOpen.add(cursor.friendId());
+                }
+                candidates = nextOpen;
+            }
+            else {
+                candidates = new LongArrayDeque();
+                long[] openIds = open.toArray();
+                for (int from = 0; from < openIds.length; from += LdbcUtils.maxInListSize) {
+                    int to = Math.min(from + LdbcUtils.maxInListSize, openIds.length);
+                    PreparedStatement s = LdbcUtils.prepareInList(c, queries, openIds, from, to, 1);
+                    try (ResultSet r = s.executeQuery()) {
+                        while (r.next()) {
+                            long friendId = r.getLong("PersonKnowsPerson.person2Id");
+                            if (close.add(friendId)) {
+                                nextOpen.add(friendId);
+                                if (r.getString("Person.firstName").equals(firstName))
+                                    candidates.add(friendId);
+                            }
+                        }
+                    }
+                }
+            }
 
-                    // Look for the friends of person.
-                    s.setLong(1, person);
-                    r = s.executeQuery();
+            long[] candidateIds = candidates.toArray();
+            for (int from = 0; from < candidateIds.length; from += LdbcUtils.maxInListSize) {
+                int to = Math.min(from + LdbcUtils.maxInListSize, candidateIds.length);
+                PreparedStatement s = LdbcUtils.prepareInList(c, personQueries, candidateIds, from, to, 2);
+                s.setString(1, firstName);
+                try (ResultSet r = s.executeQuery()) {
                     while (r.next()) {
-
                         long friendId = r.getLong("Person.id");
-
-                        // We've already seen this friend.
-                        if (close.contains(friendId))
-                            continue;
-
-                        nextOpen.add(friendId);
-                        close.add(friendId);
-
-                        String friendFirstName = r.getString("Person.firstName");
-                        // Add this friend if we have a match.
-                        if (friendFirstName.equals(firstName)) {
-                            Query1SortResult e = new Query1SortResult(
-                                friendId,
-                                r.getString("Person.lastName"),
-                                distance,
-                                r.getLong("Person.birthday"),
-                                r.getLong("Person.creationDate"),
-                                r.getString("Person.gender"),
-                                r.getString("Person.browserUsed"),
-                                r.getString("locationIP"),
-                                LdbcUtils.getEmails(c, friendId),
-                                LdbcUtils.getLanguages(c, friendId),
-                                LdbcUtils.findPlace(c, friendId),
-                                LdbcUtils.findSchools(c, friendId),
-                                LdbcUtils.findOrganizations(c, friendId));
-
-                            queue.add(e);
-
-                            // Eliminate the 'highest' priority entry
-                            // if we have reached the target number of
-                            // results.
-                            Query1SortResult ignore;
-                            if (queue.size() > limit)
-                                ignore = queue.poll();
-                        }
+                        Query1SortResult e = new Query1SortResult(
+                            friendId,
+                            r.getString("Person.lastName"),
+                            distance,
+                            r.getLong("Person.birthday"),
+                            r.getLong("Person.creationDate"),
+                            r.getString("Person.gender"),
+                            r.getString("Person.browserUsed"),
+                            r.getString("locationIP"));
+
+                        queue.add(e);
+
+                        // Eliminate the 'highest' priority entry
+                        // if we have reached the target number of
+                        // results.
+                        Query1SortResult ignore;
+                        if (queue.size() > limit)
+                            ignore = queue.poll();
                     }
                 }
-
-                ++distance;
-                open = nextOpen;
-                nextOpen = new LinkedList<>();
             }
-            c.commit();
-        } finally {
-            if (r != null) r.close();
-        }
 
-        List<LdbcQuery1Result> results = new ArrayList<>();
-
-        // Add elements to the final result array in reverse order.
-        while (queue.size() != 0) {
-            Query1SortResult e = queue.poll(); // Dequeue.
-            LdbcQuery1Result result = new LdbcQuery1Result(
-                e.friendId(),
-                e.friendLastName(),
-                e.friendDistanceFromPerson(),
-                e.friendBirthday(),
-                e.friendCreationDate(),
-                e.friendGender(),
-                e.friendBrowserUsed(),
-                e.friendLocationIP(),
-                e.friendEmails(),
-                e.friendLanguages(),
-                e.friendPlace(),
-                e.friendSchools(),
-                e.friendOrganizations());
-            results.add(0, result); // Add at the front.
+            open = nextOpen;
         }
-
-        return results;
     }
 
     /**
@@ -200,8 +267,8 @@ public class Query1 implements ExecutableQuery {
      */
     private static ResultSet explain(HikariDataSource db, long personId, String firstName, int limit) throws SQLException {
         Connection c = db.getConnection();
-        PreparedStatement s = c.prepareStatement(Explanation.query + queryString);
-        s.setLong(1, personId);
+        PreparedStatement s = c.prepareStatement(Explanation.query + queries[LdbcUtils.inListVersion(1)]);
+        LdbcUtils.bindInList(s, new long[] { personId }, 0, 1, 1);
         return s.executeQuery();
     }
 
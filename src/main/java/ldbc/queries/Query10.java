@@ -24,10 +24,16 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.TimeZone;
 
+import ldbc.collections.Long2ObjectHashMap;
+import ldbc.collections.LongArrayDeque;
+
+import ldbc.helpers.PersonSummary;
 import ldbc.helpers.Query10SortResult;
 
+import ldbc.utils.EgoNetworkCache;
 import ldbc.utils.Explanation;
 import ldbc.utils.LdbcUtils;
+import ldbc.utils.Transaction;
 
 /**
  * The Query10 class implements an application that runs complex read
@@ -43,29 +49,21 @@ public class Query10 implements ExecutableQuery {
     private static final String queryParameterFileLinePattern = "(\\d+)\\|(\\d+)";
     private static final int queryLimit = 10;
     // Friends of friends and their interests.
-    // Parameter 1: person identifier
-    // Parameter 2: person identifier (same as parameter 1)
-    // Parameter 3: person identifier (same as parameter 1)
-    // Parameter 4: month
-    // Parameter 5: month (same as parameter 4)
+    // Parameters 1 to n: friends of friends
+    // Parameter n + 1: month
+    // Parameter n + 2: month (same as parameter n + 1)
+    // The query runs once per slice of at most LdbcUtils.maxInListSize
+    // friends of friends of the person (excluding the person and
+    // their immediate friends).
     private static final String queryString =
         "   SELECT FriendAndPost.friendId, " +
         "          FriendAndPost.postId, " +
         "          PostHasTagTag.tagId " +
         "     FROM (   SELECT Friend.id AS friendId, " +
         "                     Post.id AS postId " +
-        "                FROM (SELECT K2.person2Id AS id " +
-        "                        FROM PersonKnowsPerson AS K1, " +
-        "                             PersonKnowsPerson AS K2, " +
-        "                             Person " +
-        "                       WHERE K1.person1Id = ? " +
-        "                         AND K2.person1Id = K1.person2Id " +
-        "                         AND K2.person2Id <> ? " +
-        "                         AND K2.person2Id " +
-        "                      NOT IN (SELECT PersonKnowsPerson.person2Id " +
-        "                                FROM PersonKnowsPerson " +
-        "                               WHERE PersonKnowsPerson.person1Id = ?) " +
-        "                         AND Person.id = K2.person2Id " +
+        "                FROM (SELECT Person.id " +
+        "                        FROM Person " +
+        "                       WHERE Person.id IN ({ids}) " +
         "                         AND (month(from_unixtime(Person.birthday/1000)) = ? " +
         "                              AND day(from_unixtime(Person.birthday/1000)) >= 21 " +
         "                               OR month(from_unixtime(Person.birthday/1000)) = (? % 12) + 1 " +
@@ -84,6 +82,9 @@ public class Query10 implements ExecutableQuery {
         " ORDER BY FriendAndPost.friendId," +
         "          FriendAndPost.postId";
 
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = LdbcUtils.withInLists(queryString);
+
     /** A minimal constructor. */
     private Query10() {}
 
@@ -111,10 +112,8 @@ public class Query10 implements ExecutableQuery {
     public static List<LdbcQuery10Result> query(HikariDataSource ds, long personId, int month, int limit) throws SQLException {
         List<LdbcQuery10Result> results = new ArrayList<>();
 
-        ResultSet r = null;
-
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(queryString)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
             // Create a priority queue to keep the results sorted and
             // limited to at most the requested 'limit' entries.  To
             // make this work, we inverse the sort order so we know it
@@ -142,51 +141,58 @@ public class Query10 implements ExecutableQuery {
             // Type 1: 0 post, commonality = 0
             // Type 2: > 0 post, some commonality
             // Type 3: > 0 post, some commonality
+            //
+            // Every friend falls in a single slice, so the loop carries
+            // on from one slice to the next.
             long prevFriendId = -1;
             long prevPostId = -1;
             boolean matchingInterest = false;
             int common = 0;
             int uncommon = 0;
 
-            s.setLong(1, personId);
-            s.setLong(2, personId);
-            s.setLong(3, personId);
-            s.setInt(4, month);
-            s.setInt(5, month);
-            r = s.executeQuery();
-            while (r.next()) {
-                long friendId = r.getLong("FriendAndPost.friendId");
-                long postId = r.getLong("FriendAndPost.postId");
-                long tagId = r.getLong("PostHasTagTag.tagId");
-
-                // Processing the next batch of posts?
-                if (postId != prevPostId || (prevPostId == 0 && friendId != prevFriendId)) {
-
-                    // If so, wrap up the accounting of the previous
-                    // batch of posts.  If the previous post
-                    // identifier is null, then the associated friend
-                    // did not create any post.
-                    if (prevPostId != -1 && prevPostId != 0)
-                        if (matchingInterest)
-                            ++common;
-                        else
-                            ++uncommon;
-
-                    // Processing the next friend?
-                    if (friendId != prevFriendId) {
-                        if (prevFriendId != -1)
-                            add(queue, limit, prevFriendId, common - uncommon);
-                        prevFriendId = friendId;
-                        common = 0;
-                        uncommon = 0;
+            long[] network = EgoNetworkCache.current().get(c, personId).friendsOfFriends();
+            for (int from = 0; from < network.length; from += LdbcUtils.maxInListSize) {
+                int to = Math.min(from + LdbcUtils.maxInListSize, network.length);
+                PreparedStatement s = LdbcUtils.prepareInList(c, preparedQueries, network, from, to, 1);
+                int n = LdbcUtils.inListParameterCount(to - from);
+                s.setInt(n + 1, month);
+                s.setInt(n + 2, month);
+                try (ResultSet r = s.executeQuery()) {
+                    while (r.next()) {
+                        long friendId = r.getLong("FriendAndPost.friendId");
+                        long postId = r.getLong("FriendAndPost.postId");
+                        long tagId = r.getLong("PostHasTagTag.tagId");
+
+                        // Processing the next batch of posts?
+                        if (postId != prevPostId || (prevPostId == 0 && friendId != prevFriendId)) {
+
+                            // If so, wrap up the accounting of the previous
+                            // batch of posts.  If the previous post
+                            // identifier is null, then the associated friend
+                            // did not create any post.
+                            if (prevPostId != -1 && prevPostId != 0)
+                                if (matchingInterest)
+                                    ++common;
+                                else
+                                    ++uncommon;
+
+                            // Processing the next friend?
+                            if (friendId != prevFriendId) {
+                                if (prevFriendId != -1)
+                                    add(queue, limit, prevFriendId, common - uncommon);
+                                prevFriendId = friendId;
+                                common = 0;
+                                uncommon = 0;
+                            }
+
+                            prevPostId = postId;
+                            matchingInterest = false;
+                        }
+
+                        if (startPersonInterests.contains(tagId))
+                            matchingInterest = true;
                     }
-
-                    prevPostId = postId;
-                    matchingInterest = false;
                 }
-
-                if (startPersonInterests.contains(tagId))
-                    matchingInterest = true;
             }
 
             // Process the last friend/post pair.
@@ -201,23 +207,30 @@ public class Query10 implements ExecutableQuery {
                 add(queue, limit, prevFriendId, common -  uncommon);
             }
 
-            // Add elements to the final result array in reverse order.
+            // Dequeue the friends in reverse order and look up the
+            // details of these top friends only, all at once.
+            List<Query10SortResult> friends = new ArrayList<>();
+            LongArrayDeque friendIds = new LongArrayDeque(queue.size());
             while (queue.size() != 0) {
                 Query10SortResult e = queue.poll(); // Dequeue.
-                long friendId = e.friendId();
+                friends.add(0, e); // Add at the front.
+                friendIds.addFirst(e.friendId());
+            }
+            Long2ObjectHashMap<PersonSummary> summaries = LdbcUtils.getPersonSummaries(c, friendIds);
+
+            for (Query10SortResult e : friends) {
+                PersonSummary summary = summaries.get(e.friendId());
                 LdbcQuery10Result result = new LdbcQuery10Result(
-                    friendId,
-                    LdbcUtils.getFirstName(c, friendId),
-                    LdbcUtils.getLastName(c, friendId),
+                    e.friendId(),
+                    summary.firstName(),
+                    summary.lastName(),
                     e.commonInterestScore(),
-                    LdbcUtils.getGender(c, friendId),
-                    LdbcUtils.findPlace(c, friendId));
-                results.add(0, result); // Add at the front.
+                    summary.gender(),
+                    summary.cityName());
+                results.add(result);
             }
 
-            c.commit();
-        } finally {
-            if (r != null) r.close();
+            t.commit();
         }
 
         return results;
@@ -251,12 +264,15 @@ public class Query10 implements ExecutableQuery {
      */
     private static ResultSet explain(HikariDataSource db, long personId, int month, int limit) throws SQLException {
         Connection c = db.getConnection();
-        PreparedStatement s = c.prepareStatement(Explanation.query + queryString);
-        s.setLong(1, personId);
-        s.setLong(2, personId);
-        s.setLong(3, personId);
-        s.setInt(4, month);
-        s.setInt(5, month);
+        long[] network = EgoNetworkCache.current().get(c, personId).friendsOfFriends();
+        if (network.length == 0)
+            network = new long[] { -1 }; // A person no one knows.
+        int to = Math.min(network.length, LdbcUtils.maxInListSize);
+        PreparedStatement s = c.prepareStatement(Explanation.query + preparedQueries[LdbcUtils.inListVersion(to)]);
+        LdbcUtils.bindInList(s, network, 0, to, 1);
+        int n = LdbcUtils.inListParameterCount(to);
+        s.setInt(n + 1, month);
+        s.setInt(n + 2, month);
         return s.executeQuery();
     }
 
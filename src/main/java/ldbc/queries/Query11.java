@@ -14,11 +14,15 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.LinkedList;
 import java.util.List;
 
+import ldbc.utils.EgoNetworkCache;
 import ldbc.utils.Explanation;
 import ldbc.utils.LdbcUtils;
+import ldbc.utils.Transaction;
 
 /**
  * The Query11 class implements an application that runs complex read
@@ -34,44 +38,38 @@ public class Query11 implements ExecutableQuery {
     private static final String queryParameterFileLinePattern = "(\\d+)\\|(.+)\\|(\\d+)";
     private static final int queryLimit = 10;
     // Friends and their jobs.
-    // Parameter 1: person identifier
-    // Parameter 2: person identifier (same as parameter 1)
-    // Parameter 3: year
-    // Parameter 4: country name
-    // Parameter 5: limit on the number of results
+    // Parameters 1 to n: the person, their friends, and their friends of friends
+    // Parameter n + 1: year
+    // Parameter n + 2: country name
+    // Parameter n + 3: limit on the number of results
+    // The query runs once per slice of at most LdbcUtils.maxInListSize
+    // persons.
     private static final String queryString =
-        "   SELECT Friend.id, " +
+        "   SELECT Person.id, " +
         "          Person.firstName, " +
         "          Person.lastName, " +
         "          Organisation.name, " +
         "          PersonWorkAtOrganisation.workFrom " +
-        "     FROM (SELECT PersonKnowsPerson.person2Id AS id " +
-        "             FROM PersonKnowsPerson " +
-        "            WHERE PersonKnowsPerson.person1Id = ? " +
-        "            UNION " +
-        "           SELECT K2.person2Id AS id " +
-        "             FROM PersonKnowsPerson AS K1, " +
-        "                  PersonKnowsPerson AS K2 " +
-        "            WHERE K1.person1Id = ? " +
-        "              AND K2.person1Id = K1.person2Id " +
-        "          ) AS Friend, " +
-        "          PersonWorkAtOrganisation, " +
+        "     FROM PersonWorkAtOrganisation, " +
         "          Place, " +
         "          Person, " +
         "          Organisation, " +
         "          OrganisationIsLocatedInPlace " +
-        "    WHERE PersonWorkAtOrganisation.personId = Friend.id " +
+        "    WHERE PersonWorkAtOrganisation.personId IN ({ids}) " +
         "      AND PersonWorkAtOrganisation.workFrom < ? " +
         "      AND Organisation.id = PersonWorkAtOrganisation.organisationId " +
         "      AND OrganisationIsLocatedInPlace.organisationId = PersonWorkAtOrganisation.organisationId " +
         "      AND OrganisationIsLocatedInPlace.placeId = Place.id " +
-        "      AND Person.id = Friend.id " +
+        "      AND Person.id = PersonWorkAtOrganisation.personId " +
         "      AND Place.name = ? " +
         " ORDER BY PersonWorkAtOrganisation.workFrom, " +
-        "          Friend.id, " +
+        "          Person.id, " +
         "          Organisation.name DESC " +
         "    LIMIT ?";
 
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = LdbcUtils.withInLists(queryString);
+
     /** A minimal constructor. */
     private Query11() {}
 
@@ -100,31 +98,46 @@ public class Query11 implements ExecutableQuery {
     public static List<LdbcQuery11Result> query(HikariDataSource ds, long personId, String country, int year, int limit) throws SQLException {
         List<LdbcQuery11Result> results = new ArrayList<>();
 
-        ResultSet r = null;
-
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(queryString)) {
-            s.setLong(1, personId);
-            s.setLong(2, personId);
-            s.setInt(3, year);
-            s.setString(4, country);
-            s.setInt(5, limit);
-            r = s.executeQuery();
-            while (r.next()) {
-                LdbcQuery11Result result = new LdbcQuery11Result(
-                    r.getLong("Friend.id"),
-                    r.getString("Person.firstName"),
-                    r.getString("Person.lastName"),
-                    r.getString("Organisation.name"),
-                    r.getInt("PersonWorkAtOrganisation.workFrom"));
-                results.add(result);
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            long[] network = EgoNetworkCache.current().get(c, personId).reachable();
+            for (int from = 0; from < network.length; from += LdbcUtils.maxInListSize) {
+                int to = Math.min(from + LdbcUtils.maxInListSize, network.length);
+                PreparedStatement s = LdbcUtils.prepareInList(c, preparedQueries, network, from, to, 1);
+                int n = LdbcUtils.inListParameterCount(to - from);
+                s.setInt(n + 1, year);
+                s.setString(n + 2, country);
+                s.setInt(n + 3, limit);
+                try (ResultSet r = s.executeQuery()) {
+                    while (r.next()) {
+                        LdbcQuery11Result result = new LdbcQuery11Result(
+                            r.getLong("Person.id"),
+                            r.getString("Person.firstName"),
+                            r.getString("Person.lastName"),
+                            r.getString("Organisation.name"),
+                            r.getInt("PersonWorkAtOrganisation.workFrom"));
+                        results.add(result);
+                    }
+                }
             }
-            c.commit();
-        }
-        finally {
-            if (r != null) r.close();
+            t.commit();
         }
 
+        // The top 'limit' jobs are among the top 'limit' jobs of the
+        // slices.
+        Collections.sort(results, new Comparator<LdbcQuery11Result>() {
+            @Override
+            public int compare(LdbcQuery11Result r1, LdbcQuery11Result r2) {
+                if (r1.organizationWorkFromYear() != r2.organizationWorkFromYear())
+                    return Integer.compare(r1.organizationWorkFromYear(), r2.organizationWorkFromYear());
+                if (r1.personId() != r2.personId())
+                    return Long.compare(r1.personId(), r2.personId());
+                return r2.organizationName().compareTo(r1.organizationName());
+            }
+        });
+        if (results.size() > limit)
+            results.subList(limit, results.size()).clear();
+
         return results;
     }
 
@@ -140,12 +153,16 @@ public class Query11 implements ExecutableQuery {
      */
     private static ResultSet explain(HikariDataSource db, long personId, String country, int year, int limit) throws SQLException {
         Connection c = db.getConnection();
-        PreparedStatement s = c.prepareStatement(Explanation.query + queryString);
-        s.setLong(1, personId);
-        s.setLong(2, personId);
-        s.setInt(3, year);
-        s.setString(4, country);
-        s.setInt(5, limit);
+        long[] network = EgoNetworkCache.current().get(c, personId).reachable();
+        if (network.length == 0)
+            network = new long[] { -1 }; // A person no one knows.
+        int to = Math.min(network.length, LdbcUtils.maxInListSize);
+        PreparedStatement s = c.prepareStatement(Explanation.query + preparedQueries[LdbcUtils.inListVersion(to)]);
+        LdbcUtils.bindInList(s, network, 0, to, 1);
+        int n = LdbcUtils.inListParameterCount(to);
+        s.setInt(n + 1, year);
+        s.setString(n + 2, country);
+        s.setInt(n + 3, limit);
         return s.executeQuery();
     }
 
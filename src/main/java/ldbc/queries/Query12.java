@@ -15,19 +15,24 @@ import java.sql.SQLException;
 import java.sql.Statement;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
 import java.util.TreeSet;
 
+import ldbc.collections.Long2ObjectHashMap;
+import ldbc.collections.LongArrayDeque;
+import ldbc.collections.LongHashSet;
+
+import ldbc.helpers.PersonSummary;
 import ldbc.helpers.Query12SortResult;
 import ldbc.helpers.Query12PartialResult;
 
+import ldbc.utils.DimensionCache;
 import ldbc.utils.Explanation;
 import ldbc.utils.LdbcUtils;
+import ldbc.utils.Transaction;
 
 /**
  * The Query12 class implements an application that runs complex read
@@ -42,8 +47,12 @@ public class Query12 implements ExecutableQuery {
     private static final String queryParameterFilename = "interactive_12_param.txt";
     private static final String queryParameterFileLinePattern = "(\\d+)\\|(.+)";
     private static final int queryLimit = 20;
-    // Friends, their comments, and the comments' parent posts' tags.
+    // Friends, their comments, and the comments' parent posts' tags
+    // within the tag class.
     // Parameter 1: person identifier
+    // Parameters 2 and up: tags within the tag class
+    // The query runs once per slice of at most LdbcUtils.maxInListSize
+    // tags.
     private static final String queryString =
         "   SELECT PersonKnowsPerson.person2Id, " +
         "          CommentReplyOfMessage.commentId, " +
@@ -55,7 +64,11 @@ public class Query12 implements ExecutableQuery {
         "    WHERE PersonKnowsPerson.person1Id = ? " +
         "      AND MessageHasCreatorPerson.personId = PersonKnowsPerson.person2Id " +
         "      AND CommentReplyOfMessage.commentId = MessageHasCreatorPerson.messageId " +
-        "      AND PostHasTagTag.postId = CommentReplyOfMessage.messageId";
+        "      AND PostHasTagTag.postId = CommentReplyOfMessage.messageId " +
+        "      AND PostHasTagTag.tagId IN ({ids})";
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = LdbcUtils.withInLists(queryString);
 
     /** A minimal constructor. */
     private Query12() {}
@@ -91,54 +104,52 @@ public class Query12 implements ExecutableQuery {
         // queue reaches 'limit + 1' elements.
         Queue<Query12SortResult> queue = new PriorityQueue<>(limit + 1);
 
-        Map<Long, Query12PartialResult> partials = new HashMap<>();
-        Set<Long> comments = new TreeSet<>();
-
-        ResultSet r = null;
-
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(queryString)) {
-
-            long tagClassId = LdbcUtils.getTagClassId(c, tagClassName);
-
-            // Execute the SQL query and update partial results as necessary.
-            s.setLong(1, personId);
-            r = s.executeQuery();
-            while (r.next()) {
-                long parentPostTagId = r.getLong("PostHasTagTag.tagId");
-                long parentPostTagClassId = LdbcUtils.getTypeTagClassIdOf(c, parentPostTagId);
-
-                // Skip if the post's tag is not in the given class.
-                if (parentPostTagClassId != tagClassId
-                    && !LdbcUtils.isTagClassSubclassOfTagClass(c, parentPostTagClassId, tagClassId))
-                    continue;
-
-                long friendId = r.getLong("PersonKnowsPerson.person2Id");
-                long commentId = r.getLong("CommentReplyOfMessage.commentId");
-
-                Query12PartialResult partial;
-                if (partials.get(friendId) == null) {
-                    partial = new Query12PartialResult(parentPostTagId);
-                    partials.put(friendId, partial);
-                    comments.add(commentId);
-                }
-                else {
-                    partial = partials.get(friendId);
-                    if (!comments.contains(commentId)) {
-                        partial.incReplyCount();
-                        comments.add(commentId);
+        Long2ObjectHashMap<Query12PartialResult> partials = new Long2ObjectHashMap<>();
+        LongHashSet comments = new LongHashSet();
+
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+
+            // Execute the SQL query once per slice of the tags within
+            // the tag class and update partial results as necessary.
+            // Every row has a single tag, so no row comes back twice.
+            long[] tagIds = tagsWithin(c, tagClassName);
+            for (int from = 0; from < tagIds.length; from += LdbcUtils.maxInListSize) {
+                int to = Math.min(from + LdbcUtils.maxInListSize, tagIds.length);
+                PreparedStatement s = LdbcUtils.prepareInList(c, preparedQueries, tagIds, from, to, 2);
+                s.setLong(1, personId);
+                try (ResultSet r = s.executeQuery()) {
+                    while (r.next()) {
+                        long parentPostTagId = r.getLong("PostHasTagTag.tagId");
+                        long friendId = r.getLong("PersonKnowsPerson.person2Id");
+                        long commentId = r.getLong("CommentReplyOfMessage.commentId");
+
+                        Query12PartialResult partial;
+                        if (partials.get(friendId) == null) {
+                            partial = new Query12PartialResult(parentPostTagId);
+                            partials.put(friendId, partial);
+                            comments.add(commentId);
+                        }
+                        else {
+                            partial = partials.get(friendId);
+                            if (!comments.contains(commentId)) {
+                                partial.incReplyCount();
+                                comments.add(commentId);
+                            }
+                            partial.addTag(parentPostTagId);
+                        }
                     }
-                    partial.addTag(parentPostTagId);
                 }
             }
 
             // Iterate over the partial results and add to the sorting queue.
-            for (Map.Entry<Long, Query12PartialResult> entry : partials.entrySet()) {
-                long friendId = entry.getKey();
+            Long2ObjectHashMap<Query12PartialResult>.Cursor cursor = partials.cursor();
+            while (cursor.next()) {
+                long friendId = cursor.key();
 
                 Query12SortResult e = new Query12SortResult(
                      friendId,
-                     entry.getValue().replyCount());
+                     cursor.value().replyCount());
 
                 queue.add(e);
 
@@ -149,34 +160,54 @@ public class Query12 implements ExecutableQuery {
                     ignore = queue.poll();
             }
 
-            // Copy the results by adding elements at the beginning of
-            // the final list filling the additional fields as we go.
+            // Dequeue the friends in reverse order and look up the
+            // names of these top friends only, all at once.
+            List<Query12SortResult> friends = new ArrayList<>();
+            LongArrayDeque friendIds = new LongArrayDeque(queue.size());
             while (queue.size() != 0) {
                 Query12SortResult e = queue.poll(); // Dequeue.
+                friends.add(0, e); // Add at the front.
+                friendIds.addFirst(e.friendId());
+            }
+            Long2ObjectHashMap<PersonSummary> summaries = LdbcUtils.getPersonSummaries(c, friendIds);
+
+            // Copy the results filling the additional fields as we go.
+            for (Query12SortResult e : friends) {
                 long friendId = e.friendId();
+                PersonSummary summary = summaries.get(friendId);
 
                 // Convert tag identifiers to strings.
                 Set<String> tags = new TreeSet<>();
-                for (long tagId : partials.get(friendId).tags())
+                for (long tagId : partials.get(friendId).tags().toArray())
                     tags.add(LdbcUtils.getTagName(c, tagId));
 
                 LdbcQuery12Result result = new LdbcQuery12Result(
                     friendId,
-                    LdbcUtils.getFirstName(c, friendId),
-                    LdbcUtils.getLastName(c, friendId),
+                    summary.firstName(),
+                    summary.lastName(),
                     tags,
                     e.replyCount());
-                results.add(0, result); // Add at the front.
+                results.add(result);
             }
 
-            c.commit();
-        } finally {
-            if (r != null) r.close();
+            t.commit();
         }
 
         return results;
     }
 
+    /**
+     * Find the tags within a tag class.
+     * @param c             A database connection
+     * @param tagClassName  The tag class's name
+     * @return the tags of the given class and its subclasses
+     * @throws SQLException if a database access error occurs
+     */
+    private static long[] tagsWithin(Connection c, String tagClassName) throws SQLException {
+        long tagClassId = LdbcUtils.getTagClassId(c, tagClassName);
+        return DimensionCache.get(c).getTagsWithinTagClass(tagClassId);
+    }
+
     /**
      * Explain the main query for the given inputs.
      * @param db            A database handle
@@ -188,8 +219,13 @@ public class Query12 implements ExecutableQuery {
      */
     private static ResultSet explain(HikariDataSource db, long personId, String tagClassName, int limit) throws SQLException {
         Connection c = db.getConnection();
-        PreparedStatement s = c.prepareStatement(Explanation.query + queryString);
+        long[] tagIds = tagsWithin(c, tagClassName);
+        if (tagIds.length == 0)
+            tagIds = new long[] { -1 }; // A tag no post has.
+        int to = Math.min(tagIds.length, LdbcUtils.maxInListSize);
+        PreparedStatement s = c.prepareStatement(Explanation.query + preparedQueries[LdbcUtils.inListVersion(to)]);
         s.setLong(1, personId);
+        LdbcUtils.bindInList(s, tagIds, 0, to, 2);
         return s.executeQuery();
     }
 
@@ -9,14 +9,17 @@ import com.ldbc.driver.workloads.ldbc.snb.interactive.LdbcQuery13Result;
 import com.zaxxer.hikari.HikariDataSource;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Set;
+import ldbc.collections.Long2ObjectHashMap;
+import ldbc.collections.LongArrayDeque;
+import ldbc.collections.LongHashSet;
+
+import ldbc.utils.ConnectedComponents;
+import ldbc.utils.KnowsGraph;
+import ldbc.utils.LandmarkIndex;
+import ldbc.utils.LdbcUtils;
+import ldbc.utils.Transaction;
 
 /**
  * The Query13 class implements an application that runs complex read
@@ -31,6 +34,12 @@ public class Query13 implements ExecutableQuery {
     private static final String queryParameterFilename = "interactive_13_param.txt";
     private static final String queryParameterFileLinePattern = "(\\d+)\\|(\\d+)";
 
+    /**
+     * The queries of this operation, which every session prepares up
+     * front: none of its own, since it only runs LdbcUtils helpers.
+     */
+    public static final String[] preparedQueries = {};
+
     /** A minimal constructor. */
     private Query13() {}
 
@@ -55,65 +64,140 @@ public class Query13 implements ExecutableQuery {
      * @throws SQLException if a database access error occurs
      */
     public static LdbcQuery13Result query(HikariDataSource ds, long person1Id, long person2Id) throws SQLException {
-        int pathLength = -1;
-
-        // Breadth-first search:
-        // open: the nodes at the current distance
-        // nextOpen: the nodes at the current distance + 1
-        // close: the nodes we have already seen
-        Queue<Long> open = new LinkedList<>();
-        Queue<Long> nextOpen = new LinkedList<>();
-        Set<Long> close = new HashSet<>();
-
-        int distance = 1;
-        open.add(person1Id);
-        close.add(person1Id);
-
-        String friendQuery =
-            "   SELECT PersonKnowsPerson.person2Id " +
-            "     FROM PersonKnowsPerson " +
-            "    WHERE PersonKnowsPerson.person1Id = ?";
-
-        ResultSet r = null;
-
-        // Traverse the graph induced by the Knows relationship
-        // breadth first search until we find the destination node or
-        // there are no more node to visit.
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(friendQuery)) {
-            bfs:
-            while (!open.isEmpty()) {
-                for (Long person : open) {
-                    s.setLong(1, person);
-                    r = s.executeQuery();
-                    while (r.next()) {
-                        long friendId = r.getLong("PersonKnowsPerson.person2Id");
-
-                        if (close.contains(friendId))
-                            continue;
-
-                        nextOpen.add(friendId);
-                        close.add(friendId);
-
-                        if (friendId == person2Id) {
-                            pathLength = distance;
-                            break bfs;
-                        }
-                    }
+        int pathLength;
+
+        // No path connects persons in different components.
+        ConnectedComponents components = ConnectedComponents.current();
+        if (components != null && !components.areConnected(person1Id, person2Id))
+            return new LdbcQuery13Result(-1);
+
+        // Traverse the in-memory snapshot of the Knows relationship
+        // if we have one; the database otherwise.
+        KnowsGraph graph = KnowsGraph.current();
+        try (LandmarkIndex.Bounds bounds = LandmarkIndex.bounds(person1Id, person2Id)) {
+            if (graph != null)
+                pathLength = findShortestPathLength(null, graph, bounds, person1Id, person2Id);
+            else {
+                try (Transaction t = new Transaction(ds)) {
+                    Connection c = t.connection();
+                    pathLength = findShortestPathLength(c, null, bounds, person1Id, person2Id);
+                    t.commit();
                 }
-
-                ++distance;
-                open = nextOpen;
-                nextOpen = new LinkedList<>();
             }
-            c.commit();
-        } finally {
-            if (r != null) r.close();
         }
 
         return new LdbcQuery13Result(pathLength);
     }
 
+    /**
+     * Find the length of the shortest path between two persons using the Knows relationship.
+     *
+     * We run two breadth-first searches, one from each end, and stop
+     * as soon as they meet.  At each step we expand, one full
+     * distance at a time, the side with the smaller frontier.  When
+     * no path exists, we stop as soon as one side runs out of persons
+     * to visit, which is usually long before the other side would
+     * have visited its whole component.
+     *
+     * The landmark bounds give the answer outright when they agree.
+     * Otherwise, we leave out of the frontiers the persons who cannot
+     * lie on a shortest path given the upper bound.
+     *
+     * @param c          A database connection (unused if a graph is given)
+     * @param graph      A snapshot of the Knows relationship or null to use the database
+     * @param bounds     Landmark bounds between the two persons
+     * @param person1Id  The start person unique identifier
+     * @param person2Id  The end person unique identifier
+     * @return the length of single shortest path between the given persons, -1 if no such path exists
+     * @throws SQLException if a database access error occurs
+     */
+    private static int findShortestPathLength(Connection c, KnowsGraph graph, LandmarkIndex.Bounds bounds, long person1Id, long person2Id) throws SQLException {
+        if (person1Id == person2Id)
+            return 0;
+        if (bounds.lowerBound() == Integer.MAX_VALUE)
+            return -1;
+        if (bounds.lowerBound() == bounds.upperBound())
+            return bounds.lowerBound();
+
+        // Bidirectional breadth-first search:
+        // forwardOpen, backwardOpen: the nodes at the current distance from either end
+        // forwardClose, backwardClose: the nodes we have already seen from either end
+        LongArrayDeque forwardOpen = new LongArrayDeque();
+        LongArrayDeque backwardOpen = new LongArrayDeque();
+        LongHashSet forwardClose = new LongHashSet();
+        LongHashSet backwardClose = new LongHashSet();
+
+        int forwardDistance = 0;
+        int backwardDistance = 0;
+        forwardOpen.add(person1Id);
+        forwardClose.add(person1Id);
+        backwardOpen.add(person2Id);
+        backwardClose.add(person2Id);
+
+        while (!forwardOpen.isEmpty() && !backwardOpen.isEmpty()) {
+            boolean forward = forwardOpen.size() <= backwardOpen.size();
+            LongArrayDeque open = forward ? forwardOpen : backwardOpen;
+            LongHashSet close = forward ? forwardClose : backwardClose;
+            LongHashSet otherClose = forward ? backwardClose : forwardClose;
+            int nextDistance = (forward ? forwardDistance : backwardDistance) + 1;
+            LongArrayDeque nextOpen = new LongArrayDeque();
+
+            LongArrayDeque friends = findFriends(c, graph, open);
+            for (int i = 0; i < friends.size(); i++) {
+                long friendId = friends.get(i);
+                // The two searches meet.
+                if (otherClose.contains(friendId))
+                    return forwardDistance + backwardDistance + 1;
+
+                // Skip persons on no shortest path.  We must not add
+                // them to the close set either, or the other side
+                // could meet this one through them.
+                if (close.contains(friendId) || !bounds.mayBeOnShortestPath(friendId, nextDistance, forward))
+                    continue;
+
+                close.add(friendId);
+                nextOpen.add(friendId);
+            }
+
+            if (forward) {
+                forwardOpen = nextOpen;
+                ++forwardDistance;
+            }
+            else {
+                backwardOpen = nextOpen;
+                ++backwardDistance;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Find the friends of all the persons in a frontier.
+     * @param c          A database connection (unused if a graph is given)
+     * @param graph      A snapshot of the Knows relationship or null to use the database
+     * @param personIds  The persons' unique identifiers
+     * @return the friends of the given persons (possibly with duplicates)
+     * @throws SQLException if a database access error occurs
+     */
+    private static LongArrayDeque findFriends(Connection c, KnowsGraph graph, LongArrayDeque personIds) throws SQLException {
+        LongArrayDeque friends = new LongArrayDeque();
+        if (graph != null) {
+            KnowsGraph.FriendCursor cursor = graph.friendCursor();
+            for (int i = 0; i < personIds.size(); i++) {
+                cursor.open(personIds.get(i));
+                while (cursor.next())
+                    friends.add(cursor.friendId());
+            }
+        }
+        else {
+            Long2ObjectHashMap<LongArrayDeque>.Cursor cursor = LdbcUtils.findFriends(c, personIds).cursor();
+            while (cursor.next())
+                friends.addAll(cursor.value().toArray());
+        }
+        return friends;
+    }
+
     /**
      * Execute the query once for every query parameters.
      * @param db               A database handle
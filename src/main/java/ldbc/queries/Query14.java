@@ -16,15 +16,20 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.Set;
-import java.util.Stack;
+import java.util.Map;
 
+import ldbc.collections.Long2IntHashMap;
+import ldbc.collections.Long2ObjectHashMap;
+import ldbc.collections.LongArrayDeque;
+
+import ldbc.utils.ConnectedComponents;
+import ldbc.utils.KnowsGraph;
+import ldbc.utils.LandmarkIndex;
 import ldbc.utils.LdbcUtils;
+import ldbc.utils.Transaction;
 
 /**
  * The Query14 class implements an application that runs complex read
@@ -38,6 +43,20 @@ public class Query14 implements ExecutableQuery {
     private static final String queryName = "Query14";
     private static final String queryParameterFilename = "interactive_14_param.txt";
     private static final String queryParameterFileLinePattern = "(\\d+)\\|(\\d+)";
+    // The interaction counts of some pairs of persons.
+    // Parameters 1 and up: pairs of persons
+    // The query runs once per slice of at most LdbcUtils.maxInListSize
+    // pairs.
+    private static final String weightQueryString =
+        "   SELECT PersonInteraction.person1Id, " +
+        "          PersonInteraction.person2Id, " +
+        "          PersonInteraction.postReplies, " +
+        "          PersonInteraction.commentReplies " +
+        "     FROM PersonInteraction " +
+        "    WHERE (PersonInteraction.person1Id, PersonInteraction.person2Id) IN ({pairs})";
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = LdbcUtils.withInLists(weightQueryString, "{pairs}", 2);
 
     /** A minimal constructor. */
     private Query14() {}
@@ -65,70 +84,34 @@ public class Query14 implements ExecutableQuery {
     public static List<LdbcQuery14Result> query(HikariDataSource ds, long person1Id, long person2Id) throws SQLException {
         List<LdbcQuery14Result> results = new ArrayList<>();
 
-        try (Connection c = ds.getConnection()) {
-            // Find the length of the shortest path between the given persons.
-            int len = findShortestPathLength(c, person1Id, person2Id);
-            if (len > 0) {
-                List<Stack<Long>> paths;
-                // Find all paths between the given persons.
-                paths = findAllShortestPaths(c, person1Id, person2Id, len);
-
-                // Compute the weights and add to the results
-                // (unsorted for now).  To do so, iterate over the
-                // paths.
-                for (Stack<Long> path : paths) {
-                    double weight = 0.0;
-                    long prevFriendId = -1;
-
-                    for (long friendId : path) {
-                        // If we have a pair of friends...
-                        if (prevFriendId != -1) {
-
-                            // First look at the relationship previous
-                            // friend -> friend.
-                            for (long messageId : LdbcUtils.getMessagesCreatedBy(c, prevFriendId)) {
-                                // Skip posts.
-                                if (LdbcUtils.isMessageAPost(c, messageId))
-                                    continue;
-
-                                long parentMessageId = LdbcUtils.getParentMessageId(c, messageId);
-                                long authorId = LdbcUtils.getAuthorOf(c, parentMessageId);
-                                if (authorId == friendId) {
-                                    if (LdbcUtils.isMessageAPost(c, parentMessageId))
-                                        weight += 1.0;
-                                    else
-                                        weight += 0.5;
-                                }
-                            }
-
-                            // Second look at the relationship friend
-                            // -> previous friend.
-                            for (long messageId : LdbcUtils.getMessagesCreatedBy(c, friendId)) {
-                                // Skip posts.
-                                if (LdbcUtils.isMessageAPost(c, messageId))
-                                    continue;
-
-                                long parentMessageId = LdbcUtils.getParentMessageId(c, messageId);
-                                long authorId = LdbcUtils.getAuthorOf(c, parentMessageId);
-                                if (authorId == prevFriendId) {
-                                    if (LdbcUtils.isMessageAPost(c, parentMessageId))
-                                        weight += 1.0;
-                                    else
-                                        weight += 0.5;
-                                }
-                            }
-
-                        }
-
-                        prevFriendId = friendId;
-                    }
-
-                    LdbcQuery14Result result = new LdbcQuery14Result(path, weight);
-                    results.add(result);
-                }
+        // No path connects persons in different components.
+        ConnectedComponents components = ConnectedComponents.current();
+        if (components != null && !components.areConnected(person1Id, person2Id))
+            return results;
+
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            // Find all shortest paths between the given persons.
+            List<List<Long>> paths;
+            try (LandmarkIndex.Bounds bounds = LandmarkIndex.bounds(person1Id, person2Id)) {
+                paths = findAllShortestPaths(c, KnowsGraph.current(), bounds, person1Id, person2Id);
+            }
+            // Look up the interaction weights of all the pairs of
+            // consecutive persons on these paths at once.
+            Map<Long, Map<Long, Double>> weights = findInteractionWeights(c, paths);
+
+            // Compute the weights and add to the results (unsorted
+            // for now).
+            for (List<Long> path : paths) {
+                double weight = 0.0;
+                for (int i = 1; i < path.size(); i++)
+                    weight += weights.get(Math.min(path.get(i - 1), path.get(i))).get(Math.max(path.get(i - 1), path.get(i)));
+
+                LdbcQuery14Result result = new LdbcQuery14Result(path, weight);
+                results.add(result);
             }
 
-            c.commit();
+            t.commit();
         }
 
         // Sort out results.
@@ -149,149 +132,250 @@ public class Query14 implements ExecutableQuery {
     }
 
     /**
-     * Find the length of the shortest path between two persons using the Knows relationship.
+     * Find the interaction weights of all pairs of consecutive persons on the given paths.
      *
-     * We walk the graph induced by the Knows relationship in a
-     * breast-first search fashion.  We stop when we find the end node
-     * (person2Id).  We explore all the friends of the persons
-     * contained in the variable 'open'.  We had each visited friend
-     * in the variable 'close'.  The variable 'open' begins with the
-     * starting node (person1Id).  We had to 'open' in waves through
-     * the variable 'nextOpen' to compute the path's length.
+     * The weight of a pair of persons is the number of direct replies
+     * either person made to a post created by the other plus half the
+     * number of direct replies either made to a comment created by the
+     * other.  We read these counts from the PersonInteraction table,
+     * which the bulk loader and update query 7 maintain, with one
+     * indexed lookup per slice of pairs through a prepared statement.
      *
-     * @param db         A database handle
-     * @param person1Id  Start person
-     * @param person2Id  End person
-     * @return the length of the shortest path between the two given persons (-1 if there is no paths, 0 if start and end persons are the same)
+     * @param db     A database handle
+     * @param paths  Some paths
+     * @return the weight of every pair of consecutive persons on the given paths, keyed by the smaller identifier first
      * @throws SQLException if a database access error occurs
      */
-    private static int findShortestPathLength(Connection db, long person1Id, long person2Id) throws SQLException {
-        if (person1Id == person2Id)
-            return 0;
-
-        int pathLength = -1;
-
-        // Breadth-first search:
-        // open: the nodes at the current distance
-        // nextOpen: the nodes at the current distance + 1
-        // close: the nodes we have already seen
-        Queue<Long> open = new LinkedList<>();
-        Queue<Long> nextOpen = new LinkedList<>();
-        Set<Long> close = new HashSet<>();
-
-        int distance = 1;
-        open.add(person1Id);
-        close.add(person1Id);
-
-        String friendQuery =
-            "   SELECT PersonKnowsPerson.person2Id " +
-            "     FROM PersonKnowsPerson " +
-            "    WHERE PersonKnowsPerson.person1Id = ?";
-
-        ResultSet r = null;
-
-        try (PreparedStatement s = db.prepareStatement(friendQuery)) {
-            bfs:
-            while (!open.isEmpty()) {
-                for (long personId : open) {
-                    s.setLong(1, personId);
-                    r = s.executeQuery();
-                    while (r.next()) {
-                        long friendId = r.getLong("PersonKnowsPerson.person2Id");
-
-                        if (close.contains(friendId))
-                            continue;
-
-                        nextOpen.add(friendId);
-                        close.add(friendId);
-
-                        if (friendId == person2Id) {
-                            pathLength = distance;
-                            break bfs;
-                        }
-                    }
+    private static Map<Long, Map<Long, Double>> findInteractionWeights(Connection db, List<List<Long>> paths) throws SQLException {
+        Map<Long, Map<Long, Double>> weights = new HashMap<>();
+
+        // Collect the distinct pairs, smaller identifier first, as
+        // rows of two persons, in both directions.
+        LongArrayDeque rows = new LongArrayDeque();
+        for (List<Long> path : paths) {
+            for (int i = 1; i < path.size(); i++) {
+                long person1Id = Math.min(path.get(i - 1), path.get(i));
+                long person2Id = Math.max(path.get(i - 1), path.get(i));
+                Map<Long, Double> person1Weights = weights.get(person1Id);
+                if (person1Weights == null) {
+                    person1Weights = new HashMap<>();
+                    weights.put(person1Id, person1Weights);
+                }
+                if (person1Weights.put(person2Id, 0.0) == null) {
+                    rows.add(person1Id);
+                    rows.add(person2Id);
+                    rows.add(person2Id);
+                    rows.add(person1Id);
                 }
-
-                ++distance;
-                open = nextOpen;
-                nextOpen = new LinkedList<>();
             }
         }
-        finally {
-            if (r != null) r.close();
+
+        long[] values = rows.toArray();
+        int rowCount = values.length / 2;
+        for (int from = 0; from < rowCount; from += LdbcUtils.maxInListSize) {
+            int to = Math.min(from + LdbcUtils.maxInListSize, rowCount);
+            PreparedStatement s = LdbcUtils.prepareInList(db, preparedQueries, values, 2, from, to, 1);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next()) {
+                    long person1Id = r.getLong("PersonInteraction.person1Id");
+                    long person2Id = r.getLong("PersonInteraction.person2Id");
+                    double weight = r.getInt("PersonInteraction.postReplies") + 0.5 * r.getInt("PersonInteraction.commentReplies");
+                    Map<Long, Double> person1Weights = weights.get(Math.min(person1Id, person2Id));
+                    long otherId = Math.max(person1Id, person2Id);
+                    person1Weights.put(otherId, person1Weights.get(otherId) + weight);
+                }
+            }
         }
 
-        return pathLength;
+        return weights;
     }
 
     /**
      * Find all shortest paths between two persons.
      *
      * We walk the graph induced by the Knows relationship in a
-     * depth-first search fashion.
+     * breadth-first search fashion from both ends at once, always
+     * expanding the side with the smaller frontier by one full
+     * distance.  For every person we reach, we record their distance
+     * from that end as well as all their predecessors, i.e., the
+     * friends one step closer to that end.  The predecessors form two
+     * layered directed acyclic graphs rooted at either end.
+     *
+     * When an expansion reaches persons already seen from the other
+     * end, the searches have met.  We finish the current expansion to
+     * collect every meeting edge; every shortest path crosses exactly
+     * one of them.  We then enumerate the shortest paths by walking
+     * both predecessor graphs back from each meeting edge, which costs
+     * time proportional to the number of shortest paths rather than to
+     * the size of the search tree.
+     *
+     * We leave out of the search the persons who cannot lie on a
+     * shortest path given the landmark bounds.  The persons on the
+     * shortest paths always remain, so we still find all the paths.
      *
-     * @param db         A database handle
+     * @param db         A database handle (unused if a graph is given)
+     * @param graph      A snapshot of the Knows relationship or null to use the database
+     * @param bounds     Landmark bounds between the two persons
      * @param person1Id  The start person's unique identifier
      * @param person2Id  The end person's unique identifier
-     * @param length     Length of the shortest path (must be greater than 1)
-     * @return all paths between the two given persons as a List of List of person identifiers
+     * @return all shortest paths between the two given persons as a list of lists of person identifiers (empty if there is no path or the persons are the same)
      * @throws SQLException if a database access error occurs
      */
-    private static List<Stack<Long>> findAllShortestPaths(Connection db, long person1Id, long person2Id, int length) throws SQLException {
-        // A candidate shortest path.
-        Stack<Long> path = new Stack<>();
-        // List of shortest paths found so far.
-        List<Stack<Long>> paths = new ArrayList<>();
+    private static List<List<Long>> findAllShortestPaths(Connection db, KnowsGraph graph, LandmarkIndex.Bounds bounds, long person1Id, long person2Id) throws SQLException {
+        List<List<Long>> paths = new ArrayList<>();
+
+        if (person1Id == person2Id || bounds.lowerBound() == Integer.MAX_VALUE)
+            return paths;
+
+        Search forward = new Search(person1Id);
+        Search backward = new Search(person2Id);
+
+        while (!forward.open.isEmpty() && !backward.open.isEmpty()) {
+            boolean isForward = forward.open.size() <= backward.open.size();
+            Search search = isForward ? forward : backward;
+            Search other = isForward ? backward : forward;
+
+            // Meeting edges as pairs of persons (this side, other side).
+            List<long[]> meetings = new ArrayList<>();
+            LongArrayDeque nextOpen = new LongArrayDeque();
+
+            Long2ObjectHashMap<LongArrayDeque> friends = findFriends(db, graph, search.open);
+            for (int i = 0; i < search.open.size(); i++) {
+                long personId = search.open.get(i);
+                LongArrayDeque personFriends = friends.get(personId);
+                if (personFriends == null)
+                    continue;
+
+                for (int j = 0; j < personFriends.size(); j++) {
+                    long friendId = personFriends.get(j);
+                    // The searches meet.  All the meeting persons
+                    // belong to the other side's frontier so all the
+                    // meeting edges lead to paths of the same length.
+                    if (other.distances.containsKey(friendId)) {
+                        meetings.add(new long[] { personId, friendId });
+                        continue;
+                    }
+
+                    // No need to grow this side any further.
+                    if (!meetings.isEmpty())
+                        continue;
+
+                    int distance = search.distances.get(friendId, -1);
+                    if (distance == -1) {
+                        // Skip persons on no shortest path.
+                        if (!bounds.mayBeOnShortestPath(friendId, search.distance + 1, isForward))
+                            continue;
+                        LongArrayDeque predecessors = new LongArrayDeque(4);
+                        predecessors.add(personId);
+                        search.distances.put(friendId, search.distance + 1);
+                        search.predecessors.put(friendId, predecessors);
+                        nextOpen.add(friendId);
+                    }
+                    else if (distance == search.distance + 1)
+                        search.predecessors.get(friendId).add(personId);
+                }
+            }
+
+            if (!meetings.isEmpty()) {
+                Long2ObjectHashMap<List<List<Long>>> forwardPaths = new Long2ObjectHashMap<>();
+                Long2ObjectHashMap<List<List<Long>>> backwardPaths = new Long2ObjectHashMap<>();
+                for (long[] meeting : meetings) {
+                    long forwardId = isForward ? meeting[0] : meeting[1];
+                    long backwardId = isForward ? meeting[1] : meeting[0];
+                    for (List<Long> head : pathsTo(forward, forwardId, forwardPaths)) {
+                        for (List<Long> tail : pathsTo(backward, backwardId, backwardPaths)) {
+                            List<Long> path = new ArrayList<>(head);
+                            for (int i = tail.size() - 1; i >= 0; i--)
+                                path.add(tail.get(i));
+                            paths.add(path);
+                        }
+                    }
+                }
+                return paths;
+            }
 
-        path.push(person1Id);
-        doFindAllShortestPaths(db, paths, path, person1Id, person2Id, length);
+            search.open = nextOpen;
+            ++search.distance;
+        }
 
         return paths;
     }
 
     /**
-     * Where the actual work of finding all shortest paths takes place.
-     *
-     * We pass the list of shortest paths and the current candidate
-     * shortest path as parameters so we can call this function
-     * recursively.
-     *
-     * We might consider using Deque instead of Stack, see comment
-     * associated with Java 7 Stack.
-     *
-     * @param db         A database handle
-     * @param paths      A list where we accumulate all found paths
-     * @param path       A candidate shortest path
-     * @param person1Id  The start person's unique identifier
-     * @param person2Id  The end person's unique identifier
-     * @param length
+     * Enumerate all shortest paths from the root of a search to the given person.
+     * @param search    A breadth-first search
+     * @param personId  A person reached by the search
+     * @param memo      Paths already enumerated for this search, by person
+     * @return all shortest paths from the search's root to the given person (root first)
+     */
+    private static List<List<Long>> pathsTo(Search search, long personId, Long2ObjectHashMap<List<List<Long>>> memo) {
+        List<List<Long>> paths = memo.get(personId);
+        if (paths != null)
+            return paths;
+
+        paths = new ArrayList<>();
+        LongArrayDeque predecessors = search.predecessors.get(personId);
+        if (predecessors.isEmpty()) {
+            // The root.
+            List<Long> path = new ArrayList<>();
+            path.add(personId);
+            paths.add(path);
+        }
+        else {
+            for (int i = 0; i < predecessors.size(); i++) {
+                for (List<Long> prefix : pathsTo(search, predecessors.get(i), memo)) {
+                    List<Long> path = new ArrayList<>(prefix);
+                    path.add(personId);
+                    paths.add(path);
+                }
+            }
+        }
+
+        memo.put(personId, paths);
+        return paths;
+    }
+
+    /**
+     * Find the friends of all the persons in a frontier.
+     * @param db         A database handle (unused if a graph is given)
+     * @param graph      A snapshot of the Knows relationship or null to use the database
+     * @param personIds  The persons' unique identifiers
+     * @return a map from each given person to the list of their friends
      * @throws SQLException if a database access error occurs
      */
-    private static void doFindAllShortestPaths(Connection db, List<Stack<Long>> paths,Stack<Long> path, long person1Id, long person2Id, int length) throws SQLException {
-        if (length == 0)
-            return;
+    private static Long2ObjectHashMap<LongArrayDeque> findFriends(Connection db, KnowsGraph graph, LongArrayDeque personIds) throws SQLException {
+        if (graph == null)
+            return LdbcUtils.findFriends(db, personIds);
+
+        Long2ObjectHashMap<LongArrayDeque> friends = new Long2ObjectHashMap<>(personIds.size());
+        KnowsGraph.FriendCursor cursor = graph.friendCursor();
+        for (int i = 0; i < personIds.size(); i++) {
+            LongArrayDeque deque = new LongArrayDeque();
+            cursor.open(personIds.get(i));
+            while (cursor.next())
+                deque.add(cursor.friendId());
+            friends.put(personIds.get(i), deque);
+        }
+        return friends;
+    }
 
-        for (long friend : LdbcUtils.findFriends(db, person1Id)) {
-            if (friend == person2Id) {
-                assert length == 1;
-                path.push(friend);
-                // Originally I had
-                // "paths.add((Stack<Long>)path.clone())" but it
-                // causes the compiler to generate a warning
-                // (unchecked cast).  The warning could have been
-                // suppressed, but I prefer not to annotate the code
-                // unless there is no other solution.
-                Stack<Long> dup = new Stack<>();
-                dup.addAll(path);
-                paths.add(dup);
-                path.pop();
-                return; // at most one connection between person1Id and person2Id when length is equal to 1
-            }
-            else if (!path.contains(friend)) {
-                path.push(friend);
-                doFindAllShortestPaths(db, paths, path, friend, person2Id, length - 1);
-                path.pop();
-            }
+    /**
+     * The state of a breadth-first search from one end of the paths.
+     */
+    private static class Search {
+        // The persons at the current distance.
+        LongArrayDeque open = new LongArrayDeque();
+        // The distance from the root of every person seen so far.
+        Long2IntHashMap distances = new Long2IntHashMap();
+        // The predecessors of every person seen so far.
+        Long2ObjectHashMap<LongArrayDeque> predecessors = new Long2ObjectHashMap<>();
+        // The current distance.
+        int distance = 0;
+
+        private Search(long rootId) {
+            open.add(rootId);
+            distances.put(rootId, 0);
+            predecessors.put(rootId, new LongArrayDeque(1));
         }
     }
 
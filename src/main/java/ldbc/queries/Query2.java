@@ -21,6 +21,8 @@ import java.util.TimeZone;
 import java.text.SimpleDateFormat;
 
 import ldbc.utils.Explanation;
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
 
 /**
  * The Query2 class implements an application that runs complex read
@@ -53,6 +55,9 @@ public class Query2 implements ExecutableQuery {
         " ORDER BY Message.creationDate DESC, Message.id " +
         "    LIMIT ?";
 
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { queryString };
+
     /** A minimal constructor. */
     private Query2() {}
 
@@ -80,31 +85,28 @@ public class Query2 implements ExecutableQuery {
     public static List<LdbcQuery2Result> query(HikariDataSource ds, long personId, long date, int limit) throws SQLException {
         List<LdbcQuery2Result> results = new ArrayList<>();
 
-        ResultSet r = null;
-
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(queryString)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement s = StatementCache.prepare(c, queryString);
             s.setLong(1, personId);
             s.setLong(2, date);
             s.setInt(3, limit);
-            r = s.executeQuery();
-            while (r.next()) {
-                LdbcQuery2Result result = new LdbcQuery2Result(
-                    r.getLong("Person.id"),
-                    r.getString("Person.firstName"),
-                    r.getString("Person.lastName"),
-                    r.getLong("Message.id"),
-
-                    // One or the other field must be empty.
-                    r.getString("Message.content") + r.getString("Message.imageFile"),
-
-                    r.getLong("Message.creationDate"));
-                results.add(result);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next()) {
+                    LdbcQuery2Result result = new LdbcQuery2Result(
+                        r.getLong("Person.id"),
+                        r.getString("Person.firstName"),
+                        r.getString("Person.lastName"),
+                        r.getLong("Message.id"),
+
+                        // One or the other field must be empty.
+                        r.getString("Message.content") + r.getString("Message.imageFile"),
+
+                        r.getLong("Message.creationDate"));
+                    results.add(result);
+                }
             }
-            c.commit();
-        }
-        finally {
-            if (r != null) r.close();
+            t.commit();
         }
 
         return results;
@@ -14,20 +14,26 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.TimeZone;
 
 import java.text.SimpleDateFormat;
 
+import ldbc.collections.Long2ObjectHashMap;
+import ldbc.collections.LongArrayDeque;
+
+import ldbc.helpers.PersonSummary;
 import ldbc.helpers.Query3Counts;
 import ldbc.helpers.Query3SortResult;
 
+import ldbc.utils.DimensionCache;
+import ldbc.utils.EgoNetworkCache;
 import ldbc.utils.Explanation;
 import ldbc.utils.LdbcUtils;
+import ldbc.utils.Transaction;
 
 /**
  * The Query3 class implements an application that runs complex read
@@ -52,11 +58,12 @@ public class Query3 implements ExecutableQuery {
     // Parameter 6: country Y identifier (same as parameter 2)
     // Parameter 7: start date (same as parameter 3)
     // Parameter 8: end date (same as parameter 4)
-    // Parameter 9: person identifier
-    // Parameter 10: person identifier (same as parameter 9)
-    // Parameter 11: person identifier (same as parameter 9)
-    // Parameter 12: country X identifier (same as parameter 1)
-    // Parameter 13: country Y identifier (same as parameter 2)
+    // Parameters 9 and up: cities of countries X and Y, then friends
+    // and friends of friends
+    // The query runs once per slice of at most LdbcUtils.maxInListSize
+    // friends and friends of friends of the person.  We look up the
+    // cities of countries X and Y in memory so the server can skip
+    // the persons who live there without joining the places.
     private static final String queryString =
         "   SELECT Person.Id, " +
         "          U1.placeId " +
@@ -78,28 +85,29 @@ public class Query3 implements ExecutableQuery {
         "              AND Message.creationDate >= ? " +
         "              AND Message.creationDate < ? " +
         "          ) AS U1, " +
-        "          (SELECT PersonKnowsPerson.person2Id AS friendId " +
-        "             FROM PersonKnowsPerson " +
-        "            WHERE PersonKnowsPerson.person1Id = ? " +
-        "            UNION " +
-        "           SELECT K2.person2Id AS friendId " +
-        "             FROM PersonKnowsPerson AS K1, " +
-        "                  PersonKnowsPerson AS K2 " +
-        "            WHERE K1.person1Id = ? " +
-        "              AND K2.person1Id = K1.person2Id " +
-        "              AND K2.person2Id <> ? " +
-        "          ) AS U2, " +
         "          Person, " +
         "          MessageHasCreatorPerson, " +
-        "          PersonIsLocatedInPlace, " +
-        "          PlaceIsPartOfPlace " +
-        "    WHERE Person.id = U2.friendId " +
-        "      AND MessageHasCreatorPerson.personId = Person.id " +
+        "          PersonIsLocatedInPlace " +
+        "    WHERE MessageHasCreatorPerson.personId = Person.id " +
         "      AND MessageHasCreatorPerson.messageId = U1.messageId " +
         "      AND PersonIsLocatedInPlace.personId = Person.id " +
-        "      AND PlaceIsPartOfPlace.place1Id = PersonIsLocatedInPlace.placeId " +
-        "      AND PlaceIsPartOfPlace.place2Id <> ? " +
-        "      AND PlaceIsPartOfPlace.place2Id <> ?";
+        "      AND PersonIsLocatedInPlace.placeId NOT IN ({cities}) " +
+        "      AND Person.id IN ({ids})";
+    // The versions of the query by size of the list of cities, then
+    // by size of the list of friends.
+    private static final String[][] queries = new String[LdbcUtils.withInLists(queryString).length][];
+    static {
+        String[] citiesQueries = LdbcUtils.withInLists(queryString, "{cities}");
+        for (int i = 0; i < citiesQueries.length; i++)
+            queries[i] = LdbcUtils.withInLists(citiesQueries[i]);
+    }
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = new String[queries.length * queries[0].length];
+    static {
+        for (int i = 0; i < queries.length; i++)
+            System.arraycopy(queries[i], 0, preparedQueries, i * queries[i].length, queries[i].length);
+    }
 
     /** A minimal constructor. */
     private Query3() {}
@@ -136,50 +144,59 @@ public class Query3 implements ExecutableQuery {
         // queue reaches 'limit + 1' elements.
         Queue<Query3SortResult> queue = new PriorityQueue<>(limit + 1);
 
-        ResultSet r = null;
+        List<LdbcQuery3Result> results = new ArrayList<>();
 
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(queryString)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            // Read the network first; see EgoNetworkCache.get.
+            long[] network = EgoNetworkCache.current().get(c, personId).withinTwoHops();
             long endDate = startDate + (long)duration * 24 * 60 * 60 * 1000;
 
             long countryXId = LdbcUtils.getCountryId(c, countryX);
             long countryYId = LdbcUtils.getCountryId(c, countryY);
+            long[] cityIds = excludedCities(c, countryXId, countryYId);
+            String[] versions = queries[LdbcUtils.inListVersion(cityIds.length)];
+            int firstFriendParameter = 9 + LdbcUtils.inListParameterCount(cityIds.length);
 
             // Accumulate counts per country.
-            Map<Long, Query3Counts> counts = new HashMap<>();
-
-            s.setLong(1, countryXId);
-            s.setLong(2, countryYId);
-            s.setLong(3, startDate);
-            s.setLong(4, endDate);
-            s.setLong(5, countryXId);
-            s.setLong(6, countryYId);
-            s.setLong(7, startDate);
-            s.setLong(8, endDate);
-            s.setLong(9, personId);
-            s.setLong(10, personId);
-            s.setLong(11, personId);
-            s.setLong(12, countryXId);
-            s.setLong(13, countryYId);
-            r = s.executeQuery();
-            while (r.next()) {
-                long friendId = r.getLong("Person.id");
-                long countryId = r.getLong("U1.placeId");
-
-                Query3Counts friendCounts = counts.get(friendId);
-                if (friendCounts == null)
-                    counts.put(friendId,
-                               new Query3Counts(countryId == countryXId ? 1 : 0,
-                                                countryId == countryYId ? 1 : 0));
-                else if (countryId == countryXId)
-                    friendCounts.incXCount();
-                else
-                    friendCounts.incYCount();
+            Long2ObjectHashMap<Query3Counts> counts = new Long2ObjectHashMap<>();
+
+            // Every friend falls in a single slice, so the counts of
+            // the slices do not overlap.
+            for (int from = 0; from < network.length; from += LdbcUtils.maxInListSize) {
+                int to = Math.min(from + LdbcUtils.maxInListSize, network.length);
+                PreparedStatement s = LdbcUtils.prepareInList(c, versions, network, from, to, firstFriendParameter);
+                s.setLong(1, countryXId);
+                s.setLong(2, countryYId);
+                s.setLong(3, startDate);
+                s.setLong(4, endDate);
+                s.setLong(5, countryXId);
+                s.setLong(6, countryYId);
+                s.setLong(7, startDate);
+                s.setLong(8, endDate);
+                LdbcUtils.bindInList(s, cityIds, 0, cityIds.length, 9);
+                try (ResultSet r = s.executeQuery()) {
+                    while (r.next()) {
+                        long friendId = r.getLong("Person.id");
+                        long countryId = r.getLong("U1.placeId");
+
+                        Query3Counts friendCounts = counts.get(friendId);
+                        if (friendCounts == null)
+                            counts.put(friendId,
+                                       new Query3Counts(countryId == countryXId ? 1 : 0,
+                                                        countryId == countryYId ? 1 : 0));
+                        else if (countryId == countryXId)
+                            friendCounts.incXCount();
+                        else
+                            friendCounts.incYCount();
+                    }
+                }
             }
 
-            for (Map.Entry<Long, Query3Counts> entry : counts.entrySet()) {
-                long friendId = entry.getKey();
-                Query3Counts friendCounts = entry.getValue();
+            Long2ObjectHashMap<Query3Counts>.Cursor cursor = counts.cursor();
+            while (cursor.next()) {
+                long friendId = cursor.key();
+                Query3Counts friendCounts = cursor.value();
                 int countx = friendCounts.getXCount();
                 int county = friendCounts.getYCount();
 
@@ -188,8 +205,6 @@ public class Query3 implements ExecutableQuery {
                 if (countx != 0 && county != 0) {
                     Query3SortResult e = new Query3SortResult(
                         friendId,
-                        LdbcUtils.getFirstName(c, friendId),
-                        LdbcUtils.getLastName(c, friendId),
                         countx,
                         county);
 
@@ -203,29 +218,59 @@ public class Query3 implements ExecutableQuery {
                 }
             }
 
-            c.commit();
-        } finally {
-            if (r != null) r.close();
-        }
-
-        List<LdbcQuery3Result> results = new ArrayList<>();
+            // Dequeue the friends in reverse order and look up the
+            // names of these top friends only, all at once.
+            List<Query3SortResult> friends = new ArrayList<>();
+            LongArrayDeque friendIds = new LongArrayDeque(queue.size());
+            while (queue.size() != 0) {
+                Query3SortResult e = queue.poll(); // Dequeue.
+                friends.add(0, e); // Add at the front.
+                friendIds.addFirst(e.friendId());
+            }
+            Long2ObjectHashMap<PersonSummary> summaries = LdbcUtils.getPersonSummaries(c, friendIds);
+
+            for (Query3SortResult e : friends) {
+                PersonSummary summary = summaries.get(e.friendId());
+                LdbcQuery3Result result = new LdbcQuery3Result(
+                    e.friendId(),
+                    summary.firstName(),
+                    summary.lastName(),
+                    e.xCount(),
+                    e.yCount(),
+                    e.xCount() + e.yCount());
+                results.add(result);
+            }
 
-        // Add elements to the final result array in reverse order.
-        while (queue.size() != 0) {
-            Query3SortResult e = queue.poll(); // Dequeue.
-            LdbcQuery3Result result = new LdbcQuery3Result(
-                e.friendId(),
-                e.friendFirstName(),
-                e.friendLastName(),
-                e.xCount(),
-                e.yCount(),
-                e.xCount() + e.yCount());
-            results.add(0, result); // Add at the front.
+            t.commit();
         }
 
         return results;
     }
 
+    /**
+     * Find the cities where the friends must not live.
+     *
+     * <p>Countries have far fewer than LdbcUtils.maxInListSize cities.
+     * We return an identifier no place has if neither country has any
+     * since a NOT IN list holding NULL would match no one.
+     *
+     * @param c           A database connection
+     * @param countryXId  Country X's unique identifier
+     * @param countryYId  Country Y's unique identifier
+     * @return the cities of both countries
+     * @throws SQLException if a database access error occurs
+     */
+    private static long[] excludedCities(Connection c, long countryXId, long countryYId) throws SQLException {
+        DimensionCache dimensions = DimensionCache.get(c);
+        long[] citiesX = dimensions.getCitiesOfCountry(countryXId);
+        long[] citiesY = dimensions.getCitiesOfCountry(countryYId);
+        if (citiesX.length + citiesY.length == 0)
+            return new long[] { -1 };
+        long[] cityIds = Arrays.copyOf(citiesX, citiesX.length + citiesY.length);
+        System.arraycopy(citiesY, 0, cityIds, citiesX.length, citiesY.length);
+        return cityIds;
+    }
+
     /**
      * Explain the main query for the given inputs.
      * @param db         A database handle
@@ -240,7 +285,14 @@ public class Query3 implements ExecutableQuery {
         long endDate = startDate + (long)duration * 24 * 60 * 60 * 1000;
         long countryXId = LdbcUtils.getCountryId(c, countryX);
         long countryYId = LdbcUtils.getCountryId(c, countryY);
-        PreparedStatement s = c.prepareStatement(Explanation.query + queryString);
+        long[] cityIds = excludedCities(c, countryXId, countryYId);
+        long[] network = EgoNetworkCache.current().get(c, personId).withinTwoHops();
+        if (network.length == 0)
+            network = new long[] { -1 }; // A person no one knows.
+        int to = Math.min(network.length, LdbcUtils.maxInListSize);
+        PreparedStatement s = c.prepareStatement(Explanation.query + queries[LdbcUtils.inListVersion(cityIds.length)][LdbcUtils.inListVersion(to)]);
+        LdbcUtils.bindInList(s, cityIds, 0, cityIds.length, 9);
+        LdbcUtils.bindInList(s, network, 0, to, 9 + LdbcUtils.inListParameterCount(cityIds.length));
         s.setLong(1, countryXId);
         s.setLong(2, countryYId);
         s.setLong(3, startDate);
@@ -249,11 +301,6 @@ public class Query3 implements ExecutableQuery {
         s.setLong(6, countryYId);
         s.setLong(7, startDate);
         s.setLong(8, endDate);
-        s.setLong(9, personId);
-        s.setLong(10, personId);
-        s.setLong(11, personId);
-        s.setLong(12, countryXId);
-        s.setLong(13, countryYId);
         return s.executeQuery();
     }
 
@@ -21,6 +21,8 @@ import java.util.TimeZone;
 import java.text.SimpleDateFormat;
 
 import ldbc.utils.Explanation;
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
 
 /**
  * The Query4 class implements an application that runs complex read
@@ -62,6 +64,9 @@ public class Query4 implements ExecutableQuery {
         " ORDER BY COUNT(*) DESC, Tag.name " +
         "    LIMIT ?";
 
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { queryString };
+
     /** A minimal constructor. */
     private Query4() {}
 
@@ -90,10 +95,9 @@ public class Query4 implements ExecutableQuery {
     public static List<LdbcQuery4Result> query(HikariDataSource ds, long personId, long startDate, int duration, int limit) throws SQLException {
         List<LdbcQuery4Result> results = new ArrayList<>();
 
-        ResultSet r = null;
-
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(queryString)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement s = StatementCache.prepare(c, queryString);
             s.setLong(1, personId);
             s.setLong(2, startDate);
             s.setLong(3, startDate);
@@ -101,17 +105,15 @@ public class Query4 implements ExecutableQuery {
             s.setLong(5, personId);
             s.setLong(6, startDate);
             s.setInt(7, limit);
-            r = s.executeQuery();
-            while (r.next()) {
-                LdbcQuery4Result result = new LdbcQuery4Result(
-                    r.getString("Tag.name"),
-                    r.getInt("COUNT(*)"));
-                results.add(result);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next()) {
+                    LdbcQuery4Result result = new LdbcQuery4Result(
+                        r.getString("Tag.name"),
+                        r.getInt("COUNT(*)"));
+                    results.add(result);
+                }
             }
-            c.commit();
-        }
-        finally {
-            if (r != null) r.close();
+            t.commit();
         }
 
         return results;
@@ -14,19 +14,21 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.TimeZone;
 
 import java.text.SimpleDateFormat;
 
+import ldbc.collections.Long2IntHashMap;
+
 import ldbc.helpers.Query5SortResult;
 
+import ldbc.utils.EgoNetworkCache;
 import ldbc.utils.Explanation;
 import ldbc.utils.LdbcUtils;
+import ldbc.utils.Transaction;
 
 /**
  * The Query5 class implements an application that runs complex read
@@ -43,54 +45,40 @@ public class Query5 implements ExecutableQuery {
     private static final int queryLimit = 20;
     // Messages created by friends and friends of friends who joined
     // their forums after the given date.
-    // Parameter 1: person identifier
-    // Parameter 2: person identifier (same as parameter 1)
-    // Parameter 3: person identifier (same as parameter 1)
-    // Parameter 4: date
+    // Parameter 1: date
+    // Parameters 2 and up: friends and friends of friends
     private static String queryString =
         "   SELECT ForumHasMemberPerson.forumId, " +
         "          ForumContainerOfPost.postId " +
-        "     FROM (SELECT PersonKnowsPerson.person2Id AS id " +
-        "             FROM PersonKnowsPerson " +
-        "            WHERE PersonKnowsPerson.person1Id = ? " +
-        "            UNION " +
-        "           SELECT K2.person2Id AS id " +
-        "             FROM PersonKnowsPerson AS K1, " +
-        "                  PersonKnowsPerson AS K2 " +
-        "            WHERE K1.person1Id = ?  " +
-        "              AND K2.person1Id = K1.person2Id " +
-        "              AND K2.person2Id <> ? " +
-        "          ) AS Friend, " +
-        "          ForumHasMemberPerson, " +
+        "     FROM ForumHasMemberPerson, " +
         "          ForumContainerOfPost, " +
         "          MessageHasCreatorPerson " +
-        "    WHERE ForumHasMemberPerson.personId = Friend.id " +
-        "      AND ForumHasMemberPerson.joinDate > ? " +
+        "    WHERE ForumHasMemberPerson.joinDate > ? " +
         "      AND ForumContainerOfPost.forumId = ForumHasMemberPerson.forumId " +
-        "      AND MessageHasCreatorPerson.personId = Friend.id " +
-        "      AND ForumContainerOfPost.postId = MessageHasCreatorPerson.messageId";
+        "      AND MessageHasCreatorPerson.personId = ForumHasMemberPerson.personId " +
+        "      AND ForumContainerOfPost.postId = MessageHasCreatorPerson.messageId " +
+        "      AND ForumHasMemberPerson.personId IN ({ids})";
     // Subset of the previous, main query: Forums joined by friends
     // and friends of friends after the given date.
-    // Parameter 1: person identifier
-    // Parameter 2: person identifier (same as parameter 1)
-    // Parameter 3: person identifier (same as parameter 1)
-    // Parameter 4: date
+    // Parameter 1: date
+    // Parameters 2 and up: friends and friends of friends
     private static String subordinateQueryString =
         "   SELECT ForumHasMemberPerson.forumId " +
-        "     FROM (SELECT PersonKnowsPerson.person2Id AS id " +
-        "             FROM PersonKnowsPerson " +
-        "            WHERE PersonKnowsPerson.person1Id = ? " +
-        "            UNION " +
-        "           SELECT K2.person2Id AS id " +
-        "             FROM PersonKnowsPerson AS K1, " +
-        "                  PersonKnowsPerson AS K2 " +
-        "            WHERE K1.person1Id = ?  " +
-        "              AND K2.person1Id = K1.person2Id " +
-        "              AND K2.person2Id <> ? " +
-        "          ) AS Friend, " +
-        "          ForumHasMemberPerson " +
-        "    WHERE ForumHasMemberPerson.personId = Friend.id " +
-        "      AND ForumHasMemberPerson.joinDate > ?";
+        "     FROM ForumHasMemberPerson " +
+        "    WHERE ForumHasMemberPerson.joinDate > ? " +
+        "      AND ForumHasMemberPerson.personId IN ({ids})";
+    // Both queries run once per slice of at most
+    // LdbcUtils.maxInListSize friends and friends of friends of the
+    // person.
+    private static final String[] queries = LdbcUtils.withInLists(queryString);
+    private static final String[] subordinateQueries = LdbcUtils.withInLists(subordinateQueryString);
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = new String[queries.length + subordinateQueries.length];
+    static {
+        System.arraycopy(queries, 0, preparedQueries, 0, queries.length);
+        System.arraycopy(subordinateQueries, 0, preparedQueries, queries.length, subordinateQueries.length);
+    }
 
     /** A minimal constructor. */
     private Query5() {}
@@ -121,36 +109,40 @@ public class Query5 implements ExecutableQuery {
 
         ResultSet r = null;
 
-        try (Connection c = ds.getConnection();
-             PreparedStatement s1 = c.prepareStatement(subordinateQueryString);
-             PreparedStatement s2 = c.prepareStatement(queryString)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            long[] network = EgoNetworkCache.current().get(c, personId).withinTwoHops();
+
             // Number of posts in a given forum.
-            Map<Long, Integer> counts = new HashMap<>();
+            Long2IntHashMap counts = new Long2IntHashMap();
 
             // Identify all the forums joined after the given date by
             // friends of the start person.  Reset the counts of all
             // these forums to zero.
-            s1.setLong(1, personId);
-            s1.setLong(2, personId);
-            s1.setLong(3, personId);
-            s1.setLong(4, date);
-            r = s1.executeQuery();
-            while (r.next())
-                counts.put(r.getLong("ForumHasMemberPerson.forumId"), 0);
-            r.close();
+            for (int from = 0; from < network.length; from += LdbcUtils.maxInListSize) {
+                int to = Math.min(from + LdbcUtils.maxInListSize, network.length);
+                PreparedStatement s1 = LdbcUtils.prepareInList(c, subordinateQueries, network, from, to, 2);
+                s1.setLong(1, date);
+                r = s1.executeQuery();
+                while (r.next())
+                    counts.put(r.getLong("ForumHasMemberPerson.forumId"), 0);
+                r.close();
+            }
 
             // The main query returns all the posts in the forums
             // identified in the previous loop created by friends of
             // the start person.  Count those posts.
-            s2.setLong(1, personId);
-            s2.setLong(2, personId);
-            s2.setLong(3, personId);
-            s2.setLong(4, date);
-            r = s2.executeQuery();
-            while (r.next()) {
-                long forumId = r.getLong("ForumHasMemberPerson.forumId");
-                // ignore r.getLong("ForumContainerOfPost.postId")
-                counts.put(forumId, counts.get(forumId) + 1);
+            for (int from = 0; from < network.length; from += LdbcUtils.maxInListSize) {
+                int to = Math.min(from + LdbcUtils.maxInListSize, network.length);
+                PreparedStatement s2 = LdbcUtils.prepareInList(c, queries, network, from, to, 2);
+                s2.setLong(1, date);
+                r = s2.executeQuery();
+                while (r.next()) {
+                    long forumId = r.getLong("ForumHasMemberPerson.forumId");
+                    // ignore r.getLong("ForumContainerOfPost.postId")
+                    counts.addTo(forumId, 1);
+                }
+                r.close();
             }
 
             // Iterate over all counts, add them to the priority
@@ -163,10 +155,11 @@ public class Query5 implements ExecutableQuery {
             // "highest" priority when the queue reaches 'limit + 1'
             // elements.
             Queue<Query5SortResult> queue = new PriorityQueue<>(limit + 1);
-            for (Map.Entry<Long, Integer> entry : counts.entrySet()) {
+            Long2IntHashMap.Cursor cursor = counts.cursor();
+            while (cursor.next()) {
                 Query5SortResult e = new Query5SortResult(
-                    entry.getKey(),
-                    entry.getValue());
+                    cursor.key(),
+                    cursor.value());
 
                 queue.add(e);
 
@@ -186,7 +179,7 @@ public class Query5 implements ExecutableQuery {
                 results.add(0, result); // Add at the front.
             }
 
-            c.commit();
+            t.commit();
         } finally {
             if (r != null) r.close();
         }
@@ -205,11 +198,13 @@ public class Query5 implements ExecutableQuery {
      */
     private static ResultSet explain(HikariDataSource db, long personId, long date, int limit) throws SQLException {
         Connection c = db.getConnection();
-        PreparedStatement s = c.prepareStatement(Explanation.query + queryString);
-        s.setLong(1, personId);
-        s.setLong(2, personId);
-        s.setLong(3, personId);
-        s.setLong(4, date);
+        long[] network = EgoNetworkCache.current().get(c, personId).withinTwoHops();
+        if (network.length == 0)
+            network = new long[] { -1 }; // A person no one knows.
+        int to = Math.min(network.length, LdbcUtils.maxInListSize);
+        PreparedStatement s = c.prepareStatement(Explanation.query + queries[LdbcUtils.inListVersion(to)]);
+        LdbcUtils.bindInList(s, network, 0, to, 2);
+        s.setLong(1, date);
         return s.executeQuery();
     }
 
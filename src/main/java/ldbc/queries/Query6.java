@@ -15,10 +15,16 @@ import java.sql.SQLException;
 import java.sql.Statement;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+import ldbc.utils.EgoNetworkCache;
 import ldbc.utils.Explanation;
 import ldbc.utils.LdbcUtils;
+import ldbc.utils.Transaction;
 
 /**
  * The Query6 class implements an application that runs complex read
@@ -34,28 +40,20 @@ public class Query6 implements ExecutableQuery {
     private static final String queryParameterFileLinePattern = "(\\d+)\\|(.+)";
     private static final int queryLimit = 10;
     // Tags co-occurring with the given tag.
-    // Parameter 1: person identifier
-    // Parameter 2: person identifier (same as parameter 1)
-    // Parameter 3: tag name
-    // Parameter 4: tag name (same as parameter 3)
-    // Parameter 5: an upper bound on the number of results returned
+    // Parameters 1 to n: the person, their friends, and their friends of friends
+    // Parameter n + 1: tag name
+    // Parameter n + 2: tag name (same as parameter n + 1)
+    // Parameter n + 3: an upper bound on the number of results returned
+    // The query runs once per slice of at most LdbcUtils.maxInListSize
+    // persons.
     private static final String queryString =
         "   SELECT Tag.name, " +
         "          COUNT(*) " +
         "     FROM (SELECT MessageHasCreatorPerson.messageId " +
-        "             FROM (SELECT PersonKnowsPerson.person2Id " +
-        "                     FROM PersonKnowsPerson " +
-        "                    WHERE PersonKnowsPerson.person1Id = ? " +
-        "                    UNION SELECT K2.person2Id " +
-        "                     FROM PersonKnowsPerson AS K1, " +
-        "                          PersonKnowsPerson AS K2 " +
-        "                    WHERE K1.person1Id = ? " +
-        "                      AND K2.person1Id = K1.person2Id " +
-        "                  ) AS Friends, " +
-        "                  MessageHasCreatorPerson, " +
+        "             FROM MessageHasCreatorPerson, " +
         "                  PostHasTagTag, " +
         "                  Tag " +
-        "            WHERE MessageHasCreatorPerson.personId = Friends.person2Id " +
+        "            WHERE MessageHasCreatorPerson.personId IN ({ids}) " +
         "              AND PostHasTagTag.postId = MessageHasCreatorPerson.messageId " +
         "              AND PostHasTagTag.tagId = Tag.id " +
         "              AND Tag.name = ? " +
@@ -69,6 +67,9 @@ public class Query6 implements ExecutableQuery {
         " ORDER BY COUNT(*) DESC, Tag.name " +
         "    LIMIT ?";
 
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = LdbcUtils.withInLists(queryString);
+
     /** A minimal constructor. */
     private Query6() {}
 
@@ -96,25 +97,49 @@ public class Query6 implements ExecutableQuery {
     public static List<LdbcQuery6Result> query(HikariDataSource ds, long personId, String tag, int limit) throws SQLException {
         List<LdbcQuery6Result> results = new ArrayList<>();
 
-        ResultSet r = null;
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(queryString)) {
-            s.setLong(1, personId);
-            s.setLong(2, personId);
-            s.setString(3, tag);
-            s.setString(4, tag);
-            s.setInt(5, limit);
-            r = s.executeQuery();
-            while (r.next()) {
-                LdbcQuery6Result result = new LdbcQuery6Result(
-                    r.getString("Tag.name"),
-                    r.getInt("COUNT(*)"));
-                results.add(result);
+        // A post only counts in the slice of its creator, so the count
+        // of a tag over several slices is the sum of its counts in each
+        // slice.  We then fetch every tag and rank them ourselves.
+        Map<String, Integer> counts = new HashMap<>();
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            long[] network = EgoNetworkCache.current().get(c, personId).reachable();
+            boolean isSliced = network.length > LdbcUtils.maxInListSize;
+            for (int from = 0; from < network.length; from += LdbcUtils.maxInListSize) {
+                int to = Math.min(from + LdbcUtils.maxInListSize, network.length);
+                PreparedStatement s = LdbcUtils.prepareInList(c, preparedQueries, network, from, to, 1);
+                int n = LdbcUtils.inListParameterCount(to - from);
+                s.setString(n + 1, tag);
+                s.setString(n + 2, tag);
+                s.setInt(n + 3, isSliced ? Integer.MAX_VALUE : limit);
+                try (ResultSet r = s.executeQuery()) {
+                    while (r.next()) {
+                        String name = r.getString("Tag.name");
+                        int count = r.getInt("COUNT(*)");
+                        if (isSliced) {
+                            Integer previous = counts.get(name);
+                            counts.put(name, previous == null ? count : previous + count);
+                        }
+                        else
+                            results.add(new LdbcQuery6Result(name, count));
+                    }
+                }
             }
-            c.commit();
+            t.commit();
         }
-        finally {
-            if (r != null) r.close();
+
+        if (!counts.isEmpty()) {
+            List<Map.Entry<String, Integer>> tags = new ArrayList<>(counts.entrySet());
+            Collections.sort(tags, new Comparator<Map.Entry<String, Integer>>() {
+                @Override
+                public int compare(Map.Entry<String, Integer> e1, Map.Entry<String, Integer> e2) {
+                    if (!e1.getValue().equals(e2.getValue()))
+                        return Integer.compare(e2.getValue(), e1.getValue());
+                    return e1.getKey().compareTo(e2.getKey());
+                }
+            });
+            for (Map.Entry<String, Integer> e : tags.subList(0, Math.min(limit, tags.size())))
+                results.add(new LdbcQuery6Result(e.getKey(), e.getValue()));
         }
 
         return results;
@@ -131,12 +156,16 @@ public class Query6 implements ExecutableQuery {
      */
     private static ResultSet explain(HikariDataSource db, long personId, String tag, int limit) throws SQLException {
         Connection c = db.getConnection();
-        PreparedStatement s = c.prepareStatement(Explanation.query + queryString);
-        s.setLong(1, personId);
-        s.setLong(2, personId);
-        s.setString(3, tag);
-        s.setString(4, tag);
-        s.setInt(5, queryLimit);
+        long[] network = EgoNetworkCache.current().get(c, personId).reachable();
+        if (network.length == 0)
+            network = new long[] { -1 }; // A person no one knows.
+        int to = Math.min(network.length, LdbcUtils.maxInListSize);
+        PreparedStatement s = c.prepareStatement(Explanation.query + preparedQueries[LdbcUtils.inListVersion(to)]);
+        LdbcUtils.bindInList(s, network, 0, to, 1);
+        int n = LdbcUtils.inListParameterCount(to);
+        s.setString(n + 1, tag);
+        s.setString(n + 2, tag);
+        s.setInt(n + 3, queryLimit);
         return s.executeQuery();
     }
 
@@ -25,6 +25,8 @@ import java.text.SimpleDateFormat;
 import ldbc.utils.LdbcUtils;
 
 import ldbc.utils.Explanation;
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
 
 /**
  * The Query7 class implements an application that runs complex read
@@ -86,6 +88,9 @@ public class Query7 implements ExecutableQuery {
         "          isFriendOfStartPerson " +
         " ORDER BY date DESC";
 
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { queryString };
+
     /** A minimal constructor. */
     private Query7() {}
 
@@ -114,42 +119,39 @@ public class Query7 implements ExecutableQuery {
 
         Set<Long> likers = new HashSet<>();
 
-        ResultSet r = null;
-
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(queryString)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement s = StatementCache.prepare(c, queryString);
             s.setLong(1, personId);
             s.setLong(2, personId);
             s.setLong(3, personId);
-            r = s.executeQuery();
-            while (r.next() && results.size() < limit) {
-                long likerId = r.getLong("personId");
-
-                // Skip a liker we have already seen (I do not know how to
-                // fold this functionality directly in the SQL query).
-                if (likers.contains(likerId))
-                    continue;
-
-                likers.add(likerId);
-
-                LdbcQuery7Result result = new LdbcQuery7Result(
-                    likerId,
-                    r.getString("Person.firstName"),
-                    r.getString("Person.lastName"),
-                    r.getLong("date"),
-                    r.getLong("U.messageId"),
-
-                    // One or the other field must be empty.
-                    r.getString("Message.content") + r.getString("Message.imageFile"),
-
-                    r.getInt("latency"),
-                    r.getInt("isFriendOfStartPerson") == 0);
-                results.add(result);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next() && results.size() < limit) {
+                    long likerId = r.getLong("personId");
+
+                    // Skip a liker we have already seen (I do not know how to
+                    // fold this functionality directly in the SQL query).
+                    if (likers.contains(likerId))
+                        continue;
+
+                    likers.add(likerId);
+
+                    LdbcQuery7Result result = new LdbcQuery7Result(
+                        likerId,
+                        r.getString("Person.firstName"),
+                        r.getString("Person.lastName"),
+                        r.getLong("date"),
+                        r.getLong("U.messageId"),
+
+                        // One or the other field must be empty.
+                        r.getString("Message.content") + r.getString("Message.imageFile"),
+
+                        r.getInt("latency"),
+                        r.getInt("isFriendOfStartPerson") == 0);
+                    results.add(result);
+                }
             }
-            c.commit();
-        }
-        finally {
-            if (r != null) r.close();
+            t.commit();
         }
 
         return results;
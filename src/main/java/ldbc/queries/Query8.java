@@ -22,6 +22,8 @@ import java.util.TimeZone;
 import java.text.SimpleDateFormat;
 
 import ldbc.utils.Explanation;
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
 
 /**
  * The Query8 class implements an application that runs complex read
@@ -50,6 +52,9 @@ public class Query8 implements ExecutableQuery {
         " ORDER BY Message.creationDate DESC, Message.id " +
         "    LIMIT ?";
 
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { queryString };
+
     /** A minimal constructor. */
     private Query8() {}
 
@@ -76,27 +81,24 @@ public class Query8 implements ExecutableQuery {
     public static List<LdbcQuery8Result> query(HikariDataSource ds, long personId, int limit) throws SQLException {
         List<LdbcQuery8Result> results = new ArrayList<>();
 
-        ResultSet r = null;
-
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(queryString)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement s = StatementCache.prepare(c, queryString);
             s.setLong(1, personId);
             s.setInt(2, limit);
-            r = s.executeQuery();
-            while (r.next()) {
-                LdbcQuery8Result result = new LdbcQuery8Result(
-                    r.getLong("Person.id"),
-                    r.getString("Person.firstName"),
-                    r.getString("Person.lastName"),
-                    r.getLong("Message.creationDate"),
-                    r.getLong("Message.id"),
-                    r.getString("Message.content"));
-                results.add(result);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next()) {
+                    LdbcQuery8Result result = new LdbcQuery8Result(
+                        r.getLong("Person.id"),
+                        r.getString("Person.firstName"),
+                        r.getString("Person.lastName"),
+                        r.getLong("Message.creationDate"),
+                        r.getLong("Message.id"),
+                        r.getString("Message.content"));
+                    results.add(result);
+                }
             }
-            c.commit();
-        }
-        finally {
-            if (r != null) r.close();
+            t.commit();
         }
 
         return results;
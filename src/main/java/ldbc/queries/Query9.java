@@ -15,13 +15,18 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.TimeZone;
 
 import java.text.SimpleDateFormat;
 
+import ldbc.utils.EgoNetworkCache;
 import ldbc.utils.Explanation;
+import ldbc.utils.LdbcUtils;
+import ldbc.utils.Transaction;
 
 /**
  * The Query9 class implements an application that runs complex read
@@ -36,30 +41,27 @@ public class Query9 implements ExecutableQuery {
     private static final String queryParameterFilename = "interactive_9_param.txt";
     private static final String queryParameterFileLinePattern = "(\\d+)\\|(\\d+)";
     private static final int queryLimit = 20;
+    // Recent messages created by friends and friends of friends.
+    // Parameters 1 to n: friends and friends of friends
+    // Parameter n + 1: date
+    // Parameter n + 2: an upper bound on the number of results returned
+    // The query runs once per slice of at most LdbcUtils.maxInListSize
+    // friends and friends of friends.
     private static final String queryString =
         "   SELECT Person.id, Person.firstName, Person.lastName, " +
         "          Message.id, Message.content, Message.imageFile, " +
         "          Message.creationDate " +
-        "     FROM Person, Message, MessageHasCreatorPerson, " +
-        "          (SELECT person2Id " +
-        "             FROM PersonKnowsPerson " +
-        "            WHERE person1Id = ? " +
-
-        "            UNION " +
-
-        "           SELECT k2.person2Id " +
-        "             FROM PersonKnowsPerson as k1, PersonKnowsPerson as k2 " +
-        "            WHERE k1.person1Id = ? " +
-        "              AND k1.person2Id = k2.person1Id " +
-        "              AND k2.person2Id <> ? " +
-        "          ) as f " +
-        "    WHERE f.person2Id = Person.id " +
+        "     FROM Person, Message, MessageHasCreatorPerson " +
+        "    WHERE Person.id IN ({ids}) " +
         "      AND Person.id = MessageHasCreatorPerson.personId " +
         "      AND MessageHasCreatorPerson.messageId = Message.id " +
         "      AND Message.creationDate < ? " +
         " ORDER BY Message.creationDate DESC, Message.id " +
         "    LIMIT ?";
 
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = LdbcUtils.withInLists(queryString);
+
     /** A minimal constructor. */
     private Query9() {}
 
@@ -87,35 +89,47 @@ public class Query9 implements ExecutableQuery {
     public static List<LdbcQuery9Result> query(HikariDataSource ds, long personId, long date, int limit) throws SQLException {
         List<LdbcQuery9Result> results = new ArrayList<>();
 
-        ResultSet r = null;
-
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(queryString)) {
-            s.setLong(1, personId);
-            s.setLong(2, personId);
-            s.setLong(3, personId);
-            s.setLong(4, date);
-            s.setInt(5, limit);
-            r = s.executeQuery();
-            while (r.next()) {
-                LdbcQuery9Result result = new LdbcQuery9Result(
-                    r.getLong("Person.id"),
-                    r.getString("Person.firstName"),
-                    r.getString("Person.lastName"),
-                    r.getLong("Message.id"),
-
-                    // One or the other field must be empty.
-                    r.getString("Message.content") + r.getString("Message.imageFile"),
-
-                    r.getLong("Message.creationDate"));
-                results.add(result);
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            long[] network = EgoNetworkCache.current().get(c, personId).withinTwoHops();
+            for (int from = 0; from < network.length; from += LdbcUtils.maxInListSize) {
+                int to = Math.min(from + LdbcUtils.maxInListSize, network.length);
+                PreparedStatement s = LdbcUtils.prepareInList(c, preparedQueries, network, from, to, 1);
+                int n = LdbcUtils.inListParameterCount(to - from);
+                s.setLong(n + 1, date);
+                s.setInt(n + 2, limit);
+                try (ResultSet r = s.executeQuery()) {
+                    while (r.next()) {
+                        LdbcQuery9Result result = new LdbcQuery9Result(
+                            r.getLong("Person.id"),
+                            r.getString("Person.firstName"),
+                            r.getString("Person.lastName"),
+                            r.getLong("Message.id"),
+
+                            // One or the other field must be empty.
+                            r.getString("Message.content") + r.getString("Message.imageFile"),
+
+                            r.getLong("Message.creationDate"));
+                        results.add(result);
+                    }
+                }
             }
-            c.commit();
-        }
-        finally {
-            if (r != null) r.close();
+            t.commit();
         }
 
+        // The top 'limit' messages are among the top 'limit' messages
+        // of the slices.
+        Collections.sort(results, new Comparator<LdbcQuery9Result>() {
+            @Override
+            public int compare(LdbcQuery9Result r1, LdbcQuery9Result r2) {
+                if (r1.commentOrPostCreationDate() != r2.commentOrPostCreationDate())
+                    return Long.compare(r2.commentOrPostCreationDate(), r1.commentOrPostCreationDate());
+                return Long.compare(r1.commentOrPostId(), r2.commentOrPostId());
+            }
+        });
+        if (results.size() > limit)
+            results.subList(limit, results.size()).clear();
+
         return results;
     }
 
@@ -130,12 +144,15 @@ public class Query9 implements ExecutableQuery {
      */
     private static ResultSet explain(HikariDataSource db, long personId, long date, int limit) throws SQLException {
         Connection c = db.getConnection();
-        PreparedStatement s = c.prepareStatement(Explanation.query + queryString);
-        s.setLong(1, personId);
-        s.setLong(2, personId);
-        s.setLong(3, personId);
-        s.setLong(4, date);
-        s.setInt(5, limit);
+        long[] network = EgoNetworkCache.current().get(c, personId).withinTwoHops();
+        if (network.length == 0)
+            network = new long[] { -1 }; // A person no one knows.
+        int to = Math.min(network.length, LdbcUtils.maxInListSize);
+        PreparedStatement s = c.prepareStatement(Explanation.query + preparedQueries[LdbcUtils.inListVersion(to)]);
+        LdbcUtils.bindInList(s, network, 0, to, 1);
+        int n = LdbcUtils.inListParameterCount(to);
+        s.setLong(n + 1, date);
+        s.setInt(n + 2, limit);
         return s.executeQuery();
     }
 
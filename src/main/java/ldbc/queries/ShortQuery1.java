@@ -9,15 +9,24 @@ import com.ldbc.driver.workloads.ldbc.snb.interactive.LdbcShortQuery1PersonProfi
 import com.zaxxer.hikari.HikariDataSource;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import ldbc.helpers.PersonProfile;
+
+import ldbc.utils.LdbcUtils;
+import ldbc.utils.Transaction;
+
 /**
  * The ShortQuery1 class defines the MySQL-based simple read query 1.
  */
 public class ShortQuery1 {
 
+    /**
+     * The queries of this operation, which every session prepares up
+     * front: none of its own, since it only runs LdbcUtils helpers.
+     */
+    public static final String[] preparedQueries = {};
+
     /**
      * Get a person's profile (first short read query).
      * @param ds        A data source
@@ -28,39 +37,20 @@ public class ShortQuery1 {
     public static LdbcShortQuery1PersonProfileResult query(HikariDataSource ds, long personId) throws SQLException {
         LdbcShortQuery1PersonProfileResult result = null;
 
-        String query =
-            "   SELECT Person.firstName, " +
-            "          Person.lastName, " +
-            "          Person.gender, " +
-            "          Person.birthday, " +
-            "          Person.creationDate, " +
-            "          Person.locationIP, " +
-            "          Person.browserUsed, " +
-            "          PersonIsLocatedInPlace.placeId " +
-            "     FROM Person, " +
-            "          PersonIsLocatedInPlace " +
-            "    WHERE Person.id = ? " +
-            "      AND PersonIsLocatedInPlace.personId = ?";
-        ResultSet r = null;
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(query)) {
-            s.setLong(1, personId);
-            s.setLong(2, personId);
-            r = s.executeQuery();
-            if (r.next())
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PersonProfile profile = LdbcUtils.getPersonProfile(c, personId);
+            if (profile != null)
                 result = new LdbcShortQuery1PersonProfileResult(
-                    r.getString("Person.firstName"),
-                    r.getString("Person.lastName"),
-                    r.getLong("Person.birthday"),
-                    r.getString("Person.locationIP"),
-                    r.getString("Person.browserUsed"),
-                    r.getLong("PersonIsLocatedInPlace.placeId"),
-                    r.getString("Person.gender"),
-                    r.getLong("Person.creationDate"));
-            c.commit();
-        }
-        finally {
-            if (r != null) r.close();
+                    profile.firstName(),
+                    profile.lastName(),
+                    profile.birthday(),
+                    profile.locationIP(),
+                    profile.browserUsed(),
+                    profile.cityId(),
+                    profile.gender(),
+                    profile.creationDate());
+            t.commit();
         }
 
         return result;
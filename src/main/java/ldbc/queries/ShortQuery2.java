@@ -16,13 +16,41 @@ import java.sql.SQLException;
 import java.util.List;
 import java.util.ArrayList;
 
+import ldbc.collections.Long2ObjectHashMap;
+import ldbc.collections.LongArrayDeque;
+
+import ldbc.helpers.PersonSummary;
+
 import ldbc.utils.LdbcUtils;
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
 
 /**
  * The ShortQuery2 class defines the MySQL-based simple read query 2.
  */
 public class ShortQuery2 {
 
+    private static final String queryString =
+        "   SELECT Message.id, " +
+        "          Message.imageFile, " +
+        "          Message.creationDate, " +
+        "          Message.content, " +
+        "          MessageRootPost.rootPostId, " +
+        "          RootPostCreator.personId " +
+        "     FROM MessageHasCreatorPerson, " +
+        "          Message, " +
+        "          MessageRootPost, " +
+        "          MessageHasCreatorPerson AS RootPostCreator " +
+        "    WHERE MessageHasCreatorPerson.personId = ? " +
+        "      AND Message.id = MessageHasCreatorPerson.messageId " +
+        "      AND MessageRootPost.messageId = Message.id " +
+        "      AND RootPostCreator.messageId = MessageRootPost.rootPostId " +
+        " ORDER BY Message.creationDate DESC, " +
+        "          Message.id DESC";
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { queryString };
+
     /**
      * Get a person's recent messages (second short read query).
      * @param ds        A data source
@@ -34,43 +62,43 @@ public class ShortQuery2 {
     public static List<LdbcShortQuery2PersonPostsResult> query(HikariDataSource ds, long personId, int limit) throws SQLException {
         List<LdbcShortQuery2PersonPostsResult> results = new ArrayList<>();
 
-        String query =
-            "   SELECT Message.id, " +
-            "          Message.imageFile, " +
-            "          Message.creationDate, " +
-            "          Message.content " +
-            "     FROM MessageHasCreatorPerson, " +
-            "          Message " +
-            "    WHERE MessageHasCreatorPerson.personId = ? " +
-            "      AND Message.id = MessageHasCreatorPerson.messageId " +
-            " ORDER BY Message.creationDate DESC, " +
-            "          Message.id DESC";
-        ResultSet r = null;
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(query)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement s = StatementCache.prepare(c, queryString);
             int count = 0;
+            LongArrayDeque messageIds = new LongArrayDeque(limit);
+            List<String> contents = new ArrayList<>(limit);
+            LongArrayDeque creationDates = new LongArrayDeque(limit);
+            LongArrayDeque parentPostIds = new LongArrayDeque(limit);
+            LongArrayDeque parentPostAuthorIds = new LongArrayDeque(limit);
             s.setLong(1, personId);
-            r = s.executeQuery();
-            while (r.next() && count++ < limit) {
-                long messageId = r.getLong("Message.id");
-                long parentPostId = LdbcUtils.getParentPostId(c, messageId);
-                long parentPostAuthorId = LdbcUtils.getAuthorOf(c, parentPostId);
-                LdbcShortQuery2PersonPostsResult result = new LdbcShortQuery2PersonPostsResult(
-                    messageId,
-
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next() && count++ < limit) {
+                    messageIds.add(r.getLong("Message.id"));
                     // One or the other field must be empty.
-                    r.getString("Message.imageFile") + r.getString("Message.content"),
-
-                    r.getLong("Message.creationDate"),
-                    parentPostId,
-                    parentPostAuthorId,
-                    LdbcUtils.getFirstName(c, parentPostAuthorId),
-                    LdbcUtils.getLastName(c, parentPostAuthorId));
-                results.add(result);
+                    contents.add(r.getString("Message.imageFile") + r.getString("Message.content"));
+                    creationDates.add(r.getLong("Message.creationDate"));
+                    parentPostIds.add(r.getLong("MessageRootPost.rootPostId"));
+                    parentPostAuthorIds.add(r.getLong("RootPostCreator.personId"));
+                }
+
+                // Look up the names of all the authors at once.
+                Long2ObjectHashMap<PersonSummary> summaries = LdbcUtils.getPersonSummaries(c, parentPostAuthorIds);
+
+                for (int i = 0; i < messageIds.size(); i++) {
+                    PersonSummary author = summaries.get(parentPostAuthorIds.get(i));
+                    LdbcShortQuery2PersonPostsResult result = new LdbcShortQuery2PersonPostsResult(
+                        messageIds.get(i),
+                        contents.get(i),
+                        creationDates.get(i),
+                        parentPostIds.get(i),
+                        parentPostAuthorIds.get(i),
+                        author.firstName(),
+                        author.lastName());
+                    results.add(result);
+                }
             }
-            c.commit();
-        } finally {
-            if (r != null) r.close();
+            t.commit();
         }
 
         return results;
@@ -16,13 +16,31 @@ import java.sql.SQLException;
 import java.util.List;
 import java.util.ArrayList;
 
+import ldbc.collections.Long2ObjectHashMap;
+import ldbc.collections.LongArrayDeque;
+
+import ldbc.helpers.PersonProfile;
+
 import ldbc.utils.LdbcUtils;
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
 
 /**
  * The ShortQuery3 class defines the MySQL-based simple read query 3.
  */
 public class ShortQuery3 {
 
+    private static final String queryString =
+        "   SELECT PersonKnowsPerson.person2Id, " +
+        "          PersonKnowsPerson.creationDate " +
+        "     FROM PersonKnowsPerson " +
+        "    WHERE PersonKnowsPerson.person1Id = ? " +
+        " ORDER BY PersonKnowsPerson.creationDate DESC, " +
+        "          PersonKnowsPerson.person2Id";
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { queryString };
+
     /**
      * Get a person's recent messages (third short read query).
      * @param ds        A data source
@@ -33,34 +51,33 @@ public class ShortQuery3 {
     public static List<LdbcShortQuery3PersonFriendsResult> query(HikariDataSource ds, long personId) throws SQLException {
         List<LdbcShortQuery3PersonFriendsResult> results = new ArrayList<>();
 
-        String query =
-            "   SELECT Person.id, " +
-            "          Person.firstName, " +
-            "          Person.lastName, " +
-            "          PersonKnowsPerson.creationDate " +
-            "     FROM PersonKnowsPerson, " +
-            "          Person " +
-            "    WHERE PersonKnowsPerson.person1Id = ? " +
-            "      AND Person.id = PersonKnowsPerson.person2Id " +
-            " ORDER BY PersonKnowsPerson.creationDate DESC, " +
-            "          Person.id";
-        ResultSet r = null;
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(query)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement s = StatementCache.prepare(c, queryString);
+            LongArrayDeque friendIds = new LongArrayDeque();
+            LongArrayDeque creationDates = new LongArrayDeque();
             s.setLong(1, personId);
-            r = s.executeQuery();
-            while (r.next()) {
-                LdbcShortQuery3PersonFriendsResult result = new LdbcShortQuery3PersonFriendsResult(
-                    r.getLong("Person.id"),
-                    r.getString("Person.firstName"),
-                    r.getString("Person.lastName"),
-                    r.getLong("PersonKnowsPerson.creationDate"));
-                results.add(result);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next()) {
+                    friendIds.add(r.getLong("PersonKnowsPerson.person2Id"));
+                    creationDates.add(r.getLong("PersonKnowsPerson.creationDate"));
+                }
+
+                // Look up the names of all the friends at once.
+                Long2ObjectHashMap<PersonProfile> profiles = LdbcUtils.getPersonProfiles(c, friendIds);
+                for (int i = 0; i < friendIds.size(); i++) {
+                    PersonProfile profile = profiles.get(friendIds.get(i));
+                    if (profile == null)
+                        continue;
+                    LdbcShortQuery3PersonFriendsResult result = new LdbcShortQuery3PersonFriendsResult(
+                        profile.personId(),
+                        profile.firstName(),
+                        profile.lastName(),
+                        creationDates.get(i));
+                    results.add(result);
+                }
             }
-            c.commit();
-        }
-        finally {
-            if (r != null) r.close();
+            t.commit();
         }
 
         return results;
@@ -14,12 +14,24 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 
 import ldbc.utils.LdbcUtils;
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
 
 /**
  * The ShortQuery4 class defines the MySQL-based simple read query 4.
  */
 public class ShortQuery4 {
 
+    private static final String queryString =
+        "   SELECT Message.imageFile, " +
+        "          Message.creationDate, " +
+        "          Message.content " +
+        "     FROM Message " +
+        "    WHERE Message.id = ?";
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { queryString };
+
     /**
      * Get a message's content (fourth short read query).
      * @param ds         A data source
@@ -30,28 +42,20 @@ public class ShortQuery4 {
     public static LdbcShortQuery4MessageContentResult query(HikariDataSource ds, long messageId) throws SQLException {
         LdbcShortQuery4MessageContentResult result = null;
 
-        String query =
-            "   SELECT Message.imageFile, " +
-            "          Message.creationDate, " +
-            "          Message.content " +
-            "     FROM Message " +
-            "    WHERE Message.id = ?";
-        ResultSet r = null;
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(query)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement s = StatementCache.prepare(c, queryString);
             s.setLong(1, messageId);
-            r = s.executeQuery();
-            if (r.next())
-                result = new LdbcShortQuery4MessageContentResult(
+            try (ResultSet r = s.executeQuery()) {
+                if (r.next())
+                    result = new LdbcShortQuery4MessageContentResult(
 
-                    // One or the other field must be empty.
-                    r.getString("Message.imageFile") + r.getString("Message.content"),
+                        // One or the other field must be empty.
+                        r.getString("Message.imageFile") + r.getString("Message.content"),
 
-                    r.getLong("Message.creationDate"));
-            c.commit();
-        }
-        finally {
-            if (r != null) r.close();
+                        r.getLong("Message.creationDate"));
+            }
+            t.commit();
         }
 
         return result;
@@ -9,17 +9,24 @@ import com.ldbc.driver.workloads.ldbc.snb.interactive.LdbcShortQuery5MessageCrea
 import com.zaxxer.hikari.HikariDataSource;
 
 import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 
+import ldbc.helpers.PersonProfile;
+
 import ldbc.utils.LdbcUtils;
+import ldbc.utils.Transaction;
 
 /**
  * The ShortQuery5 class defines the MySQL-based simple read query 5.
  */
 public class ShortQuery5 {
 
+    /**
+     * The queries of this operation, which every session prepares up
+     * front: none of its own, since it only runs LdbcUtils helpers.
+     */
+    public static final String[] preparedQueries = {};
+
     /**
      * Get the message's creator (fifth short read query).
      * @param ds         A data source
@@ -30,28 +37,16 @@ public class ShortQuery5 {
     public static LdbcShortQuery5MessageCreatorResult query(HikariDataSource ds, long messageId) throws SQLException {
         LdbcShortQuery5MessageCreatorResult result = null;
 
-        String query =
-            "   SELECT Person.id, " +
-            "          Person.firstName, " +
-            "          Person.lastName " +
-            "     FROM MessageHasCreatorPerson, " +
-            "          Person " +
-            "    WHERE MessageHasCreatorPerson.messageId = ? " +
-            "      AND Person.id = MessageHasCreatorPerson.personId";
-        ResultSet r = null;
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(query)) {
-            s.setLong(1, messageId);
-            r = s.executeQuery();
-            if (r.next())
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            long creatorId = LdbcUtils.getAuthorOf(c, messageId);
+            PersonProfile profile = creatorId == -1 ? null : LdbcUtils.getPersonProfile(c, creatorId);
+            if (profile != null)
                 result = new LdbcShortQuery5MessageCreatorResult(
-                    r.getLong("Person.id"),
-                    r.getString("Person.firstName"),
-                    r.getString("Person.lastName"));
-            c.commit();
-        }
-        finally {
-            if (r != null) r.close();
+                    profile.personId(),
+                    profile.firstName(),
+                    profile.lastName());
+            t.commit();
         }
 
         return result;
@@ -13,13 +13,32 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 
-import ldbc.utils.LdbcUtils;
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
 
 /**
  * The ShortQuery6 class defines the MySQL-based simple read query 6.
  */
 public class ShortQuery6 {
 
+    private static final String queryString =
+        "   SELECT Forum.id, " +
+        "          Forum.title, " +
+        "          Person.id, " +
+        "          Person.firstName, " +
+        "          Person.lastName " +
+        "     FROM MessageRootPost, " +
+        "          ForumHasModeratorPerson, " +
+        "          Forum, " +
+        "          Person " +
+        "    WHERE MessageRootPost.messageId = ? " +
+        "      AND Forum.id = MessageRootPost.forumId " +
+        "      AND ForumHasModeratorPerson.forumId = MessageRootPost.forumId " +
+        "      AND Person.id = ForumHasModeratorPerson.personId";
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { queryString };
+
     /**
      * Get a message's forum (sixth short read query).
      * @param ds         A data source
@@ -30,39 +49,20 @@ public class ShortQuery6 {
     public static LdbcShortQuery6MessageForumResult query(HikariDataSource ds, long messageId) throws SQLException {
         LdbcShortQuery6MessageForumResult result = null;
 
-        String query =
-            "   SELECT Forum.id, " +
-            "          Forum.title, " +
-            "          Person.id, " +
-            "          Person.firstName, " +
-            "          Person.lastName " +
-            "     FROM ForumContainerOfPost, " +
-            "          ForumHasModeratorPerson, " +
-            "          Forum, " +
-            "          Person " +
-            "    WHERE ForumContainerOfPost.postId = ? " +
-            "      AND Forum.id = ForumContainerOfPost.forumId " +
-            "      AND ForumHasModeratorPerson.forumId = ForumContainerOfPost.forumId " +
-            "      AND Person.id = ForumHasModeratorPerson.personId";
-
-        ResultSet r = null;
-
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(query)) {
-            long parentPostId = LdbcUtils.getParentPostId(c, messageId);
-
-            s.setLong(1, parentPostId);
-            r = s.executeQuery();
-            if (r.next())
-                result = new LdbcShortQuery6MessageForumResult(
-                    r.getLong("Forum.id"),
-                    r.getString("Forum.title"),
-                    r.getLong("Person.id"),
-                    r.getString("Person.firstName"),
-                    r.getString("Person.lastName"));
-            c.commit();
-        } finally {
-            if (r != null) r.close();
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement s = StatementCache.prepare(c, queryString);
+            s.setLong(1, messageId);
+            try (ResultSet r = s.executeQuery()) {
+                if (r.next())
+                    result = new LdbcShortQuery6MessageForumResult(
+                        r.getLong("Forum.id"),
+                        r.getString("Forum.title"),
+                        r.getLong("Person.id"),
+                        r.getString("Person.firstName"),
+                        r.getString("Person.lastName"));
+            }
+            t.commit();
         }
 
         return result;
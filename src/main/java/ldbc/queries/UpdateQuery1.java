@@ -12,11 +12,58 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
+import ldbc.helpers.PersonProfile;
+
+import ldbc.utils.PersonCache;
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
+
 /**
  * The UpdateQuery1 class defines the MySQL-based update query 1.
  */
 public class UpdateQuery1 {
 
+    private static final String addPersonQuery =
+        "   INSERT INTO Person " +
+        "        VALUES (?, " + // id
+        "                ?, " + // firstName
+        "                ?, " + // lastName
+        "                ?, " + // gender
+        "                ?, " + // birthday
+        "                ?, " + // creationDate
+        "                ?, " + // locationIP
+        "                ?)";   // browserUsed
+
+    private static final String addLanguageLinkQuery =
+        "   INSERT INTO PersonSpeaksLanguage " +
+        "        VALUES (?, " + // personId
+        "                ?)";   // language
+
+    private static final String addEmailLinkQuery =
+        "   INSERT INTO PersonEmailEmailAddress " +
+        "        VALUES (?, " + // personId
+        "                ?)";   // email
+
+    private static final String addCityLinkQuery =
+        "   INSERT INTO PersonIsLocatedInPlace " +
+        "        VALUES (?, " + // personId
+        "                ?)";   // cityId
+
+    private static final String addStudyLinkQuery =
+        "   INSERT INTO PersonStudyAtOrganisation " +
+        "        VALUES (?, " + // personId
+        "                ?, " + // organizationId
+        "                ?)";   // classYear
+
+    private static final String addWorkLinkQuery =
+        "   INSERT INTO PersonWorkAtOrganisation " +
+        "        VALUES (?, " + // personId
+        "                ?, " + // organizationId
+        "                ?)"; // workFrom
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { addPersonQuery, addLanguageLinkQuery, addEmailLinkQuery, addCityLinkQuery, addStudyLinkQuery, addWorkLinkQuery };
+
     /**
      * Add a person.
      * @param ds          A data source
@@ -25,51 +72,14 @@ public class UpdateQuery1 {
      */
     public static void query(HikariDataSource ds, LdbcUpdate1AddPerson parameters) throws SQLException {
 
-        String addPersonQuery =
-            "   INSERT INTO Person " +
-            "        VALUES (?, " + // id
-            "                ?, " + // firstName
-            "                ?, " + // lastName
-            "                ?, " + // gender
-            "                ?, " + // birthday
-            "                ?, " + // creationDate
-            "                ?, " + // locationIP
-            "                ?)";   // browserUsed
-
-        String addLanguageLinkQuery =
-            "   INSERT INTO PersonSpeaksLanguage " +
-            "        VALUES (?, " + // personId
-            "                ?)";   // language
-
-        String addEmailLinkQuery =
-            "   INSERT INTO PersonEmailEmailAddress " +
-            "        VALUES (?, " + // personId
-            "                ?)";   // email
-
-        String addCityLinkQuery =
-            "   INSERT INTO PersonIsLocatedInPlace " +
-            "        VALUES (?, " + // personId
-            "                ?)";   // cityId
-
-        String addStudyLinkQuery =
-            "   INSERT INTO PersonStudyAtOrganisation " +
-            "        VALUES (?, " + // personId
-            "                ?, " + // organizationId
-            "                ?)";   // classYear
-
-        String addWorkLinkQuery =
-            "   INSERT INTO PersonWorkAtOrganisation " +
-            "        VALUES (?, " + // personId
-            "                ?, " + // organizationId
-            "                ?)"; // workFrom
-
-        try (Connection c = ds.getConnection();
-             PreparedStatement addPersonStatement = c.prepareStatement(addPersonQuery);
-             PreparedStatement addLanguageLinkStatement = c.prepareStatement(addLanguageLinkQuery);
-             PreparedStatement addEmailLinkStatement = c.prepareStatement(addEmailLinkQuery);
-             PreparedStatement addCityLinkStatement = c.prepareStatement(addCityLinkQuery);
-             PreparedStatement addStudyLinkStatement = c.prepareStatement(addStudyLinkQuery);
-             PreparedStatement addWorkLinkStatement = c.prepareStatement(addWorkLinkQuery)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement addPersonStatement = StatementCache.prepare(c, addPersonQuery);
+            PreparedStatement addLanguageLinkStatement = StatementCache.prepare(c, addLanguageLinkQuery);
+            PreparedStatement addEmailLinkStatement = StatementCache.prepare(c, addEmailLinkQuery);
+            PreparedStatement addCityLinkStatement = StatementCache.prepare(c, addCityLinkQuery);
+            PreparedStatement addStudyLinkStatement = StatementCache.prepare(c, addStudyLinkQuery);
+            PreparedStatement addWorkLinkStatement = StatementCache.prepare(c, addWorkLinkQuery);
             addPersonStatement.setLong(1, parameters.personId());
             addPersonStatement.setString(2, parameters.personFirstName());
             addPersonStatement.setString(3, parameters.personLastName());
@@ -110,8 +120,20 @@ public class UpdateQuery1 {
                 addWorkLinkStatement.executeUpdate();
             }
 
-            c.commit();
+            t.commit();
         }
+
+        // Write the new person through to the person cache.
+        PersonCache.current().put(new PersonProfile(
+            parameters.personId(),
+            parameters.personFirstName(),
+            parameters.personLastName(),
+            parameters.gender(),
+            parameters.birthday().getTime(),
+            parameters.creationDate().getTime(),
+            parameters.locationIp(),
+            parameters.browserUsed(),
+            parameters.cityId()));
     }
 
 }
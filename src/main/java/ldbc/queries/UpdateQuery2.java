@@ -12,11 +12,23 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
+
 /**
  * The UpdateQuery2 class defines the MySQL-based update query 2.
  */
 public class UpdateQuery2 {
 
+    private static final String queryString =
+        "   INSERT INTO PersonLikesPost " +
+        "        VALUES (?, " + // personId
+        "                ?, " + // postId
+        "                ?)";   // creationDate
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { queryString };
+
     /**
      * Add a 'likes' edge from a person to a post.
      * @param ds          A data source
@@ -24,18 +36,14 @@ public class UpdateQuery2 {
      * @throws SQLException if a database access error occurs
      */
     public static void query(HikariDataSource ds, LdbcUpdate2AddPostLike parameters) throws SQLException {
-        String query =
-            "   INSERT INTO PersonLikesPost " +
-            "        VALUES (?, " + // personId
-            "                ?, " + // postId
-            "                ?)";   // creationDate
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(query)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement s = StatementCache.prepare(c, queryString);
             s.setLong(1, parameters.personId());
             s.setLong(2, parameters.postId());
             s.setLong(3, parameters.creationDate().getTime());
             s.executeUpdate();
-            c.commit();
+            t.commit();
         }
     }
 
@@ -12,11 +12,33 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
+
 /**
  * The UpdateQuery4 class defines the MySQL-based update query 4.
  */
 public class UpdateQuery4 {
 
+    private static final String addForumQuery =
+        "   INSERT INTO Forum " +
+        "        VALUES (?, " + // id
+        "                ?, " + // title
+        "                ?)";   // creationDate
+
+    private static final String addModeratorLinkQuery =
+        "   INSERT INTO ForumHasModeratorPerson " +
+        "        VALUES (?, " + // forumId
+        "                ?)";   // personId
+
+    private static final String addTagLinkQuery =
+        "   INSERT INTO ForumHasTagTag " +
+        "        VALUES (?, " + // forumId
+        "                ?)";   // tagId
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { addForumQuery, addModeratorLinkQuery, addTagLinkQuery };
+
     /**
      * Add a forum.
      * @param ds          A data source
@@ -25,26 +47,11 @@ public class UpdateQuery4 {
      */
     public static void query(HikariDataSource ds, LdbcUpdate4AddForum parameters) throws SQLException {
 
-        String addForumQuery =
-            "   INSERT INTO Forum " +
-            "        VALUES (?, " + // id
-            "                ?, " + // title
-            "                ?)";   // creationDate
-
-        String addModeratorLinkQuery =
-            "   INSERT INTO ForumHasModeratorPerson " +
-            "        VALUES (?, " + // forumId
-            "                ?)";   // personId
-
-        String addTagLinkQuery =
-            "   INSERT INTO ForumHasTagTag " +
-            "        VALUES (?, " + // forumId
-            "                ?)";   // tagId
-
-        try (Connection c = ds.getConnection();
-             PreparedStatement addForumStatement = c.prepareStatement(addForumQuery);
-             PreparedStatement addModeratorLinktatement = c.prepareStatement(addModeratorLinkQuery);
-             PreparedStatement addTagLinkStatement = c.prepareStatement(addTagLinkQuery)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement addForumStatement = StatementCache.prepare(c, addForumQuery);
+            PreparedStatement addModeratorLinktatement = StatementCache.prepare(c, addModeratorLinkQuery);
+            PreparedStatement addTagLinkStatement = StatementCache.prepare(c, addTagLinkQuery);
             addForumStatement.setLong(1, parameters.forumId());
             addForumStatement.setString(2, parameters.forumTitle());
             addForumStatement.setLong(3, parameters.creationDate().getTime());
@@ -60,7 +67,7 @@ public class UpdateQuery4 {
                 addTagLinkStatement.executeUpdate();
             }
 
-            c.commit();
+            t.commit();
         }
 
     }
@@ -12,11 +12,23 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
+
 /**
  * The UpdateQuery5 class defines the MySQL-based update query 5.
  */
 public class UpdateQuery5 {
 
+    private static final String queryString =
+        "   INSERT INTO ForumHasMemberPerson " +
+        "        VALUES (?, " + // forumId
+        "                ?, " + // personId
+        "                ?)";   // joinDate
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { queryString };
+
     /**
      * Add an edge from a forum to a person..
      * @param ds          A data source
@@ -24,18 +36,14 @@ public class UpdateQuery5 {
      * @throws SQLException if a database access error occurs
      */
     public static void query(HikariDataSource ds, LdbcUpdate5AddForumMembership parameters) throws SQLException {
-        String query =
-            "   INSERT INTO ForumHasMemberPerson " +
-            "        VALUES (?, " + // forumId
-            "                ?, " + // personId
-            "                ?)";   // joinDate
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(query)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement s = StatementCache.prepare(c, queryString);
             s.setLong(1, parameters.forumId());
             s.setLong(2, parameters.personId());
             s.setLong(3, parameters.joinDate().getTime());
             s.executeUpdate();
-            c.commit();
+            t.commit();
         }
     }
 
@@ -12,11 +12,57 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
+import ldbc.utils.MessageCache;
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
+
 /**
  * The UpdateQuery6 class defines the MySQL-based update query 6.
  */
 public class UpdateQuery6 {
 
+    private static final String addPostQuery =
+        "   INSERT INTO Message " +
+        "        VALUES (?, " + // commentId
+        "                ?, " + // imageFile
+        "                ?, " + // creationDate
+        "                ?, " + // locationIP
+        "                ?, " + // browserUsed
+        "                ?, " + // language
+        "                ?, " + // content
+        "                ?)";   // length
+
+    private static final String addAuthorLinkQuery =
+        "   INSERT INTO MessageHasCreatorPerson " +
+        "        VALUES (?, " + // postId
+        "                ?)";   // personId
+
+    private static final String addForumLinkQuery =
+        "   INSERT INTO ForumContainerOfPost " +
+        "        VALUES (?, " + // forumId
+        "                ?)";   // postId
+
+    // A post is its own root.
+    private static final String addRootPostQuery =
+        "   INSERT INTO MessageRootPost " +
+        "        VALUES (?, " + // postId
+        "                ?, " + // postId
+        "                ?, " + // forumId
+        "                0)";   // depth
+
+    private static final String addCountryLinkQuery =
+        "   INSERT INTO PostIsLocatedInPlace " +
+        "        VALUES (?, " + // postId
+        "                ?)";   // countryId
+
+    private static final String addTagLinkQuery =
+        "   INSERT INTO PostHasTagTag " +
+        "        VALUES (?, " + // postId
+        "                ?)";   // tagId
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { addPostQuery, addAuthorLinkQuery, addForumLinkQuery, addRootPostQuery, addCountryLinkQuery, addTagLinkQuery };
+
     /**
      * Add a post.
      * @param ds          A data source
@@ -25,43 +71,14 @@ public class UpdateQuery6 {
      */
     public static void query(HikariDataSource ds, LdbcUpdate6AddPost parameters) throws SQLException {
 
-        String addPostQuery =
-            "   INSERT INTO Message " +
-            "        VALUES (?, " + // commentId
-            "                ?, " + // imageFile
-            "                ?, " + // creationDate
-            "                ?, " + // locationIP
-            "                ?, " + // browserUsed
-            "                ?, " + // language
-            "                ?, " + // content
-            "                ?)";   // length
-
-        String addAuthorLinkQuery =
-            "   INSERT INTO MessageHasCreatorPerson " +
-            "        VALUES (?, " + // postId
-            "                ?)";   // personId
-
-        String addForumLinkQuery =
-            "   INSERT INTO ForumContainerOfPost " +
-            "        VALUES (?, " + // forumId
-            "                ?)";   // postId
-
-        String addCountryLinkQuery =
-            "   INSERT INTO PostIsLocatedInPlace " +
-            "        VALUES (?, " + // postId
-            "                ?)";   // countryId
-
-        String addTagLinkQuery =
-            "   INSERT INTO PostHasTagTag " +
-            "        VALUES (?, " + // postId
-            "                ?)";   // tagId
-
-        try (Connection c = ds.getConnection();
-             PreparedStatement addPostStatement = c.prepareStatement(addPostQuery);
-             PreparedStatement addAuthorLinkStatement = c.prepareStatement(addAuthorLinkQuery);
-             PreparedStatement addForumLinkStatement = c.prepareStatement(addForumLinkQuery);
-             PreparedStatement addCountryLinkStatement = c.prepareStatement(addCountryLinkQuery);
-             PreparedStatement addTagLinkStatement = c.prepareStatement(addTagLinkQuery)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement addPostStatement = StatementCache.prepare(c, addPostQuery);
+            PreparedStatement addAuthorLinkStatement = StatementCache.prepare(c, addAuthorLinkQuery);
+            PreparedStatement addForumLinkStatement = StatementCache.prepare(c, addForumLinkQuery);
+            PreparedStatement addRootPostStatement = StatementCache.prepare(c, addRootPostQuery);
+            PreparedStatement addCountryLinkStatement = StatementCache.prepare(c, addCountryLinkQuery);
+            PreparedStatement addTagLinkStatement = StatementCache.prepare(c, addTagLinkQuery);
             addPostStatement.setLong(1, parameters.postId());
             addPostStatement.setString(2, parameters.imageFile());
             addPostStatement.setLong(3, parameters.creationDate().getTime());
@@ -80,6 +97,11 @@ public class UpdateQuery6 {
             addForumLinkStatement.setLong(2, parameters.postId());
             addForumLinkStatement.executeUpdate();
 
+            addRootPostStatement.setLong(1, parameters.postId());
+            addRootPostStatement.setLong(2, parameters.postId());
+            addRootPostStatement.setLong(3, parameters.forumId());
+            addRootPostStatement.executeUpdate();
+
             addCountryLinkStatement.setLong(1, parameters.postId());
             addCountryLinkStatement.setLong(2, parameters.countryId());
             addCountryLinkStatement.executeUpdate();
@@ -90,9 +112,12 @@ public class UpdateQuery6 {
                 addTagLinkStatement.executeUpdate();
             }
 
-            c.commit();
+            t.commit();
         }
 
+        // Cache the new post's creator; a post has no parent.
+        MessageCache.current().put(parameters.postId(), parameters.authorPersonId(), MessageCache.noParent);
+
     }
 
 }
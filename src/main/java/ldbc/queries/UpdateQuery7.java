@@ -12,11 +12,73 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
+import ldbc.utils.MessageCache;
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
+
 /**
  * The UpdateQuery7 class defines the MySQL-based update query 7.
  */
 public class UpdateQuery7 {
 
+    private static final String addCommentQuery =
+        "   INSERT INTO Message " +
+        "        VALUES (?, " +  // commentId
+        "                '', " + // no imageFile
+        "                ?, " +  // creationDate
+        "                ?, " +  // locationIP
+        "                ?, " +  // browserUsed
+        "                '', " + // no language
+        "                ?, " +  // content
+        "                ?)";    // length
+
+    private static final String addAuthorLinkQuery =
+        "   INSERT INTO MessageHasCreatorPerson " +
+        "        VALUES (?, " + // commentId
+        "                ?)";   // personId
+
+    private static final String addCountryLinkQuery =
+        "   INSERT INTO CommentIsLocatedInPlace " +
+        "        VALUES (?, " + // commentId
+        "                ?)";   // countryId
+
+    private static final String addReplyLinkQuery =
+        "   INSERT INTO CommentReplyOfMessage " +
+        "        VALUES (?, " + // commentId
+        "                ?)";   // messageId
+
+    // A comment has the same root post as the message it replies to.
+    private static final String addRootPostQuery =
+        "   INSERT INTO MessageRootPost " +
+        "        SELECT ?, " + // commentId
+        "               MessageRootPost.rootPostId, " +
+        "               MessageRootPost.forumId, " +
+        "               MessageRootPost.depth + 1 " +
+        "          FROM MessageRootPost " +
+        "         WHERE MessageRootPost.messageId = ?"; // messageId
+
+    private static final String addTagLinkQuery =
+        "   INSERT INTO CommentHasTagTag " +
+        "        VALUES (?, " + // commentId
+        "                ?)";   // tagId
+
+    // Count one more reply from the comment's author to the
+    // parent message's author.
+    private static final String addInteractionQuery =
+        "   INSERT INTO PersonInteraction " +
+        "        SELECT ?, " + // authorPersonId
+        "               MessageHasCreatorPerson.personId, " +
+        "               ?, " + // 1 if replying to a post, 0 otherwise
+        "               ? " +  // 1 if replying to a comment, 0 otherwise
+        "          FROM MessageHasCreatorPerson " +
+        "         WHERE MessageHasCreatorPerson.messageId = ? " + // messageId
+        "            ON DUPLICATE KEY UPDATE " +
+        "               postReplies = postReplies + VALUES(postReplies), " +
+        "               commentReplies = commentReplies + VALUES(commentReplies)";
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { addCommentQuery, addAuthorLinkQuery, addCountryLinkQuery, addReplyLinkQuery, addRootPostQuery, addTagLinkQuery, addInteractionQuery };
+
     /**
      * Add a comment.
      * @param ds          A data source
@@ -25,43 +87,15 @@ public class UpdateQuery7 {
      */
     public static void query(HikariDataSource ds, LdbcUpdate7AddComment parameters) throws SQLException {
 
-        String addCommentQuery =
-            "   INSERT INTO Message " +
-            "        VALUES (?, " +  // commentId
-            "                '', " + // no imageFile
-            "                ?, " +  // creationDate
-            "                ?, " +  // locationIP
-            "                ?, " +  // browserUsed
-            "                '', " + // no language
-            "                ?, " +  // content
-            "                ?)";    // length
-
-        String addAuthorLinkQuery =
-            "   INSERT INTO MessageHasCreatorPerson " +
-            "        VALUES (?, " + // commentId
-            "                ?)";   // personId
-
-        String addCountryLinkQuery =
-            "   INSERT INTO CommentIsLocatedInPlace " +
-            "        VALUES (?, " + // commentId
-            "                ?)";   // countryId
-
-        String addReplyLinkQuery =
-            "   INSERT INTO CommentReplyOfMessage " +
-            "        VALUES (?, " + // commentId
-            "                ?)";   // messageId
-
-        String addTagLinkQuery =
-            "   INSERT INTO CommentHasTagTag " +
-            "        VALUES (?, " + // commentId
-            "                ?)";   // tagId
-
-        try (Connection c = ds.getConnection();
-             PreparedStatement addCommentStatement = c.prepareStatement(addCommentQuery);
-             PreparedStatement addAuthorLinkStatement = c.prepareStatement(addAuthorLinkQuery);
-             PreparedStatement addCountryLinkStatement = c.prepareStatement(addCountryLinkQuery);
-             PreparedStatement addReplyLinkStatement = c.prepareStatement(addReplyLinkQuery);
-             PreparedStatement addTagLinkStatement = c.prepareStatement(addTagLinkQuery)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement addCommentStatement = StatementCache.prepare(c, addCommentQuery);
+            PreparedStatement addAuthorLinkStatement = StatementCache.prepare(c, addAuthorLinkQuery);
+            PreparedStatement addCountryLinkStatement = StatementCache.prepare(c, addCountryLinkQuery);
+            PreparedStatement addReplyLinkStatement = StatementCache.prepare(c, addReplyLinkQuery);
+            PreparedStatement addRootPostStatement = StatementCache.prepare(c, addRootPostQuery);
+            PreparedStatement addTagLinkStatement = StatementCache.prepare(c, addTagLinkQuery);
+            PreparedStatement addInteractionStatement = StatementCache.prepare(c, addInteractionQuery);
             addCommentStatement.setLong(1, parameters.commentId());
             addCommentStatement.setLong(2, parameters.creationDate().getTime());
             addCommentStatement.setString(3, parameters.locationIp());
@@ -79,19 +113,33 @@ public class UpdateQuery7 {
             addCountryLinkStatement.executeUpdate();
 
             long messageId = parameters.replyToPostId();
-            if (messageId == -1)
+            boolean isReplyToPost = messageId != -1;
+            if (!isReplyToPost)
                 messageId = parameters.replyToCommentId();
             addReplyLinkStatement.setLong(1, parameters.commentId());
             addReplyLinkStatement.setLong(2, messageId);
             addReplyLinkStatement.executeUpdate();
 
+            addRootPostStatement.setLong(1, parameters.commentId());
+            addRootPostStatement.setLong(2, messageId);
+            addRootPostStatement.executeUpdate();
+
+            addInteractionStatement.setLong(1, parameters.authorPersonId());
+            addInteractionStatement.setInt(2, isReplyToPost ? 1 : 0);
+            addInteractionStatement.setInt(3, isReplyToPost ? 0 : 1);
+            addInteractionStatement.setLong(4, messageId);
+            addInteractionStatement.executeUpdate();
+
             addTagLinkStatement.setLong(1, parameters.commentId());
             for (long tagId : parameters.tagIds()) {
                 addTagLinkStatement.setLong(2, tagId);
                 addTagLinkStatement.executeUpdate();
             }
 
-            c.commit();
+            t.commit();
+
+            // Cache the new comment's creator and parent.
+            MessageCache.current().put(parameters.commentId(), parameters.authorPersonId(), messageId);
         }
 
     }
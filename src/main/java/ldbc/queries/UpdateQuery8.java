@@ -12,11 +12,27 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
+import ldbc.utils.ConnectedComponents;
+import ldbc.utils.EgoNetworkCache;
+import ldbc.utils.KnowsGraph;
+import ldbc.utils.LandmarkIndex;
+import ldbc.utils.StatementCache;
+import ldbc.utils.Transaction;
+
 /**
  * The UpdateQuery8 class defines the MySQL-based update query 8.
  */
 public class UpdateQuery8 {
 
+    private static final String queryString =
+        "   INSERT INTO PersonKnowsPerson " +
+        "        VALUES (?, " + // person1Id
+        "                ?, " + // person2Id
+        "                ?)";   // creationDate
+
+    /** The queries of this operation, which every session prepares up front. */
+    public static final String[] preparedQueries = { queryString };
+
     /**
      * Add a friendship.
      * @param ds          A data source
@@ -24,13 +40,9 @@ public class UpdateQuery8 {
      * @throws SQLException if a database access error occurs
      */
     public static void query(HikariDataSource ds, LdbcUpdate8AddFriendship parameters) throws SQLException {
-        String query =
-            "   INSERT INTO PersonKnowsPerson " +
-            "        VALUES (?, " + // person1Id
-            "                ?, " + // person2Id
-            "                ?)";   // creationDate
-        try (Connection c = ds.getConnection();
-             PreparedStatement s = c.prepareStatement(query)) {
+        try (Transaction t = new Transaction(ds)) {
+            Connection c = t.connection();
+            PreparedStatement s = StatementCache.prepare(c, queryString);
             s.setLong(1, parameters.person1Id());
             s.setLong(2, parameters.person2Id());
             s.setLong(3, parameters.creationDate().getTime());
@@ -39,7 +51,37 @@ public class UpdateQuery8 {
             s.setLong(2, parameters.person1Id());
             s.setLong(3, parameters.creationDate().getTime());
             s.executeUpdate();
-            c.commit();
+
+            // Forget the friends and friends of friends this
+            // friendship changes before anyone can see it, so no
+            // reader keeps a network computed without it.
+            EgoNetworkCache egoNetworks = EgoNetworkCache.current();
+            egoNetworks.friendshipAdding(c, parameters.person1Id(), parameters.person2Id());
+            try {
+                t.commit();
+
+                // Keep the in-memory snapshot of the Knows relationship,
+                // if any, in sync with the database.  The landmark index,
+                // if we keep one, adds the friendship to the snapshot
+                // itself so no query sees the friendship before its
+                // distances account for it.  We add the friendship to the
+                // snapshot before we merge the components so a query that
+                // finds the persons connected also finds a path.
+                KnowsGraph graph = KnowsGraph.current();
+                LandmarkIndex landmarks = LandmarkIndex.current();
+                if (landmarks != null)
+                    landmarks.addFriendship(parameters.person1Id(), parameters.person2Id(), parameters.creationDate().getTime());
+                else if (graph != null)
+                    graph.addFriendship(parameters.person1Id(), parameters.person2Id(), parameters.creationDate().getTime());
+
+                // Merge the persons' components, if we index them.
+                ConnectedComponents components = ConnectedComponents.current();
+                if (components != null)
+                    components.addFriendship(parameters.person1Id(), parameters.person2Id());
+            }
+            finally {
+                egoNetworks.friendshipSettled();
+            }
         }
     }
 
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.utils;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.Arrays;
+
+/**
+ * The ArrayKnowsStorage class holds a snapshot of the Knows
+ * relationship in heap arrays.
+ *
+ * <p>The snapshot uses a compressed sparse row (CSR) layout: a sorted
+ * array of person identifiers, an array of offsets, and arrays
+ * holding the friends of every person, and the dates these
+ * friendships were created, back to back.  The friends of the person
+ * at index i occupy the range [offsets[i], offsets[i + 1]) of the
+ * friend array.
+ */
+class ArrayKnowsStorage implements KnowsStorage {
+
+    private static final long[] none = new long[0];
+
+    private final long[] ids;
+    private final int[] offsets;
+    private final long[] friends;
+    private final long[] creationDates;
+
+    /**
+     * Construct a snapshot from its CSR representation.
+     * @param ids            Sorted person identifiers
+     * @param offsets        Start of the friends of each person in the friend array (one more entry than ids)
+     * @param friends        Friends of all persons back to back
+     * @param creationDates  Creation dates of all friendships, parallel to the friend array
+     */
+    private ArrayKnowsStorage(long[] ids, int[] offsets, long[] friends, long[] creationDates) {
+        this.ids = ids;
+        this.offsets = offsets;
+        this.friends = friends;
+        this.creationDates = creationDates;
+    }
+
+    /**
+     * Build a snapshot of the Knows relationship.
+     *
+     * <p>We read the relationship in one pass, ordered by the first
+     * person, and let the driver stream the rows to us rather than
+     * materializing the whole result set first.
+     *
+     * @param c  A database connection
+     * @return a snapshot of the Knows relationship
+     * @throws SQLException if a database access error occurs
+     */
+    static ArrayKnowsStorage load(Connection c) throws SQLException {
+        long[] ids = new long[1024];
+        int[] offsets = new int[1025];
+        long[] friends = new long[8192];
+        long[] creationDates = new long[8192];
+        int personCount = 0;
+        int friendCount = 0;
+        long prevPersonId = -1;
+
+        try (Statement s = c.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Ask MySQL Connector/J to stream the result set.
+            s.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet r = s.executeQuery(KnowsGraph.knowsQuery)) {
+                while (r.next()) {
+                    long personId = r.getLong(1);
+                    long friendId = r.getLong(2);
+                    long creationDate = r.getLong(3);
+
+                    // Start a new row.
+                    if (personCount == 0 || personId != prevPersonId) {
+                        if (personCount == ids.length) {
+                            ids = Arrays.copyOf(ids, 2 * personCount);
+                            offsets = Arrays.copyOf(offsets, 2 * personCount + 1);
+                        }
+                        ids[personCount] = personId;
+                        offsets[personCount] = friendCount;
+                        personCount++;
+                        prevPersonId = personId;
+                    }
+
+                    if (friendCount == friends.length) {
+                        friends = Arrays.copyOf(friends, 2 * friends.length);
+                        creationDates = Arrays.copyOf(creationDates, 2 * creationDates.length);
+                    }
+                    friends[friendCount] = friendId;
+                    creationDates[friendCount] = creationDate;
+                    friendCount++;
+                }
+            }
+        }
+        offsets[personCount] = friendCount;
+
+        return new ArrayKnowsStorage(Arrays.copyOf(ids, personCount),
+                                     Arrays.copyOf(offsets, personCount + 1),
+                                     Arrays.copyOf(friends, friendCount),
+                                     Arrays.copyOf(creationDates, friendCount));
+    }
+
+    public int personCount() { return ids.length; }
+
+    public long[] personIds() { return ids.clone(); }
+
+    public long edgeCount() { return friends.length; }
+
+    public long[] friends(long personId) {
+        int i = Arrays.binarySearch(ids, personId);
+        return i < 0 ? none : Arrays.copyOfRange(friends, offsets[i], offsets[i + 1]);
+    }
+
+    public int degree(long personId) {
+        int i = Arrays.binarySearch(ids, personId);
+        return i < 0 ? 0 : offsets[i + 1] - offsets[i];
+    }
+
+    public long[] creationDates(long personId) {
+        int i = Arrays.binarySearch(ids, personId);
+        return i < 0 ? none : Arrays.copyOfRange(creationDates, offsets[i], offsets[i + 1]);
+    }
+
+    public Cursor cursor() {
+        return new Cursor() {
+            // The current friend's index and the end of the person's friends.
+            private int index = 0;
+            private int end = 0;
+
+            public void open(long personId) {
+                int i = Arrays.binarySearch(ids, personId);
+                index = i < 0 ? 0 : offsets[i] - 1;
+                end = i < 0 ? 0 : offsets[i + 1];
+            }
+
+            public boolean next() { return ++index < end; }
+
+            public long friendId() { return friends[index]; }
+        };
+    }
+
+}
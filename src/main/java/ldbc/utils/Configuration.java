@@ -7,6 +7,8 @@ package ldbc.utils;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 
 /**
@@ -20,7 +22,12 @@ import java.util.Properties;
  * "parameterFilesDirectory" holding query input parameter files, and
  * a "datasetDirectory" containing the merged generated dataset in the
  * CSV format.  Optional parameters are "beVerbose", "measureLatency",
- * "printHeapUsage", and "explain".
+ * "printHeapUsage", "explain", "useKnowsGraph", "knowsGraphFile",
+ * "useConnectedComponents", "landmarkCount", "egoNetworkCacheSize",
+ * "personCacheSize", "messageCacheBudget", "loaderThreads",
+ * "loaderTransformThreads", "loaderSplitSize", "loaderSkipBinaryLog",
+ * and "loaderLocalInfile", as well as the pool and Connector/J settings
+ * described in ConnectionSettings.
  */
 public class Configuration {
 
@@ -31,6 +38,19 @@ public class Configuration {
     private boolean measureLatency;
     private boolean printHeapUsage;
     private boolean explain;
+    private boolean useKnowsGraph;
+    private String knowsGraphFile;
+    private boolean useConnectedComponents;
+    private int landmarkCount;
+    private long egoNetworkCacheSize;
+    private int personCacheSize;
+    private long messageCacheBudget;
+    private ConnectionSettings connectionSettings;
+    private int loaderThreads;
+    private int loaderTransformThreads;
+    private long loaderSplitSize;
+    private boolean loaderSkipBinaryLog;
+    private boolean loaderLocalInfile;
 
     // Required properties.
     private String host;
@@ -46,8 +66,9 @@ public class Configuration {
      * @throws ConfigurationFileNotFoundException if params.ini is not found
      * @throws ConfigurationIOException if a problem occurs while reading params.ini
      * @throws MissingConfigurationException if a required property if missing
+     * @throws InvalidConfigurationException if a pool, Connector/J, cache, or loader setting is invalid
      */
-    public Configuration() throws ConfigurationFileNotFoundException, ConfigurationIOException, MissingConfigurationException {
+    public Configuration() throws ConfigurationFileNotFoundException, ConfigurationIOException, MissingConfigurationException, InvalidConfigurationException {
         try {
             Properties config = new Properties();
             config.load(new FileInputStream(configFilename));
@@ -55,6 +76,26 @@ public class Configuration {
             measureLatency = config.getProperty("measureLatency", "false").equals("true");
             printHeapUsage = config.getProperty("printHeapUsage", "false").equals("true");
             explain = config.getProperty("explain", "false").equals("true");
+            useKnowsGraph = config.getProperty("useKnowsGraph", "true").equals("true");
+            knowsGraphFile = config.getProperty("knowsGraphFile");
+            useConnectedComponents = config.getProperty("useConnectedComponents", "true").equals("true");
+            landmarkCount = Integer.parseInt(config.getProperty("landmarkCount", Integer.toString(LandmarkIndex.defaultLandmarkCount)));
+            egoNetworkCacheSize = Long.parseLong(config.getProperty("egoNetworkCacheSize", Long.toString(EgoNetworkCache.defaultCapacity)));
+            personCacheSize = Integer.parseInt(config.getProperty("personCacheSize", Integer.toString(PersonCache.defaultCapacity)));
+            if (personCacheSize < 0) throw new InvalidConfigurationException(configFilename + ": personCacheSize: Less than 0: " + personCacheSize);
+            messageCacheBudget = Long.parseLong(config.getProperty("messageCacheBudget", Long.toString(MessageCache.defaultBudget)));
+            Map<String, String> properties = new HashMap<>();
+            for (String name : config.stringPropertyNames())
+                properties.put(name, config.getProperty(name));
+            connectionSettings = new ConnectionSettings(properties);
+            loaderThreads = Integer.parseInt(config.getProperty("loaderThreads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+            if (loaderThreads < 1) throw new InvalidConfigurationException(configFilename + ": loaderThreads: Less than 1: " + loaderThreads);
+            loaderTransformThreads = Integer.parseInt(config.getProperty("loaderTransformThreads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+            if (loaderTransformThreads < 1) throw new InvalidConfigurationException(configFilename + ": loaderTransformThreads: Less than 1: " + loaderTransformThreads);
+            loaderSplitSize = Long.parseLong(config.getProperty("loaderSplitSize", Long.toString(256L << 20)));
+            if (loaderSplitSize < 0) throw new InvalidConfigurationException(configFilename + ": loaderSplitSize: Less than 0: " + loaderSplitSize);
+            loaderSkipBinaryLog = config.getProperty("loaderSkipBinaryLog", "false").equals("true");
+            loaderLocalInfile = config.getProperty("loaderLocalInfile", "false").equals("true");
             if ((host = config.getProperty("host")) == null) throw new MissingConfigurationException(configFilename + ": host: No such field defined");
             if ((port = config.getProperty("port")) == null) throw new MissingConfigurationException(configFilename + ": port: No such field defined");
             if ((database = config.getProperty("database")) == null) throw new MissingConfigurationException(configFilename + ": database: No such field defined");
@@ -69,6 +110,9 @@ public class Configuration {
         catch (IOException e) {
             throw new ConfigurationIOException(configFilename + ": IO exception while reading");
         }
+        catch (IllegalArgumentException e) {
+            throw new InvalidConfigurationException(configFilename + ": " + e.getMessage());
+        }
     }
 
     /**
@@ -95,6 +139,84 @@ public class Configuration {
      */
     public boolean printHeapUsage() { return printHeapUsage; }
 
+    /**
+     * Should we traverse an in-memory snapshot of the Knows relationship?
+     * @return true if we must load and use an in-memory Knows graph
+     */
+    public boolean useKnowsGraph() { return useKnowsGraph; }
+
+    /**
+     * Which Knows graph snapshot file written by the bulk loader should we map, if any?
+     * @return the name of a snapshot file or null to take a snapshot from the database
+     */
+    public String knowsGraphFile() { return knowsGraphFile; }
+
+    /**
+     * Should we index the connected components of the Knows relationship?
+     * @return true if queries 13 and 14 must check first whether a path can exist
+     */
+    public boolean useConnectedComponents() { return useConnectedComponents; }
+
+    /**
+     * How many landmarks should bound the shortest paths?
+     * @return the number of landmarks (0 disables the landmark index)
+     */
+    public int landmarkCount() { return landmarkCount; }
+
+    /**
+     * How many friend identifiers may we cache?
+     * @return a bound on the number of identifiers held by the ego network cache
+     */
+    public long egoNetworkCacheSize() { return egoNetworkCacheSize; }
+
+    /**
+     * How many person profiles may we cache?
+     * @return a bound on the number of profiles held by the person cache
+     */
+    public int personCacheSize() { return personCacheSize; }
+
+    /**
+     * How much memory may the message cache take?
+     * @return a bound on the memory taken by the message cache in bytes
+     */
+    public long messageCacheBudget() { return messageCacheBudget; }
+
+    /**
+     * How should we size the connection pool and tune Connector/J?
+     * @return the pool and Connector/J settings
+     */
+    public ConnectionSettings connectionSettings() { return connectionSettings; }
+
+    /**
+     * How many tables may the bulk loader load at once?
+     * @return the number of worker connections of the bulk loader
+     */
+    public int loaderThreads() { return loaderThreads; }
+
+    /**
+     * How many threads may transcode the dataset files at once?
+     * @return the number of transform threads of the bulk loader
+     */
+    public int loaderTransformThreads() { return loaderTransformThreads; }
+
+    /**
+     * How large may a dataset file get before the bulk loader loads it in several parts at once?
+     * @return the number of bytes per part or 0 to load every file whole
+     */
+    public long loaderSplitSize() { return loaderSplitSize; }
+
+    /**
+     * Should the bulk loader keep its loads out of the binary log?
+     * @return true if the bulk loader must turn sql_log_bin off (requires privileges)
+     */
+    public boolean loaderSkipBinaryLog() { return loaderSkipBinaryLog; }
+
+    /**
+     * Should the bulk loader stream the transcoded files to the database rather than stage them on its host?
+     * @return true if the bulk loader must use LOAD DATA LOCAL INFILE
+     */
+    public boolean loaderLocalInfile() { return loaderLocalInfile; }
+
     /**
      * A host for the database.
      * @return a name or IP address for the host
@@ -161,4 +283,12 @@ public class Configuration {
 
     }
 
+    /** Define an exception to be thrown if a configuration item has an invalid value. */
+    public class InvalidConfigurationException extends Exception {
+
+        public InvalidConfigurationException(String message) { super(message); }
+        public InvalidConfigurationException(String message, Throwable throwable) { super(message, throwable); }
+
+    }
+
 }
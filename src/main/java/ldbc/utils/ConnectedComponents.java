@@ -0,0 +1,191 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.utils;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.Arrays;
+
+import ldbc.collections.Long2IntHashMap;
+
+/**
+ * The ConnectedComponents class tracks the connected components of
+ * the graph induced by the Knows relationship.
+ *
+ * <p>We keep a union-find (disjoint-set) structure over the persons
+ * with at least one friend: every person points to a parent in the
+ * same component, and the roots stand for the components.  We merge
+ * components by size and halve paths as we follow them, so answering
+ * whether two persons are connected, or merging two components when
+ * update query 8 adds a friendship, takes nearly constant time.
+ * Persons without friends are not recorded; each of them is a
+ * component of their own.
+ *
+ * <p>Queries 13 and 14 consult the index installed with {@link
+ * #setCurrent} so they can give up immediately on persons that no
+ * path connects, rather than after exploring a whole component.
+ */
+public class ConnectedComponents {
+
+    // The index used by the queries, if any.
+    private static volatile ConnectedComponents current = null;
+
+    // The index of every recorded person in the arrays below.
+    private final Long2IntHashMap indices;
+
+    // The parent of every recorded person (roots are their own parent).
+    private int[] parents;
+
+    // The number of persons in the component of every root.
+    private int[] sizes;
+
+    // The number of recorded persons.
+    private int count = 0;
+
+    /**
+     * Construct an index where every person is alone.
+     * @param expectedSize  The number of persons expected
+     */
+    private ConnectedComponents(int expectedSize) {
+        indices = new Long2IntHashMap(expectedSize);
+        parents = new int[Math.max(expectedSize, 16)];
+        sizes = new int[parents.length];
+    }
+
+    /**
+     * Build the index from a snapshot of the Knows relationship.
+     * @param graph  A snapshot of the Knows relationship
+     * @return the connected components of the given graph
+     */
+    public static ConnectedComponents build(KnowsGraph graph) {
+        long[] personIds = graph.personIds();
+        ConnectedComponents components = new ConnectedComponents(personIds.length);
+        KnowsGraph.FriendCursor cursor = graph.friendCursor();
+        for (long personId : personIds) {
+            cursor.open(personId);
+            while (cursor.next())
+                if (personId < cursor.friendId())
+                    components.union(personId, cursor.friendId());
+        }
+        return components;
+    }
+
+    /**
+     * Build the index from the database.
+     *
+     * <p>Every friendship appears in both directions in the table so
+     * we only need to read half of them.  We let the driver stream
+     * the rows to us.
+     *
+     * @param c  A database connection
+     * @return the connected components of the Knows relationship
+     * @throws SQLException if a database access error occurs
+     */
+    public static ConnectedComponents load(Connection c) throws SQLException {
+        String knowsQuery =
+            "   SELECT PersonKnowsPerson.person1Id, " +
+            "          PersonKnowsPerson.person2Id " +
+            "     FROM PersonKnowsPerson " +
+            "    WHERE PersonKnowsPerson.person1Id < PersonKnowsPerson.person2Id";
+
+        ConnectedComponents components = new ConnectedComponents(1024);
+        try (Statement s = c.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            // Ask MySQL Connector/J to stream the result set.
+            s.setFetchSize(Integer.MIN_VALUE);
+            try (ResultSet r = s.executeQuery(knowsQuery)) {
+                while (r.next())
+                    components.union(r.getLong(1), r.getLong(2));
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Return the index installed for use by the queries.
+     * @return the current index or null if there is none
+     */
+    public static ConnectedComponents current() { return current; }
+
+    /**
+     * Install an index for use by the queries.
+     * @param components  An index or null to make the queries do without
+     */
+    public static void setCurrent(ConnectedComponents components) { current = components; }
+
+    /**
+     * Return true if some path connects two persons.
+     * @param person1Id  One person's unique identifier
+     * @param person2Id  Another person's unique identifier
+     * @return true if the two persons are in the same component
+     */
+    public synchronized boolean areConnected(long person1Id, long person2Id) {
+        if (person1Id == person2Id)
+            return true;
+        int i = indices.get(person1Id, -1);
+        int j = indices.get(person2Id, -1);
+        return i != -1 && j != -1 && find(i) == find(j);
+    }
+
+    /**
+     * Record a new friendship between two persons.
+     *
+     * <p>The caller is responsible for adding the friendship to the
+     * database as well.
+     *
+     * @param person1Id  One person's unique identifier
+     * @param person2Id  Another person's unique identifier
+     */
+    public synchronized void addFriendship(long person1Id, long person2Id) {
+        union(person1Id, person2Id);
+    }
+
+    /**
+     * Return the number of persons with at least one friend.
+     * @return the number of persons recorded in the index
+     */
+    public synchronized int personCount() { return count; }
+
+    private void union(long person1Id, long person2Id) {
+        int i = find(indexOf(person1Id));
+        int j = find(indexOf(person2Id));
+        if (i == j)
+            return;
+        if (sizes[i] < sizes[j]) {
+            int k = i;
+            i = j;
+            j = k;
+        }
+        parents[j] = i;
+        sizes[i] += sizes[j];
+    }
+
+    private int find(int i) {
+        while (parents[i] != i) {
+            parents[i] = parents[parents[i]];
+            i = parents[i];
+        }
+        return i;
+    }
+
+    // Return the index of the given person, recording them if needed.
+    private int indexOf(long personId) {
+        int i = indices.get(personId, -1);
+        if (i != -1)
+            return i;
+        if (count == parents.length) {
+            parents = Arrays.copyOf(parents, 2 * count);
+            sizes = Arrays.copyOf(sizes, 2 * count);
+        }
+        i = count++;
+        parents[i] = i;
+        sizes[i] = 1;
+        indices.put(personId, i);
+        return i;
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * The ConnectionSettings class holds the settings of the connection
+ * pool and of the MySQL JDBC driver (Connector/J).
+ *
+ * <p>The settings come from the properties passed to the LDBC driver
+ * or from <tt>params.ini</tt>.  The pool takes "poolSize" connections
+ * (by default the LDBC driver's "thread_count", so every thread gets
+ * one) and keeps "minimumIdle" of them open (by default all).  The
+ * Connector/J properties named below default to values suited to
+ * the short, repeated queries of the benchmark; any other Connector/J
+ * property may be passed by prefixing its name with "dataSource.",
+ * as in HikariCP's own configuration files.
+ */
+public class ConnectionSettings {
+
+    /** The default number of connections in the pool. */
+    public static final int defaultPoolSize = 10;
+
+    /** The prefix of the names of other Connector/J properties. */
+    public static final String dataSourcePrefix = "dataSource.";
+
+    // The Connector/J properties we set and their defaults.
+    private static final String[][] connectorDefaults = {
+        { "useServerPrepStmts", "true" },
+        { "cachePrepStmts", "true" },
+        { "prepStmtCacheSize", "250" },
+        { "prepStmtCacheSqlLimit", "2048" },
+        { "useLocalSessionState", "true" },
+        { "useLocalTransactionState", "true" },
+        { "rewriteBatchedStatements", "true" },
+        { "cacheResultSetMetadata", "true" },
+        { "cacheServerConfiguration", "true" },
+        { "elideSetAutoCommits", "true" },
+        { "maintainTimeStats", "false" }
+    };
+
+    private final int poolSize;
+    private final int minimumIdle;
+    // The Connector/J properties, in the order set.
+    private final Map<String, String> connectorProperties = new LinkedHashMap<>();
+
+    /**
+     * Construct the settings found in some properties, using the
+     * defaults for the missing ones.
+     * @param properties  The LDBC driver's or params.ini's properties
+     * @throws IllegalArgumentException if a setting has an invalid value; the message names the setting
+     */
+    public ConnectionSettings(Map<String, String> properties) {
+        // The LDBC driver names its thread count either way.
+        String threadCount = properties.get("thread_count");
+        if (threadCount == null)
+            threadCount = properties.get("tc");
+        int defaultSize = threadCount == null ? defaultPoolSize : parseInt("thread_count", threadCount, 1);
+        poolSize = properties.get("poolSize") == null ? defaultSize : parseInt("poolSize", properties.get("poolSize"), 1);
+        minimumIdle = properties.get("minimumIdle") == null ? poolSize : parseInt("minimumIdle", properties.get("minimumIdle"), 0);
+        if (minimumIdle > poolSize)
+            throw new IllegalArgumentException("minimumIdle: Exceeds poolSize (" + poolSize + ")");
+
+        for (String[] setting : connectorDefaults) {
+            String name = setting[0];
+            String value = properties.get(name);
+            if (value == null)
+                value = setting[1];
+            else if (setting[1].equals("true") || setting[1].equals("false")) {
+                if (!value.equals("true") && !value.equals("false"))
+                    throw new IllegalArgumentException(name + ": Not a boolean: \"" + value + "\"");
+            }
+            else
+                parseInt(name, value, 0);
+            connectorProperties.put(name, value);
+        }
+        for (Map.Entry<String, String> property : properties.entrySet())
+            if (property.getKey().startsWith(dataSourcePrefix))
+                connectorProperties.put(property.getKey().substring(dataSourcePrefix.length()), property.getValue());
+    }
+
+    /**
+     * How many connections should the pool hold at most?
+     * @return the maximum number of connections in the pool
+     */
+    public int poolSize() { return poolSize; }
+
+    /**
+     * How many idle connections should the pool keep open?
+     * @return the minimum number of idle connections in the pool
+     */
+    public int minimumIdle() { return minimumIdle; }
+
+    /**
+     * Which properties should we pass to Connector/J?
+     * @return a fresh copy of the Connector/J properties
+     */
+    public Properties connectorProperties() {
+        Properties properties = new Properties();
+        properties.putAll(connectorProperties);
+        return properties;
+    }
+
+    /**
+     * Describe the effective settings.
+     * @return the settings, one name=value pair after another
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("poolSize=").append(poolSize);
+        sb.append(", minimumIdle=").append(minimumIdle);
+        for (Map.Entry<String, String> property : connectorProperties.entrySet())
+            sb.append(", ").append(property.getKey()).append('=').append(property.getValue());
+        return sb.toString();
+    }
+
+    private static int parseInt(String name, String value, int min) {
+        int n;
+        try {
+            n = Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + ": " + e.getMessage());
+        }
+        if (n < min)
+            throw new IllegalArgumentException(name + ": Less than " + min + ": " + n);
+        return n;
+    }
+
+}
@@ -8,6 +8,8 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 
+import java.util.Properties;
+
 /**
  * The Db class defines a static method to connect to a MySQL database.
  *
@@ -32,4 +34,22 @@ public class Db {
         return DriverManager.getConnection(url, user, password);
     }
 
+    /**
+     * Connect to the database found at the given URL with the given
+     * user, password, and driver properties.
+     * @param url         A database URL
+     * @param user        The database user on whose behalf the connection is being made
+     * @param password    The user's password
+     * @param properties  Properties of the MySQL JDBC driver
+     * @return a connection handle to the database
+     * @throws SQLException if a database access error occurs
+     */
+    public static Connection connect(String url, String user, String password, Properties properties) throws SQLException {
+        Properties info = new Properties();
+        info.putAll(properties);
+        info.setProperty("user", user);
+        info.setProperty("password", password);
+        return DriverManager.getConnection(url, info);
+    }
+
 }
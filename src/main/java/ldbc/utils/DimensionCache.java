@@ -0,0 +1,423 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.utils;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import ldbc.collections.Long2LongHashMap;
+import ldbc.collections.Long2ObjectHashMap;
+import ldbc.collections.LongArrayDeque;
+import ldbc.collections.LongHashSet;
+
+/**
+ * The DimensionCache class holds in memory the parts of the dataset
+ * that the Interactive workload never changes.
+ *
+ * <p>No update query touches places, organisations, tags, or tag
+ * classes, so we read them once and answer the queries' questions
+ * about them with hash probes rather than SQL round trips.  We keep:
+ *
+ * <ul>
+ * <li>The names of places, organisations, and tags, and the
+ * identifiers of countries, tags, and tag classes by name.
+ * <li>The place every place is part of, the cities of every country,
+ * and the place of every organisation.
+ * <li>The class of every tag and the transitive closure of the tag
+ * class hierarchy: the ancestors of every tag class and the tags of
+ * every class and its subclasses.
+ * </ul>
+ *
+ * <p>Places form a three-level hierarchy: cities are part of
+ * countries, which are part of continents.  Since places have no
+ * type, we tell them apart by their depth in the hierarchy.  Several
+ * places may share a name, a city and a country in particular.
+ */
+public class DimensionCache {
+
+    // The cache used by the queries, if loaded.
+    private static volatile DimensionCache current = null;
+
+    // The name of every place.
+    private final Long2ObjectHashMap<String> placeNames = new Long2ObjectHashMap<>();
+
+    // The place every place other than a continent is part of.
+    private final Long2LongHashMap placeParents = new Long2LongHashMap();
+
+    // The identifier of every country, by name.
+    private final Map<String, Long> countryIds = new HashMap<>();
+
+    // The cities of every country, sorted.
+    private final Long2ObjectHashMap<long[]> citiesOfCountry = new Long2ObjectHashMap<>();
+
+    // The name of every organisation.
+    private final Long2ObjectHashMap<String> organisationNames = new Long2ObjectHashMap<>();
+
+    // The place of every organisation.
+    private final Long2LongHashMap organisationPlaces = new Long2LongHashMap();
+
+    // The name of every tag.
+    private final Long2ObjectHashMap<String> tagNames = new Long2ObjectHashMap<>();
+
+    // The identifier of every tag, by name.
+    private final Map<String, Long> tagIds = new HashMap<>();
+
+    // The identifier of every tag class, by name.
+    private final Map<String, Long> tagClassIds = new HashMap<>();
+
+    // The class of every tag.
+    private final Long2LongHashMap tagClassOfTag = new Long2LongHashMap();
+
+    // The ancestors of every tag class, the class itself included,
+    // sorted.
+    private final Long2ObjectHashMap<long[]> ancestorsOfTagClass = new Long2ObjectHashMap<>();
+
+    // The tags of every tag class or of one of its subclasses, sorted.
+    private final Long2ObjectHashMap<long[]> tagsWithinTagClass = new Long2ObjectHashMap<>();
+
+    /** A minimal constructor. */
+    private DimensionCache() {}
+
+    /**
+     * Read the static dimensions from the database.
+     * @param c  A database connection
+     * @return a cache of the static dimensions
+     * @throws SQLException if a database access error occurs
+     */
+    public static DimensionCache load(Connection c) throws SQLException {
+        DimensionCache cache = new DimensionCache();
+        cache.loadPlaces(c);
+        cache.loadOrganisations(c);
+        cache.loadTags(c);
+        cache.loadTagClasses(c);
+        return cache;
+    }
+
+    /**
+     * Return the cache installed for use by the queries.
+     * @return the current cache or null if none is loaded yet
+     */
+    public static DimensionCache current() { return current; }
+
+    /**
+     * Install a cache for use by the queries.
+     * @param cache  A cache
+     */
+    public static void setCurrent(DimensionCache cache) { current = cache; }
+
+    /**
+     * Return the cache used by the queries, loading it first if needed.
+     * @param c  A database connection (unused if the cache is loaded)
+     * @return the current cache
+     * @throws SQLException if a database access error occurs
+     */
+    public static DimensionCache get(Connection c) throws SQLException {
+        DimensionCache cache = current;
+        if (cache != null)
+            return cache;
+        synchronized (DimensionCache.class) {
+            if (current == null)
+                current = load(c);
+            return current;
+        }
+    }
+
+    private void loadPlaces(Connection c) throws SQLException {
+        String placeQuery =
+            "  SELECT Place.id, " +
+            "         Place.name " +
+            "    FROM Place";
+        String partOfQuery =
+            "  SELECT PlaceIsPartOfPlace.place1Id, " +
+            "         PlaceIsPartOfPlace.place2Id " +
+            "    FROM PlaceIsPartOfPlace";
+
+        try (Statement s = c.createStatement()) {
+            try (ResultSet r = s.executeQuery(placeQuery)) {
+                while (r.next())
+                    placeNames.put(r.getLong("Place.id"), r.getString("Place.name"));
+            }
+            try (ResultSet r = s.executeQuery(partOfQuery)) {
+                while (r.next())
+                    placeParents.put(r.getLong("PlaceIsPartOfPlace.place1Id"), r.getLong("PlaceIsPartOfPlace.place2Id"));
+            }
+        }
+
+        // Countries are part of a place that is part of no place.
+        Long2LongHashMap.Cursor cursor = placeParents.cursor();
+        while (cursor.next())
+            if (!placeParents.containsKey(cursor.value()) && placeNames.get(cursor.key()) != null)
+                countryIds.putIfAbsent(placeNames.get(cursor.key()), cursor.key());
+
+        // Cities are part of a country.
+        Long2ObjectHashMap<LongArrayDeque> cities = new Long2ObjectHashMap<>();
+        cursor = placeParents.cursor();
+        while (cursor.next()) {
+            long countryId = getCountryOfCity(cursor.key());
+            if (countryId == -1)
+                continue;
+            LongArrayDeque countryCities = cities.get(countryId);
+            if (countryCities == null) {
+                countryCities = new LongArrayDeque();
+                cities.put(countryId, countryCities);
+            }
+            countryCities.add(cursor.key());
+        }
+        Long2ObjectHashMap<LongArrayDeque>.Cursor citiesCursor = cities.cursor();
+        while (citiesCursor.next()) {
+            long[] sorted = citiesCursor.value().toArray();
+            Arrays.sort(sorted);
+            citiesOfCountry.put(citiesCursor.key(), sorted);
+        }
+    }
+
+    private void loadOrganisations(Connection c) throws SQLException {
+        String organisationQuery =
+            "  SELECT Organisation.id, " +
+            "         Organisation.name " +
+            "    FROM Organisation";
+        String locationQuery =
+            "  SELECT OrganisationIsLocatedInPlace.organisationId, " +
+            "         OrganisationIsLocatedInPlace.placeId " +
+            "    FROM OrganisationIsLocatedInPlace";
+
+        try (Statement s = c.createStatement()) {
+            try (ResultSet r = s.executeQuery(organisationQuery)) {
+                while (r.next())
+                    organisationNames.put(r.getLong("Organisation.id"), r.getString("Organisation.name"));
+            }
+            try (ResultSet r = s.executeQuery(locationQuery)) {
+                while (r.next())
+                    organisationPlaces.put(r.getLong("OrganisationIsLocatedInPlace.organisationId"), r.getLong("OrganisationIsLocatedInPlace.placeId"));
+            }
+        }
+    }
+
+    private void loadTags(Connection c) throws SQLException {
+        String tagQuery =
+            "  SELECT Tag.id, " +
+            "         Tag.name " +
+            "    FROM Tag";
+
+        try (Statement s = c.createStatement();
+             ResultSet r = s.executeQuery(tagQuery)) {
+            while (r.next()) {
+                long tagId = r.getLong("Tag.id");
+                String tagName = r.getString("Tag.name");
+                tagNames.put(tagId, tagName);
+                if (tagName != null)
+                    tagIds.putIfAbsent(tagName, tagId);
+            }
+        }
+    }
+
+    private void loadTagClasses(Connection c) throws SQLException {
+        String tagClassQuery =
+            "  SELECT TagClass.id, " +
+            "         TagClass.name " +
+            "    FROM TagClass";
+        String typeQuery =
+            "  SELECT TagHasTypeTagClass.tagId, " +
+            "         TagHasTypeTagClass.tagClassId " +
+            "    FROM TagHasTypeTagClass";
+        String subclassQuery =
+            "  SELECT TagClassIsSubclassOfTagClass.tagClass1Id, " +
+            "         TagClassIsSubclassOfTagClass.tagClass2Id " +
+            "    FROM TagClassIsSubclassOfTagClass";
+
+        LongArrayDeque allTagClassIds = new LongArrayDeque();
+        Long2ObjectHashMap<LongArrayDeque> parents = new Long2ObjectHashMap<>();
+        try (Statement s = c.createStatement()) {
+            try (ResultSet r = s.executeQuery(tagClassQuery)) {
+                while (r.next()) {
+                    long tagClassId = r.getLong("TagClass.id");
+                    String tagClassName = r.getString("TagClass.name");
+                    allTagClassIds.add(tagClassId);
+                    if (tagClassName != null)
+                        tagClassIds.putIfAbsent(tagClassName, tagClassId);
+                }
+            }
+            try (ResultSet r = s.executeQuery(typeQuery)) {
+                while (r.next())
+                    tagClassOfTag.put(r.getLong("TagHasTypeTagClass.tagId"), r.getLong("TagHasTypeTagClass.tagClassId"));
+            }
+            try (ResultSet r = s.executeQuery(subclassQuery)) {
+                while (r.next()) {
+                    long tagClassId = r.getLong("TagClassIsSubclassOfTagClass.tagClass1Id");
+                    LongArrayDeque tagClassParents = parents.get(tagClassId);
+                    if (tagClassParents == null) {
+                        tagClassParents = new LongArrayDeque(1);
+                        parents.put(tagClassId, tagClassParents);
+                    }
+                    tagClassParents.add(r.getLong("TagClassIsSubclassOfTagClass.tagClass2Id"));
+                }
+            }
+        }
+
+        // Walk up from every class to collect its ancestors.
+        for (int i = 0; i < allTagClassIds.size(); i++) {
+            long tagClassId = allTagClassIds.get(i);
+            LongHashSet ancestors = new LongHashSet();
+            LongArrayDeque open = new LongArrayDeque();
+            ancestors.add(tagClassId);
+            open.add(tagClassId);
+            while (!open.isEmpty()) {
+                LongArrayDeque tagClassParents = parents.get(open.removeFirst());
+                if (tagClassParents != null)
+                    for (int j = 0; j < tagClassParents.size(); j++)
+                        if (ancestors.add(tagClassParents.get(j)))
+                            open.add(tagClassParents.get(j));
+            }
+            long[] sorted = ancestors.toArray();
+            Arrays.sort(sorted);
+            ancestorsOfTagClass.put(tagClassId, sorted);
+        }
+
+        // Add every tag to its class and to all the class's ancestors.
+        Long2ObjectHashMap<LongArrayDeque> tagsWithin = new Long2ObjectHashMap<>();
+        for (int i = 0; i < allTagClassIds.size(); i++)
+            tagsWithin.put(allTagClassIds.get(i), new LongArrayDeque());
+        Long2LongHashMap.Cursor cursor = tagClassOfTag.cursor();
+        while (cursor.next()) {
+            long[] ancestors = ancestorsOfTagClass.get(cursor.value());
+            if (ancestors != null)
+                for (long ancestorId : ancestors)
+                    tagsWithin.get(ancestorId).add(cursor.key());
+        }
+        for (int i = 0; i < allTagClassIds.size(); i++) {
+            long[] sorted = tagsWithin.get(allTagClassIds.get(i)).toArray();
+            Arrays.sort(sorted);
+            tagsWithinTagClass.put(allTagClassIds.get(i), sorted);
+        }
+    }
+
+    /**
+     * Return the name of the given place.
+     * @param placeId  The place's unique identifier
+     * @return the name of the given place or null if not found
+     */
+    public String getPlaceName(long placeId) {
+        return placeNames.get(placeId);
+    }
+
+    /**
+     * Return the identifier of the given country.
+     * @param country  The country's name
+     * @return the identifier of the given country or -1 if not found
+     */
+    public long getCountryId(String country) {
+        Long countryId = countryIds.get(country);
+        return countryId == null ? -1 : countryId;
+    }
+
+    /**
+     * Return the country of the given city.
+     * @param cityId  The city's unique identifier
+     * @return the identifier of the country the given city is part of or -1 if the place is not a city
+     */
+    public long getCountryOfCity(long cityId) {
+        long countryId = placeParents.get(cityId, -1);
+        if (countryId == -1)
+            return -1;
+        long continentId = placeParents.get(countryId, -1);
+        if (continentId == -1 || placeParents.containsKey(continentId))
+            return -1;
+        return countryId;
+    }
+
+    /**
+     * Return the cities of the given country.
+     * @param countryId  The country's unique identifier
+     * @return the sorted identifiers of the cities that are part of the given country, empty if the place is not a country; callers must not modify the array
+     */
+    public long[] getCitiesOfCountry(long countryId) {
+        long[] cities = citiesOfCountry.get(countryId);
+        return cities == null ? new long[0] : cities;
+    }
+
+    /**
+     * Return the name of the given organisation.
+     * @param organisationId  The organisation's unique identifier
+     * @return the name of the given organisation or null if not found
+     */
+    public String getOrganisationName(long organisationId) {
+        return organisationNames.get(organisationId);
+    }
+
+    /**
+     * Return the place of the given organisation.
+     * @param organisationId  The organisation's unique identifier
+     * @return the identifier of the place where the given organisation is located or -1 if not found
+     */
+    public long getOrganisationPlaceId(long organisationId) {
+        return organisationPlaces.get(organisationId, -1);
+    }
+
+    /**
+     * Return the name of the given tag.
+     * @param tagId  The tag's unique identifier
+     * @return the name of the given tag or null if not found
+     */
+    public String getTagName(long tagId) {
+        return tagNames.get(tagId);
+    }
+
+    /**
+     * Return the identifier of the given tag.
+     * @param tag  The tag's name
+     * @return the identifier of the given tag or -1 if not found
+     */
+    public long getTagId(String tag) {
+        Long tagId = tagIds.get(tag);
+        return tagId == null ? -1 : tagId;
+    }
+
+    /**
+     * Return the identifier of the given tag class.
+     * @param tagClass  The tag class's name
+     * @return the identifier of the given tag class or -1 if not found
+     */
+    public long getTagClassId(String tagClass) {
+        Long tagClassId = tagClassIds.get(tagClass);
+        return tagClassId == null ? -1 : tagClassId;
+    }
+
+    /**
+     * Return the class of the given tag.
+     * @param tagId  The tag's unique identifier
+     * @return the identifier of the tag's class or -1 if not found
+     */
+    public long getTypeTagClassIdOf(long tagId) {
+        return tagClassOfTag.get(tagId, -1);
+    }
+
+    /**
+     * Return true if a tag class is another tag class or one of its subclasses.
+     * @param tagClassId        A tag class's unique identifier
+     * @param targetTagClassId  Another tag class's unique identifier
+     * @return true if the first class is the second class or one of its (direct or indirect) subclasses
+     */
+    public boolean isTagClassWithinTagClass(long tagClassId, long targetTagClassId) {
+        long[] ancestors = ancestorsOfTagClass.get(tagClassId);
+        return ancestors != null && Arrays.binarySearch(ancestors, targetTagClassId) >= 0;
+    }
+
+    /**
+     * Return the tags of a tag class or of any of its subclasses.
+     * @param tagClassId  A tag class's unique identifier
+     * @return the sorted identifiers of the tags in the given class or its (direct or indirect) subclasses, empty if the class is not found; callers must not modify the array
+     */
+    public long[] getTagsWithinTagClass(long tagClassId) {
+        long[] tags = tagsWithinTagClass.get(tagClassId);
+        return tags == null ? new long[0] : tags;
+    }
+
+}
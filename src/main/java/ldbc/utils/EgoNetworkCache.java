@@ -0,0 +1,307 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.utils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import ldbc.collections.Long2ObjectHashMap;
+import ldbc.collections.LongArrayDeque;
+import ldbc.collections.LongHashSet;
+
+/**
+ * The EgoNetworkCache class caches the friends and the friends of
+ * friends of recently queried persons.
+ *
+ * <p>Complex read queries 3, 5, 6, 9, 10, and 11 all start from the
+ * persons within two hops of some person.  Rather than having each of
+ * them compute this set with a self-join of the PersonKnowsPerson
+ * table, they get it from this cache and push the identifiers into
+ * their SQL query as IN lists of at most LdbcUtils.maxInListSize
+ * parameters, merging the results of the slices.
+ *
+ * <p>We bound the cache by the total number of identifiers it holds
+ * and evict the least recently used networks first.  Update query 8
+ * invalidates the networks a new friendship changes, namely those of
+ * both persons and of all their friends, before it commits the
+ * friendship.  A network computed while a friendship is being added
+ * could miss it, so we only keep a network if no friendship was
+ * being added when we started computing it and no invalidation
+ * happened while we were computing it.
+ */
+public class EgoNetworkCache {
+
+    /** The default bound on the number of identifiers held by the cache. */
+    public static final int defaultCapacity = 4000000;
+
+    // The cache used by the queries.
+    private static volatile EgoNetworkCache current = new EgoNetworkCache(defaultCapacity);
+
+    // The bound on the number of identifiers held by this cache.
+    private final long capacity;
+
+    // The networks, least recently used first.
+    private final LinkedHashMap<Long, EgoNetwork> networks = new LinkedHashMap<>(16, 0.75f, true);
+
+    // The number of identifiers held by this cache (plus one per network).
+    private long size = 0;
+
+    // The number of invalidations so far.
+    private long invalidations = 0;
+
+    // The number of friendships invalidated but not yet settled.
+    private int unsettled = 0;
+
+    /**
+     * Construct an ego network cache.
+     * @param capacity  A bound on the number of identifiers held by the cache (0 disables caching)
+     */
+    public EgoNetworkCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Return the cache used by the queries.
+     * @return the current cache
+     */
+    public static EgoNetworkCache current() { return current; }
+
+    /**
+     * Install a cache for use by the queries.
+     * @param cache  A cache
+     */
+    public static void setCurrent(EgoNetworkCache cache) { current = cache; }
+
+    /**
+     * Return the ego network of the given person.
+     *
+     * <p>The caller must not have read the database in its
+     * transaction yet, so any friendship committed before we check
+     * for invalidations is part of the snapshot we compute from.
+     *
+     * @param c         A database connection (unused if the network is cached or an in-memory Knows graph is loaded)
+     * @param personId  The person's unique identifier
+     * @return the person's friends and friends of friends
+     * @throws SQLException if a database access error occurs
+     */
+    public EgoNetwork get(Connection c, long personId) throws SQLException {
+        long invalidationsBefore;
+        boolean settled;
+        synchronized (this) {
+            EgoNetwork network = networks.get(personId);
+            if (network != null)
+                return network;
+            invalidationsBefore = invalidations;
+            settled = unsettled == 0;
+        }
+
+        EgoNetwork network = compute(c, personId);
+
+        synchronized (this) {
+            if (settled && invalidations == invalidationsBefore && network.cost() <= capacity && !networks.containsKey(personId)) {
+                networks.put(personId, network);
+                size += network.cost();
+                Iterator<EgoNetwork> i = networks.values().iterator();
+                while (size > capacity) {
+                    size -= i.next().cost();
+                    i.remove();
+                }
+            }
+        }
+
+        return network;
+    }
+
+    /**
+     * Invalidate the networks changed by a friendship about to be added.
+     *
+     * <p>The new friendship changes the friends of both persons and
+     * the friends of friends of both persons and of all their
+     * friends.  The caller must invalidate them before it commits the
+     * friendship, and call {@link #friendshipSettled} once it has
+     * committed or rolled back, and once the in-memory Knows graph,
+     * if any, holds the friendship.  Networks computed in between are
+     * not kept.
+     *
+     * @param c          The connection adding the friendship (unused if an in-memory Knows graph is loaded)
+     * @param person1Id  One person's unique identifier
+     * @param person2Id  Another person's unique identifier
+     * @throws SQLException if a database access error occurs
+     */
+    public void friendshipAdding(Connection c, long person1Id, long person2Id) throws SQLException {
+        long[] friends1 = findFriends(c, person1Id);
+        long[] friends2 = findFriends(c, person2Id);
+        synchronized (this) {
+            ++invalidations;
+            ++unsettled;
+            invalidate(person1Id);
+            invalidate(person2Id);
+            for (long friendId : friends1)
+                invalidate(friendId);
+            for (long friendId : friends2)
+                invalidate(friendId);
+        }
+    }
+
+    /**
+     * Note that a friendship passed to {@link #friendshipAdding} was
+     * committed or rolled back.
+     */
+    public synchronized void friendshipSettled() {
+        --unsettled;
+    }
+
+    private void invalidate(long personId) {
+        EgoNetwork network = networks.remove(personId);
+        if (network != null)
+            size -= network.cost();
+    }
+
+    /**
+     * Compute the ego network of the given person.
+     * @param c         A database connection (unused if an in-memory Knows graph is loaded)
+     * @param personId  The person's unique identifier
+     * @return the person's friends and friends of friends
+     * @throws SQLException if a database access error occurs
+     */
+    private static EgoNetwork compute(Connection c, long personId) throws SQLException {
+        KnowsGraph graph = KnowsGraph.current();
+        KnowsGraph.FriendCursor friendCursor = graph == null ? null : graph.friendCursor();
+        long[] friends = findFriends(c, graph, friendCursor, personId);
+
+        LongHashSet seen = new LongHashSet(4 * friends.length);
+        seen.add(personId);
+        for (long friendId : friends)
+            seen.add(friendId);
+
+        LongArrayDeque friendsOfFriends = new LongArrayDeque();
+        if (graph != null) {
+            for (long friendId : friends) {
+                friendCursor.open(friendId);
+                while (friendCursor.next())
+                    if (seen.add(friendCursor.friendId()))
+                        friendsOfFriends.add(friendCursor.friendId());
+            }
+        }
+        else {
+            LongArrayDeque open = new LongArrayDeque(friends.length);
+            open.addAll(friends);
+            Long2ObjectHashMap<LongArrayDeque>.Cursor cursor = LdbcUtils.findFriends(c, open).cursor();
+            while (cursor.next()) {
+                LongArrayDeque personFriends = cursor.value();
+                for (int i = 0; i < personFriends.size(); i++)
+                    if (seen.add(personFriends.get(i)))
+                        friendsOfFriends.add(personFriends.get(i));
+            }
+        }
+
+        return new EgoNetwork(personId, friends, friendsOfFriends.toArray());
+    }
+
+    private static long[] findFriends(Connection c, long personId) throws SQLException {
+        KnowsGraph graph = KnowsGraph.current();
+        return findFriends(c, graph, graph == null ? null : graph.friendCursor(), personId);
+    }
+
+    private static long[] findFriends(Connection c, KnowsGraph graph, KnowsGraph.FriendCursor cursor, long personId) throws SQLException {
+        if (graph != null) {
+            // Friendships are never removed; one added since we counted
+            // is left to the invalidation that follows it.
+            long[] friends = new long[graph.degree(personId)];
+            cursor.open(personId);
+            for (int i = 0; i < friends.length && cursor.next(); i++)
+                friends[i] = cursor.friendId();
+            return friends;
+        }
+
+        List<Long> friends = LdbcUtils.findFriends(c, personId);
+        long[] array = new long[friends.size()];
+        for (int i = 0; i < array.length; i++)
+            array[i] = friends.get(i);
+        return array;
+    }
+
+    /**
+     * The EgoNetwork class holds the persons within two hops of some
+     * person.  Both sets of identifiers are sorted and never change.
+     */
+    public static class EgoNetwork {
+        private final long personId;
+        private final long[] friends;
+        private final long[] friendsOfFriends;
+
+        private EgoNetwork(long personId, long[] friends, long[] friendsOfFriends) {
+            this.personId = personId;
+            this.friends = friends.clone();
+            this.friendsOfFriends = friendsOfFriends;
+            Arrays.sort(this.friends);
+            Arrays.sort(this.friendsOfFriends);
+        }
+
+        /**
+         * Return the person at the center of this network.
+         * @return the person's unique identifier
+         */
+        public long personId() { return personId; }
+
+        /**
+         * Return the person's friends.
+         * @return the sorted identifiers of the person's friends; callers must not modify the array
+         */
+        public long[] friends() { return friends; }
+
+        /**
+         * Return the person's friends of friends who are neither the person nor one of their friends.
+         * @return the sorted identifiers of the persons exactly two hops away; callers must not modify the array
+         */
+        public long[] friendsOfFriends() { return friendsOfFriends; }
+
+        /**
+         * Return the number of identifiers held by this network.
+         * @return the number of friends and friends of friends
+         */
+        public int size() { return friends.length + friendsOfFriends.length; }
+
+        // The share of the cache capacity taken by this network; we
+        // count one more identifier than it holds so even empty
+        // networks take some room.
+        private long cost() { return size() + 1; }
+
+        /**
+         * Return the persons within two hops.
+         * @return a fresh array of the person's friends followed by their friends of friends
+         */
+        public long[] withinTwoHops() {
+            long[] ids = Arrays.copyOf(friends, friends.length + friendsOfFriends.length);
+            System.arraycopy(friendsOfFriends, 0, ids, friends.length, friendsOfFriends.length);
+            return ids;
+        }
+
+        /**
+         * Return the persons within two hops, the person included if
+         * they have any friend.
+         *
+         * <p>This is the set reached by following the Knows
+         * relationship once or twice: the person is their friends'
+         * friend.
+         *
+         * @return a fresh array of the person (if they have friends), their friends, and their friends of friends
+         */
+        public long[] reachable() {
+            if (friends.length == 0)
+                return withinTwoHops();
+            long[] ids = Arrays.copyOf(friends, friends.length + friendsOfFriends.length + 1);
+            System.arraycopy(friendsOfFriends, 0, ids, friends.length, friendsOfFriends.length);
+            ids[ids.length - 1] = personId;
+            return ids;
+        }
+    }
+
+}
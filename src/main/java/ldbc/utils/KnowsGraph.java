@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.utils;
+
+import java.io.IOException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The KnowsGraph class holds a snapshot of the graph induced by the
+ * Knows relationship.
+ *
+ * <p>The snapshot itself never changes.  It lives either in heap
+ * arrays built from the database (see {@link #load}) or in a binary
+ * file written by the bulk loader and mapped in memory (see {@link
+ * #open}).  Friendships added after the snapshot was taken (update
+ * query 8) are kept in a small overlay on the side.
+ *
+ * <p>Graph traversals (queries 1, 13, and 14) can use the snapshot
+ * installed with {@link #setCurrent} instead of issuing one SQL query
+ * per visited person.
+ */
+public class KnowsGraph {
+
+    // The Knows relationship ordered by the first person and then by
+    // the second person.
+    static final String knowsQuery =
+        "   SELECT PersonKnowsPerson.person1Id, " +
+        "          PersonKnowsPerson.person2Id, " +
+        "          PersonKnowsPerson.creationDate " +
+        "     FROM PersonKnowsPerson " +
+        " ORDER BY PersonKnowsPerson.person1Id, " +
+        "          PersonKnowsPerson.person2Id";
+
+    // The snapshot used by the queries, if any.
+    private static volatile KnowsGraph current = null;
+
+    // The snapshot of the Knows relationship.
+    private final KnowsStorage storage;
+
+    // Friendships added after the snapshot was taken: the friends and
+    // the creation dates of these friendships, by person.  The arrays
+    // stored in these maps are replaced, never modified in place.
+    private final Map<Long, long[]> additions = new ConcurrentHashMap<>();
+    private final Map<Long, long[]> additionDates = new ConcurrentHashMap<>();
+
+    /**
+     * Construct a Knows graph.
+     * @param storage  A snapshot of the Knows relationship
+     */
+    private KnowsGraph(KnowsStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Build a snapshot of the Knows relationship in the heap.
+     * @param c  A database connection
+     * @return a snapshot of the Knows relationship
+     * @throws SQLException if a database access error occurs
+     */
+    public static KnowsGraph load(Connection c) throws SQLException {
+        return new KnowsGraph(ArrayKnowsStorage.load(c));
+    }
+
+    /**
+     * Open a snapshot of the Knows relationship written by the bulk loader.
+     *
+     * <p>We map the file in memory rather than read it so opening it
+     * costs next to nothing and the snapshot stays off the heap.  The
+     * caller must make sure the file matches the database.
+     *
+     * @param filename  A snapshot file written by {@link KnowsGraphFile#write}
+     * @return a snapshot of the Knows relationship
+     * @throws IOException if the file cannot be read or is not a snapshot file
+     */
+    public static KnowsGraph open(String filename) throws IOException {
+        return new KnowsGraph(KnowsGraphFile.map(filename));
+    }
+
+    /**
+     * Return the snapshot installed for use by the queries.
+     * @return the current snapshot or null if the queries must use the database
+     */
+    public static KnowsGraph current() { return current; }
+
+    /**
+     * Install a snapshot for use by the queries.
+     * @param graph  A snapshot or null to make the queries use the database
+     */
+    public static void setCurrent(KnowsGraph graph) { current = graph; }
+
+    /**
+     * Find the given person's friends.
+     * @param personId  The person's unique identifier
+     * @return the person's friends; callers must not modify the returned array
+     */
+    public long[] friends(long personId) {
+        return concat(storage.friends(personId), additions.get(personId));
+    }
+
+    /**
+     * Count the given person's friends.
+     * @param personId  The person's unique identifier
+     * @return the number of the person's friends, those added after the snapshot was taken included
+     */
+    public int degree(long personId) {
+        long[] added = additions.get(personId);
+        return storage.degree(personId) + (added == null ? 0 : added.length);
+    }
+
+    /**
+     * Find when the given person's friendships were created.
+     * @param personId  The person's unique identifier
+     * @return the creation dates (in milliseconds since the start of the epoch) of the person's friendships in the same order as {@link #friends}
+     */
+    public long[] creationDates(long personId) {
+        return concat(storage.creationDates(personId), additionDates.get(personId));
+    }
+
+    /**
+     * Return a new cursor over the friends of one person at a time.
+     *
+     * <p>Unlike {@link #friends}, walking the friends with a cursor
+     * does not allocate, which matters to traversals that visit many
+     * persons.  A cursor must not be shared among threads.
+     *
+     * @return a cursor positioned on no person
+     */
+    public FriendCursor friendCursor() { return new FriendCursor(storage.cursor()); }
+
+    /**
+     * A FriendCursor walks the friends of a person, those in the
+     * snapshot first and then those added after it was taken.
+     */
+    public class FriendCursor {
+        private final KnowsStorage.Cursor stored;
+        // The friends added after the snapshot was taken and the index
+        // of the current one.
+        private long[] added = null;
+        private int index = -1;
+        private long friendId = 0;
+
+        private FriendCursor(KnowsStorage.Cursor stored) {
+            this.stored = stored;
+        }
+
+        /**
+         * Position the cursor before the given person's first friend.
+         * @param personId  The person's unique identifier
+         */
+        public void open(long personId) {
+            stored.open(personId);
+            added = additions.get(personId);
+            index = -1;
+        }
+
+        /**
+         * Advance to the next friend.
+         * @return true if there is a next friend, false if all of them were visited
+         */
+        public boolean next() {
+            if (stored.next()) {
+                friendId = stored.friendId();
+                return true;
+            }
+            if (added != null && ++index < added.length) {
+                friendId = added[index];
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Return the friend the cursor is positioned on.
+         * @return the friend's unique identifier
+         */
+        public long friendId() { return friendId; }
+    }
+
+    private static long[] concat(long[] stored, long[] added) {
+        if (added == null)
+            return stored;
+        if (stored.length == 0)
+            return added;
+        long[] all = Arrays.copyOf(stored, stored.length + added.length);
+        System.arraycopy(added, 0, all, stored.length, added.length);
+        return all;
+    }
+
+    /**
+     * Record a new friendship between two persons.
+     *
+     * <p>The caller is responsible for adding the friendship to the
+     * database as well.
+     *
+     * @param person1Id     One person's unique identifier
+     * @param person2Id     Another person's unique identifier
+     * @param creationDate  When the friendship was created (in milliseconds since the start of the epoch)
+     */
+    public synchronized void addFriendship(long person1Id, long person2Id, long creationDate) {
+        addFriend(person1Id, person2Id, creationDate);
+        addFriend(person2Id, person1Id, creationDate);
+    }
+
+    private void addFriend(long personId, long friendId, long creationDate) {
+        // Publish the date first so a reader never sees a friend without one.
+        additionDates.put(personId, append(additionDates.get(personId), creationDate));
+        additions.put(personId, append(additions.get(personId), friendId));
+    }
+
+    private static long[] append(long[] array, long value) {
+        if (array == null)
+            return new long[] { value };
+        long[] appended = Arrays.copyOf(array, array.length + 1);
+        appended[array.length] = value;
+        return appended;
+    }
+
+    /**
+     * Return the number of persons with at least one friend in the snapshot.
+     * @return the number of persons in the snapshot
+     */
+    public int personCount() { return storage.personCount(); }
+
+    /**
+     * Return the persons with at least one friend in the snapshot.
+     *
+     * <p>The result does not include persons whose only friendships
+     * were added after the snapshot was taken.
+     *
+     * @return a new array holding the persons' identifiers in increasing order
+     */
+    public long[] personIds() { return storage.personIds(); }
+
+    /**
+     * Return the number of (directed) Knows edges in the snapshot.
+     * @return the number of edges in the snapshot
+     */
+    public long edgeCount() { return storage.edgeCount(); }
+
+}
@@ -0,0 +1,347 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import java.util.Arrays;
+
+/**
+ * The KnowsGraphFile class writes and maps binary snapshot files of
+ * the Knows relationship.
+ *
+ * <p>The bulk loader writes such a file next to the dataset so the
+ * driver can map it in memory at start up rather than rebuild the
+ * graph from the database.  The file has three parts:
+ *
+ * <ul>
+ * <li>A 32-byte header: a magic number, a version number, the number
+ * of persons, the number of edges, and the position of the index.
+ * <li>One record per person, in increasing order of identifier: the
+ * number of friends, the friends in increasing order of identifier
+ * with each one encoded as its difference with the previous one, and
+ * the creation dates of the friendships with each one encoded as its
+ * (zigzag encoded) difference with the previous one.  All these
+ * numbers use a variable-length encoding of 7 bits per byte.
+ * <li>The index: the sorted person identifiers (8 bytes each)
+ * followed by the position of each person's record (4 bytes each).
+ * </ul>
+ *
+ * <p>All fixed-size numbers are big-endian.  Since a single mapping
+ * cannot exceed 2GB, neither can the file: the writer refuses to
+ * write a larger snapshot, and the driver must then build the graph
+ * from the database instead.
+ */
+public class KnowsGraphFile {
+
+    /** The name of snapshot files in the dataset directory. */
+    public static final String defaultFilename = "knows_graph.bin";
+
+    private static final long magic = 0x4C4442434B4E4F57L; // "LDBCKNOW"
+    private static final int version = 1;
+    private static final int headerSize = 32;
+
+    /** A minimal constructor. */
+    private KnowsGraphFile() {}
+
+    /**
+     * Write a snapshot of the Knows relationship to a file.
+     * @param c         A database connection
+     * @param filename  The snapshot file's name
+     * @throws IOException if the file cannot be written or would exceed 2GB (no file is left behind then)
+     * @throws SQLException if a database access error occurs
+     */
+    public static void write(Connection c, String filename) throws IOException, SQLException {
+        try {
+            writeFile(c, filename);
+        }
+        catch (IOException | SQLException e) {
+            // A partial snapshot is of no use to anyone.
+            Files.deleteIfExists(Paths.get(filename));
+            throw e;
+        }
+    }
+
+    private static void writeFile(Connection c, String filename) throws IOException, SQLException {
+        long[] ids = new long[1024];
+        int[] positions = new int[1024];
+        long[] friends = new long[256];
+        long[] creationDates = new long[256];
+        int personCount = 0;
+        int friendCount = 0;
+        long edgeCount = 0;
+        long prevPersonId = -1;
+        int indexPosition;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename), 1 << 16))) {
+            // Leave room for the header.
+            out.write(new byte[headerSize]);
+
+            try (Statement s = c.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                // Ask MySQL Connector/J to stream the result set.
+                s.setFetchSize(Integer.MIN_VALUE);
+                try (ResultSet r = s.executeQuery(KnowsGraph.knowsQuery)) {
+                    while (r.next()) {
+                        long personId = r.getLong(1);
+
+                        // Write the previous person's record and start a new one.
+                        if (personCount == 0 || personId != prevPersonId) {
+                            if (personCount != 0)
+                                writeRecord(out, friends, creationDates, friendCount);
+                            if (personCount == ids.length) {
+                                ids = Arrays.copyOf(ids, 2 * personCount);
+                                positions = Arrays.copyOf(positions, 2 * personCount);
+                            }
+                            ids[personCount] = personId;
+                            positions[personCount] = checkedSize(out, filename);
+                            personCount++;
+                            friendCount = 0;
+                            prevPersonId = personId;
+                        }
+
+                        if (friendCount == friends.length) {
+                            friends = Arrays.copyOf(friends, 2 * friendCount);
+                            creationDates = Arrays.copyOf(creationDates, 2 * friendCount);
+                        }
+                        friends[friendCount] = r.getLong(2);
+                        creationDates[friendCount] = r.getLong(3);
+                        friendCount++;
+                        edgeCount++;
+                    }
+                }
+            }
+            if (personCount != 0)
+                writeRecord(out, friends, creationDates, friendCount);
+
+            indexPosition = checkedSize(out, filename);
+            for (int i = 0; i < personCount; i++)
+                out.writeLong(ids[i]);
+            for (int i = 0; i < personCount; i++)
+                out.writeInt(positions[i]);
+            checkedSize(out, filename);
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(filename, "rw")) {
+            file.writeLong(magic);
+            file.writeInt(version);
+            file.writeInt(personCount);
+            file.writeLong(edgeCount);
+            file.writeLong(indexPosition);
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, long[] friends, long[] creationDates, int count) throws IOException {
+        writeVarLong(out, count);
+        long prev = 0;
+        for (int i = 0; i < count; i++) {
+            writeVarLong(out, friends[i] - prev);
+            prev = friends[i];
+        }
+        prev = 0;
+        for (int i = 0; i < count; i++) {
+            long delta = creationDates[i] - prev;
+            writeVarLong(out, (delta << 1) ^ (delta >> 63));
+            prev = creationDates[i];
+        }
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int)((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    private static int checkedSize(DataOutputStream out, String filename) throws IOException {
+        // DataOutputStream.size() sticks at Integer.MAX_VALUE on overflow.
+        if (out.size() == Integer.MAX_VALUE)
+            throw new IOException(filename + ": Knows graph snapshot would exceed 2GB; let the driver build the graph from the database instead");
+        return out.size();
+    }
+
+    /**
+     * Map a snapshot file in memory.
+     * @param filename  The snapshot file's name
+     * @return a read-only view of the snapshot
+     * @throws IOException if the file cannot be read, exceeds 2GB, or is not a snapshot file
+     */
+    static KnowsStorage map(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE)
+                throw new IOException(filename + ": Knows graph snapshot exceeds 2GB; let the driver build the graph from the database instead");
+            if (channel.size() < headerSize)
+                throw new IOException(filename + ": Not a Knows graph snapshot");
+            // The mapping remains valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getLong(0) != magic || buffer.getInt(8) != version)
+                throw new IOException(filename + ": Not a Knows graph snapshot");
+            return new MappedStorage(buffer, buffer.getInt(12), buffer.getLong(16), (int)buffer.getLong(24));
+        }
+    }
+
+    /**
+     * A read-only view of a mapped snapshot file.  We only use
+     * absolute reads so concurrent readers do not interfere.
+     */
+    private static class MappedStorage implements KnowsStorage {
+        private final MappedByteBuffer buffer;
+        private final int personCount;
+        private final long edgeCount;
+        private final int idsPosition;
+        private final int positionsPosition;
+
+        private MappedStorage(MappedByteBuffer buffer, int personCount, long edgeCount, int indexPosition) {
+            this.buffer = buffer;
+            this.personCount = personCount;
+            this.edgeCount = edgeCount;
+            this.idsPosition = indexPosition;
+            this.positionsPosition = indexPosition + 8 * personCount;
+        }
+
+        public int personCount() { return personCount; }
+
+        public long[] personIds() {
+            long[] ids = new long[personCount];
+            for (int i = 0; i < personCount; i++)
+                ids[i] = buffer.getLong(idsPosition + 8 * i);
+            return ids;
+        }
+
+        public long edgeCount() { return edgeCount; }
+
+        public long[] friends(long personId) {
+            return decode(personId, false);
+        }
+
+        public int degree(long personId) {
+            int i = find(personId);
+            return i < 0 ? 0 : (int)readVarLong(new int[] { buffer.getInt(positionsPosition + 4 * i) });
+        }
+
+        public long[] creationDates(long personId) {
+            return decode(personId, true);
+        }
+
+        public Cursor cursor() {
+            return new Cursor() {
+                // The position of the next friend's delta, the number
+                // of friends left, and the current friend.
+                private int position = 0;
+                private int remaining = 0;
+                private long friendId = 0;
+
+                public void open(long personId) {
+                    int i = find(personId);
+                    position = i < 0 ? 0 : buffer.getInt(positionsPosition + 4 * i);
+                    remaining = i < 0 ? 0 : (int)readVarLong();
+                    friendId = 0;
+                }
+
+                public boolean next() {
+                    if (remaining == 0)
+                        return false;
+                    --remaining;
+                    friendId += readVarLong();
+                    return true;
+                }
+
+                private long readVarLong() {
+                    long value = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = buffer.get(position++);
+                        value |= (long)(b & 0x7F) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    return value;
+                }
+
+                public long friendId() { return friendId; }
+            };
+        }
+
+        /**
+         * Decode one half of a person's record.
+         * @param personId  The person's unique identifier
+         * @param dates     Decode the creation dates if true; the friends otherwise
+         * @return the friends or the creation dates of the person's friendships
+         */
+        private long[] decode(long personId, boolean dates) {
+            int i = find(personId);
+            return i < 0 ? new long[0] : decodeRecord(buffer.getInt(positionsPosition + 4 * i), dates);
+        }
+
+        /**
+         * Find a person in the index.
+         * @param personId  The person's unique identifier
+         * @return the person's index or -1 if the person has no friends
+         */
+        private int find(long personId) {
+            int low = 0;
+            int high = personCount - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long id = buffer.getLong(idsPosition + 8 * mid);
+                if (id < personId)
+                    low = mid + 1;
+                else if (id > personId)
+                    high = mid - 1;
+                else
+                    return mid;
+            }
+            return -1;
+        }
+
+        private long[] decodeRecord(int position, boolean dates) {
+            int[] cursor = new int[] { position };
+            int count = (int)readVarLong(cursor);
+            long[] values = new long[count];
+            long prev = 0;
+            for (int i = 0; i < count; i++) {
+                prev += readVarLong(cursor);
+                values[i] = prev;
+            }
+            if (!dates)
+                return values;
+            prev = 0;
+            for (int i = 0; i < count; i++) {
+                long zigzag = readVarLong(cursor);
+                prev += (zigzag >>> 1) ^ -(zigzag & 1);
+                values[i] = prev;
+            }
+            return values;
+        }
+
+        private long readVarLong(int[] cursor) {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(cursor[0]++);
+                value |= (long)(b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.utils;
+
+/**
+ * The KnowsStorage interface abstracts the read-only storage of a
+ * snapshot of the Knows relationship.
+ *
+ * <p>A snapshot lists, for every person with at least one friend,
+ * their friends in increasing order of identifier along with the
+ * date each friendship was created.  Implementations must allow
+ * concurrent readers.
+ */
+interface KnowsStorage {
+
+    /**
+     * Return the number of persons with at least one friend.
+     * @return the number of persons in the snapshot
+     */
+    int personCount();
+
+    /**
+     * Return the persons with at least one friend.
+     * @return a new array holding the persons' identifiers in increasing order
+     */
+    long[] personIds();
+
+    /**
+     * Return the number of (directed) Knows edges.
+     * @return the number of edges in the snapshot
+     */
+    long edgeCount();
+
+    /**
+     * Find the given person's friends.
+     * @param personId  The person's unique identifier
+     * @return the person's friends in increasing order (empty if the person has none)
+     */
+    long[] friends(long personId);
+
+    /**
+     * Count the given person's friends.
+     * @param personId  The person's unique identifier
+     * @return the number of the person's friends (0 if the person has none)
+     */
+    int degree(long personId);
+
+    /**
+     * Find when the given person's friendships were created.
+     * @param personId  The person's unique identifier
+     * @return the creation dates (in milliseconds since the start of the epoch) of the person's friendships in the same order as their friends
+     */
+    long[] creationDates(long personId);
+
+    /**
+     * Return a new cursor over the friends of one person at a time.
+     * @return a cursor positioned on no person
+     */
+    Cursor cursor();
+
+    /**
+     * A Cursor walks the friends of a person without allocating.  A
+     * cursor may be reopened on any number of persons, but it is not
+     * safe for use by concurrent threads.
+     */
+    interface Cursor {
+
+        /**
+         * Position the cursor before the given person's first friend.
+         * @param personId  The person's unique identifier
+         */
+        void open(long personId);
+
+        /**
+         * Advance to the next friend.
+         * @return true if there is a next friend, false if all of them were visited
+         */
+        boolean next();
+
+        /**
+         * Return the friend the cursor is positioned on.
+         * @return the friend's unique identifier
+         */
+        long friendId();
+
+    }
+
+}
@@ -0,0 +1,424 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.utils;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import ldbc.collections.Long2IntHashMap;
+import ldbc.collections.LongArrayDeque;
+import ldbc.collections.LongHashSet;
+
+/**
+ * The LandmarkIndex class bounds the length of the shortest path
+ * between two persons using precomputed distances to a few landmarks.
+ *
+ * <p>We pick as landmarks a few persons with many friends, no two of
+ * them friends, and record the distance from every landmark to every
+ * person.  By the triangle inequality, for every landmark l, the
+ * distance between persons u and v lies between |d(l, u) - d(l, v)|
+ * and d(l, u) + d(l, v).  Queries 13 and 14 use these bounds to
+ * answer at once when they meet, and otherwise to skip persons that
+ * cannot lie on a shortest path, namely those whose distance from one
+ * end plus their lower bound to the other end exceeds the upper
+ * bound between the two ends.
+ *
+ * <p>We keep the distances in a single byte array, all the landmarks
+ * of a person next to each other, so checking a person costs one
+ * cache line.  A byte holds distances up to 253; 254 stands for any
+ * longer distance and 255 for no path at all.
+ *
+ * <p>New friendships can only shorten distances.  Update query 8
+ * adds them to the in-memory Knows graph through the index, which
+ * queues them, and the next query to ask for bounds applies them,
+ * propagating the shorter distances through the graph.  Queries hold
+ * a read lock while they use the bounds and update query 8 holds the
+ * write lock while it adds a friendship, so neither the graph nor the
+ * distances change under a query and a query never sees a friendship
+ * its distances do not account for.
+ */
+public class LandmarkIndex {
+
+    /** The default number of landmarks. */
+    public static final int defaultLandmarkCount = 16;
+
+    // Distances too long to record and missing paths.
+    private static final int far = 254;
+    private static final int unreachable = 255;
+
+    // The index used by the queries, if any.
+    private static volatile LandmarkIndex current = null;
+
+    // The graph whose distances we record.
+    private final KnowsGraph graph;
+
+    // The landmarks' unique identifiers.
+    private final long[] landmarkIds;
+
+    // The index of every recorded person and the reverse mapping.
+    private final Long2IntHashMap indices;
+    private long[] personIds;
+    private int personCount = 0;
+
+    // The distance from every landmark to every recorded person, at
+    // index (person index * landmark count + landmark index).
+    private byte[] distances;
+
+    // Friendships added since the distances were last repaired, as
+    // pairs of persons.  Guarded by the lock below.
+    private final LongArrayDeque pending = new LongArrayDeque();
+
+    // Queries read the graph and the distances; new friendships and
+    // repairs write them.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Construct an index with no distances.
+     * @param graph        The graph whose distances we record
+     * @param landmarkIds  The landmarks' unique identifiers
+     * @param personIds    The persons to record (more may come later)
+     */
+    private LandmarkIndex(KnowsGraph graph, long[] landmarkIds, long[] personIds) {
+        this.graph = graph;
+        this.landmarkIds = landmarkIds;
+        this.indices = new Long2IntHashMap(personIds.length);
+        this.personIds = new long[Math.max(personIds.length, 16)];
+        this.distances = new byte[this.personIds.length * landmarkIds.length];
+        Arrays.fill(distances, (byte)unreachable);
+        for (long personId : personIds)
+            indexOf(personId);
+    }
+
+    /**
+     * Build the index from a snapshot of the Knows relationship.
+     *
+     * <p>We run one breadth-first search per landmark.
+     *
+     * @param graph          A snapshot of the Knows relationship; the index keeps up with its additions
+     * @param landmarkCount  The number of landmarks to pick
+     * @return the landmark distances of the given graph
+     */
+    public static LandmarkIndex build(KnowsGraph graph, int landmarkCount) {
+        long[] personIds = graph.personIds();
+        LandmarkIndex index = new LandmarkIndex(graph, pickLandmarks(graph, personIds, landmarkCount), personIds);
+        for (int l = 0; l < index.landmarkIds.length; l++) {
+            int landmark = index.indexOf(index.landmarkIds[l]);
+            index.setDistance(landmark, l, 0);
+            index.propagate(l, landmark);
+        }
+        return index;
+    }
+
+    /**
+     * Pick the persons with the most friends as landmarks, skipping
+     * the friends of landmarks already picked so the landmarks cover
+     * different parts of the graph.
+     * @param graph          A snapshot of the Knows relationship
+     * @param personIds      The persons with friends
+     * @param landmarkCount  The number of landmarks to pick
+     * @return the landmarks' unique identifiers
+     */
+    private static long[] pickLandmarks(KnowsGraph graph, long[] personIds, int landmarkCount) {
+        // Keep the candidates with the most friends, fewest first.
+        int candidateCount = 4 * landmarkCount;
+        PriorityQueue<long[]> candidates = new PriorityQueue<>(candidateCount + 1, new Comparator<long[]>() {
+                public int compare(long[] a, long[] b) { return Long.compare(a[1], b[1]); }
+            });
+        for (long personId : personIds) {
+            candidates.add(new long[] { personId, graph.degree(personId) });
+            long[] ignore;
+            if (candidates.size() > candidateCount)
+                ignore = candidates.poll();
+        }
+
+        long[][] sorted = candidates.toArray(new long[candidates.size()][]);
+        Arrays.sort(sorted, new Comparator<long[]>() {
+                public int compare(long[] a, long[] b) { return Long.compare(b[1], a[1]); }
+            });
+
+        LongArrayDeque landmarks = new LongArrayDeque(landmarkCount);
+        LongHashSet covered = new LongHashSet();
+        KnowsGraph.FriendCursor cursor = graph.friendCursor();
+        for (long[] candidate : sorted) {
+            if (landmarks.size() == landmarkCount)
+                break;
+            if (!covered.add(candidate[0]))
+                continue;
+            landmarks.add(candidate[0]);
+            cursor.open(candidate[0]);
+            while (cursor.next())
+                covered.add(cursor.friendId());
+        }
+        return landmarks.toArray();
+    }
+
+    /**
+     * Return the index installed for use by the queries.
+     * @return the current index or null if there is none
+     */
+    public static LandmarkIndex current() { return current; }
+
+    /**
+     * Install an index for use by the queries.
+     * @param index  An index or null to make the queries do without
+     */
+    public static void setCurrent(LandmarkIndex index) { current = index; }
+
+    /**
+     * Return the bounds between two persons given by the current index.
+     *
+     * <p>The caller must close the bounds when done with them.
+     *
+     * @param sourceId  One end's unique identifier
+     * @param targetId  The other end's unique identifier
+     * @return the bounds between the two persons; no bounds at all if there is no index
+     */
+    public static Bounds bounds(long sourceId, long targetId) {
+        LandmarkIndex index = current;
+        if (index == null)
+            return new Bounds(null, null, null);
+        return index.open(sourceId, targetId);
+    }
+
+    /**
+     * Add a new friendship to the graph whose distances we record.
+     *
+     * <p>We only queue the friendship; the next query to ask for
+     * bounds repairs the distances.  The caller is responsible for
+     * adding the friendship to the database as well, and must not add
+     * it to the Knows graph itself.
+     *
+     * @param person1Id     One person's unique identifier
+     * @param person2Id     Another person's unique identifier
+     * @param creationDate  When the friendship was created (in milliseconds since the start of the epoch)
+     */
+    public void addFriendship(long person1Id, long person2Id, long creationDate) {
+        lock.writeLock().lock();
+        try {
+            graph.addFriendship(person1Id, person2Id, creationDate);
+            pending.add(person1Id);
+            pending.add(person2Id);
+        }
+        finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return the number of landmarks.
+     * @return the number of landmarks
+     */
+    public int landmarkCount() { return landmarkIds.length; }
+
+    private Bounds open(long sourceId, long targetId) {
+        lock.readLock().lock();
+        if (!pending.isEmpty()) {
+            // Repair the distances and keep holding the lock, as a
+            // read lock, so no friendship comes in before we are done.
+            lock.readLock().unlock();
+            lock.writeLock().lock();
+            try {
+                repair();
+                lock.readLock().lock();
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+        int source = indices.get(sourceId, -1);
+        int target = indices.get(targetId, -1);
+        if (source == -1 || target == -1) {
+            // Persons without friends; there is nothing to tell.
+            lock.readLock().unlock();
+            return new Bounds(null, null, null);
+        }
+        return new Bounds(this, distancesOf(source), distancesOf(target));
+    }
+
+    // Apply the friendships queued since the last repair.  The caller
+    // must hold the write lock.
+    private void repair() {
+        for (int i = 0; i < pending.size(); i += 2) {
+            int person1 = indexOf(pending.get(i));
+            int person2 = indexOf(pending.get(i + 1));
+            for (int l = 0; l < landmarkIds.length; l++) {
+                relax(l, person1, person2);
+                relax(l, person2, person1);
+            }
+        }
+        pending.clear();
+    }
+
+    // Shorten the distance from a landmark to a person through one of
+    // their friends, and to everyone beyond through that person.
+    private void relax(int l, int from, int to) {
+        int distance = distance(from, l);
+        if (distance != unreachable && Math.min(distance + 1, far) < distance(to, l)) {
+            setDistance(to, l, Math.min(distance + 1, far));
+            propagate(l, to);
+        }
+    }
+
+    // Breadth-first search from a person whose distance from a
+    // landmark just got shorter.
+    private void propagate(int l, int start) {
+        int[] open = new int[16];
+        int head = 0;
+        int tail = 0;
+        open[tail++] = start;
+        KnowsGraph.FriendCursor cursor = graph.friendCursor();
+        while (head != tail) {
+            int person = open[head++];
+            int distance = Math.min(distance(person, l) + 1, far);
+            cursor.open(personIds[person]);
+            while (cursor.next()) {
+                int friend = indexOf(cursor.friendId());
+                if (distance < distance(friend, l)) {
+                    setDistance(friend, l, distance);
+                    if (tail == open.length) {
+                        // Reclaim the consumed slots or grow.
+                        if (head > open.length / 2) {
+                            System.arraycopy(open, head, open, 0, tail - head);
+                            tail -= head;
+                            head = 0;
+                        }
+                        else
+                            open = Arrays.copyOf(open, 2 * open.length);
+                    }
+                    open[tail++] = friend;
+                }
+            }
+        }
+    }
+
+    private int distance(int person, int l) {
+        return distances[person * landmarkIds.length + l] & 0xFF;
+    }
+
+    private void setDistance(int person, int l, int distance) {
+        distances[person * landmarkIds.length + l] = (byte)distance;
+    }
+
+    private byte[] distancesOf(int person) {
+        int from = person * landmarkIds.length;
+        return Arrays.copyOfRange(distances, from, from + landmarkIds.length);
+    }
+
+    // Return the index of the given person, recording them if needed.
+    private int indexOf(long personId) {
+        int i = indices.get(personId, -1);
+        if (i != -1)
+            return i;
+        if (personCount == personIds.length) {
+            personIds = Arrays.copyOf(personIds, 2 * personCount);
+            int size = distances.length;
+            distances = Arrays.copyOf(distances, 2 * size);
+            Arrays.fill(distances, size, distances.length, (byte)unreachable);
+        }
+        i = personCount++;
+        personIds[i] = personId;
+        indices.put(personId, i);
+        return i;
+    }
+
+    /**
+     * The Bounds class holds the bounds between two persons, the
+     * source and the target.  It keeps the index from changing until
+     * it is closed.
+     */
+    public static class Bounds implements AutoCloseable {
+        private final LandmarkIndex index;
+        private final byte[] sourceDistances;
+        private final byte[] targetDistances;
+        private final int lowerBound;
+        private final int upperBound;
+
+        private Bounds(LandmarkIndex index, byte[] sourceDistances, byte[] targetDistances) {
+            this.index = index;
+            this.sourceDistances = sourceDistances;
+            this.targetDistances = targetDistances;
+            if (index == null) {
+                lowerBound = 0;
+                upperBound = Integer.MAX_VALUE;
+            }
+            else {
+                lowerBound = lowerBound(sourceDistances, targetDistances);
+                upperBound = upperBound(sourceDistances, targetDistances);
+            }
+        }
+
+        /**
+         * Return a lower bound on the length of the shortest path between the two persons.
+         * @return a lower bound, Integer.MAX_VALUE if no path exists
+         */
+        public int lowerBound() { return lowerBound; }
+
+        /**
+         * Return an upper bound on the length of the shortest path between the two persons.
+         * @return an upper bound, Integer.MAX_VALUE if none is known
+         */
+        public int upperBound() { return upperBound; }
+
+        /**
+         * Return true unless no shortest path between the two persons
+         * can go through the given person.
+         * @param personId    A person's unique identifier
+         * @param distance    The person's distance from one of the two persons
+         * @param fromSource  True if that distance is from the source; false if from the target
+         * @return false if the given person lies on no shortest path
+         */
+        public boolean mayBeOnShortestPath(long personId, int distance, boolean fromSource) {
+            if (index == null || upperBound == Integer.MAX_VALUE)
+                return true;
+            int person = index.indices.get(personId, -1);
+            if (person == -1)
+                return true;
+            int from = person * sourceDistances.length;
+            int bound = lowerBound(fromSource ? targetDistances : sourceDistances, index.distances, from);
+            return bound != Integer.MAX_VALUE && distance + bound <= upperBound;
+        }
+
+        /** Let the index change again. */
+        public void close() {
+            if (index != null)
+                index.lock.readLock().unlock();
+        }
+
+        private static int lowerBound(byte[] a, byte[] b) {
+            return lowerBound(a, b, 0);
+        }
+
+        // The largest difference between the distances in a and those
+        // in b (starting at the given offset), Integer.MAX_VALUE if
+        // only one of the persons is reachable from some landmark.
+        private static int lowerBound(byte[] a, byte[] b, int offset) {
+            int bound = 0;
+            for (int l = 0; l < a.length; l++) {
+                int da = a[l] & 0xFF;
+                int db = b[offset + l] & 0xFF;
+                if ((da == unreachable) != (db == unreachable))
+                    return Integer.MAX_VALUE;
+                if (da < far && db < far)
+                    bound = Math.max(bound, Math.abs(da - db));
+            }
+            return bound;
+        }
+
+        // The smallest sum of the distances in a and b.
+        private static int upperBound(byte[] a, byte[] b) {
+            int bound = Integer.MAX_VALUE;
+            for (int l = 0; l < a.length; l++) {
+                int da = a[l] & 0xFF;
+                int db = b[l] & 0xFF;
+                if (da < far && db < far)
+                    bound = Math.min(bound, da + db);
+            }
+            return bound;
+        }
+    }
+
+}
@@ -5,76 +5,198 @@
  * properly (e.g., disabling auto commit) if these queries are used in
  * the context of a larger transaction.
  *
+ * All queries are parameterized and prepared once per physical
+ * connection (see StatementCache), so repeated calls skip parsing and
+ * planning on the server.  Places, organisations, tags, and tag
+ * classes never change, so queries about them and the names of the
+ * places and organisations in the results come from memory (see
+ * DimensionCache), and so do the persons read recently (see
+ * PersonCache) and the creators and parents of messages (see
+ * MessageCache).
+ *
  * Copyright © 2018-2019 Alain Kägi
  */
 
 package ldbc.utils;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.Statement;
 import java.sql.SQLException;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import ldbc.collections.Long2ObjectHashMap;
+import ldbc.collections.LongArrayDeque;
+
+import ldbc.helpers.PersonProfile;
+import ldbc.helpers.PersonSummary;
+
 public class LdbcUtils {
 
-    // Simple queries involving a single entry in a table.
+    /** An upper bound on the number of identifiers placed in a single SQL IN list. */
+    static public final int maxInListSize = 1000;
 
-    //  Entities.
+    // The number of parameters in the IN lists of prepared queries.
+    // We pad shorter lists by repeating their last identifier so a
+    // few statements per query cover all list sizes.
+    private static final int[] inListSizes = { 1, 4, 16, 64, 256, maxInListSize };
 
-    //   Messages.
+    /**
+     * Prepare one version of a query for each IN list size.
+     * @param query  An SQL query with {ids} where the IN list parameters go
+     * @return the query with 1, 4, 16, 64, 256, and maxInListSize IN list parameters
+     */
+    public static String[] withInLists(String query) {
+        return withInLists(query, "{ids}");
+    }
 
     /**
-     * Get the creation date of the specified message.
-     * @param c          A database connection
-     * @param messageId  The message's unique identifier
-     * @return the creation date of the given message or -1 if not found
-     * @throws SQLException if a database access error occurs
+     * Prepare one version of a query for each size of one of its IN lists.
+     * @param query        An SQL query
+     * @param placeholder  The text standing for the parameters of the IN list in the query
+     * @return the query with 1, 4, 16, 64, 256, and maxInListSize IN list parameters
      */
-    static public long getCreationDate(Connection c, long messageId) throws SQLException {
-        long date = -1;
-        String dateQuery =
-            "  SELECT Message.creationDate " +
-            "    FROM Message " +
-            "   WHERE Message.id = " + messageId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(dateQuery)) {
-            if (r.next())
-                date = r.getLong("Message.creationDate");
+    public static String[] withInLists(String query, String placeholder) {
+        return withInLists(query, placeholder, 1);
+    }
+
+    /**
+     * Prepare one version of a query for each size of one of its IN
+     * lists, whose elements are rows of a few values.
+     * @param query        An SQL query
+     * @param placeholder  The text standing for the elements of the IN list in the query
+     * @param width        The number of values per element, (?, ?) for instance if 2
+     * @return the query with 1, 4, 16, 64, 256, and maxInListSize IN list elements
+     */
+    public static String[] withInLists(String query, String placeholder, int width) {
+        StringBuilder element = new StringBuilder(width == 1 ? "?" : "(?");
+        for (int k = 1; k < width; k++)
+            element.append(",?");
+        if (width != 1)
+            element.append(')');
+
+        String[] queries = new String[inListSizes.length];
+        for (int i = 0; i < inListSizes.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < inListSizes[i]; j++) {
+                if (j != 0)
+                    sb.append(',');
+                sb.append(element);
+            }
+            queries[i] = query.replace(placeholder, sb.toString());
         }
-        return date;
+        return queries;
     }
 
     /**
-     * Get the content (or image file) of the specified message.
-     * @param c          A database connection
-     * @param messageId  The message's unique identifier
-     * @return the content associated with given message or null if not found
+     * Prepare the version of a query whose IN list fits some identifiers and bind them.
+     *
+     * <p>The parameters following the IN list start at firstParameter
+     * plus inListParameterCount(to - from).
+     * @param c               A database connection
+     * @param queries         The versions of the query returned by withInLists
+     * @param ids             An array of unique identifiers
+     * @param from            The index of the first identifier to bind
+     * @param to              The index one past the last identifier to bind (past from, at most maxInListSize past from)
+     * @param firstParameter  The index of the first parameter of the IN list
+     * @return the prepared statement with the given identifiers bound to its IN list parameters
      * @throws SQLException if a database access error occurs
      */
-    static public String getContent(Connection c, long messageId) throws SQLException {
-        String content = null;
-        String contentQuery =
-            "  SELECT Message.content, Message.imageFile " +
-            "    FROM Message " +
-            "   WHERE Message.id = " + messageId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(contentQuery)) {
-            if (r.next()) {
-                content = r.getString("Message.content");
-                if (content.length() == 0)
-                    content = r.getString("Message.imageFile");
-            }
+    public static PreparedStatement prepareInList(Connection c, String[] queries, long[] ids, int from, int to, int firstParameter) throws SQLException {
+        return prepareInList(c, queries, ids, 1, from, to, firstParameter);
+    }
+
+    /**
+     * Prepare the version of a query whose IN list fits some rows of values and bind them.
+     * @param c               A database connection
+     * @param queries         The versions of the query returned by withInLists for the given width
+     * @param values          An array of rows of values, one after the other
+     * @param width           The number of values per row
+     * @param from            The index of the first row to bind
+     * @param to              The index one past the last row to bind (past from, at most maxInListSize past from)
+     * @param firstParameter  The index of the first parameter of the IN list
+     * @return the prepared statement with the given rows bound to its IN list parameters
+     * @throws SQLException if a database access error occurs
+     */
+    public static PreparedStatement prepareInList(Connection c, String[] queries, long[] values, int width, int from, int to, int firstParameter) throws SQLException {
+        PreparedStatement s = StatementCache.prepare(c, queries[inListVersion(to - from)]);
+        bindInList(s, values, width, from, to, firstParameter);
+        return s;
+    }
+
+    /**
+     * Return the version of a query whose IN list fits some identifiers.
+     * @param count  A number of identifiers (at most maxInListSize)
+     * @return the index of the version, among those returned by withInLists, that prepareInList picks
+     */
+    public static int inListVersion(int count) {
+        int i = 0;
+        while (inListSizes[i] < count)
+            i++;
+        return i;
+    }
+
+    /**
+     * Return the number of parameters in the IN list fitting some identifiers.
+     * @param count  A number of identifiers (at most maxInListSize)
+     * @return the number of IN list parameters of the version of a query prepareInList picks
+     */
+    public static int inListParameterCount(int count) {
+        return inListSizes[inListVersion(count)];
+    }
+
+    /**
+     * Bind some identifiers to the parameters of an IN list,
+     * repeating the last identifier to fill the list.
+     * @param s               A statement prepared from the version of a query inListVersion picks
+     * @param ids             An array of unique identifiers
+     * @param from            The index of the first identifier to bind
+     * @param to              The index one past the last identifier to bind (past from, at most maxInListSize past from)
+     * @param firstParameter  The index of the first parameter of the IN list
+     * @throws SQLException if a database access error occurs
+     */
+    public static void bindInList(PreparedStatement s, long[] ids, int from, int to, int firstParameter) throws SQLException {
+        bindInList(s, ids, 1, from, to, firstParameter);
+    }
+
+    /**
+     * Bind some rows of values to the parameters of an IN list,
+     * repeating the last row to fill the list.
+     * @param s               A statement prepared from the version of a query inListVersion picks
+     * @param values          An array of rows of values, one after the other
+     * @param width           The number of values per row
+     * @param from            The index of the first row to bind
+     * @param to              The index one past the last row to bind (past from, at most maxInListSize past from)
+     * @param firstParameter  The index of the first parameter of the IN list
+     * @throws SQLException if a database access error occurs
+     */
+    public static void bindInList(PreparedStatement s, long[] values, int width, int from, int to, int firstParameter) throws SQLException {
+        int count = inListParameterCount(to - from);
+        for (int j = 0; j < count; j++) {
+            int row = Math.min(from + j, to - 1);
+            for (int k = 0; k < width; k++)
+                s.setLong(firstParameter + j * width + k, values[row * width + k]);
         }
-        return content;
     }
 
+    // Simple queries involving a single entry in a table.
+
+    //  Entities.
+
     //   Forums.
 
+    private static final String forumQuery =
+        "  SELECT Forum.title " +
+        "    FROM Forum " +
+        "   WHERE Forum.id = ?";
+
     /**
      * Get the title of the specified forum.
      * @param c        A database connection
@@ -84,115 +206,63 @@ public class LdbcUtils {
      */
     static public String getForumTitle(Connection c, long forumId) throws SQLException {
         String forumTitle = null;
-        String forumQuery =
-            "  SELECT Forum.title " +
-            "    FROM Forum " +
-            "   WHERE Forum.id = " + forumId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(forumQuery)) {
+        PreparedStatement s = StatementCache.prepare(c, forumQuery);
+        s.setLong(1, forumId);
+        try (ResultSet r = s.executeQuery()) {
             if (r.next())
                 forumTitle = r.getString("Forum.title");
         }
         return forumTitle;
     }
 
-    //   Persons.
+    //   Places.
 
     /**
-     * Get the first name of the specified person.
-     * @param c         A database connnection
-     * @param personId  The person's unique identifier
-     * @return the first name of the given person or null if not found
+     * Get the identifier of the specified country.
+     * @param c        A database connection
+     * @param country  The country's name
+     * @return the identifier of the given country or -1 if not found
      * @throws SQLException if a database access error occurs
+     * Some towns have the same name as a country.  Only countries
+     * are part of a place that is itself part of no place.
      */
-    static public String getFirstName(Connection c, long personId) throws SQLException {
-        String firstName = null;
-        String firstNameQuery =
-            "  SELECT Person.firstName " +
-            "    FROM Person " +
-            "   WHERE Person.id = " + personId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(firstNameQuery)) {
-            if (r.next())
-                firstName = r.getString("Person.firstName");
-        }
-        return firstName;
+    static public long getCountryId(Connection c, String country) throws SQLException {
+        return DimensionCache.get(c).getCountryId(country);
     }
 
     /**
-     * Get the last name of the specified person.
-     * @param c         A database connection
-     * @param personId  The person's unique identifier
-     * @return the last name of the given person or null if not found
+     * Get the name of the specified place.
+     * @param c        A database connection
+     * @param placeId  The place's unique identifier
+     * @return the name of the given place or null if not found
      * @throws SQLException if a database access error occurs
      */
-    static public String getLastName(Connection c, long personId) throws SQLException {
-        String lastName = null;
-        String lastNameQuery =
-            "  SELECT Person.lastName " +
-            "    FROM Person " +
-            "   WHERE Person.id = " + personId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(lastNameQuery)) {
-            if (r.next())
-                lastName = r.getString("Person.lastName");
-        }
-        return lastName;
+    static public String getPlaceName(Connection c, long placeId) throws SQLException {
+        return DimensionCache.get(c).getPlaceName(placeId);
     }
 
+    //   Organisations.
+
     /**
-     * Get the gender of the specified person.
-     * @param c         A database connection
-     * @param personId  The person's unique identifier
-     * @return the gender of the given person or null if not found
+     * Get the name of the specified organisation.
+     * @param c               A database connection
+     * @param organisationId  The organisation's unique identifier
+     * @return the name of the given organisation or null if not found
      * @throws SQLException if a database access error occurs
      */
-    static public String getGender(Connection c, long personId) throws SQLException {
-        String gender = null;
-        String genderQuery =
-            "  SELECT Person.gender " +
-            "    FROM Person " +
-            "   WHERE Person.id = " + personId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(genderQuery)) {
-            if (r.next())
-                gender = r.getString("Person.gender");
-        }
-        return gender;
+    static public String getOrganisationName(Connection c, long organisationId) throws SQLException {
+        return DimensionCache.get(c).getOrganisationName(organisationId);
     }
 
-    //   Places.
-
     /**
-     * Get the identifier of the specified country.
-     * @param c        A database connection
-     * @param country  The country's name
-     * @return the identifier of the given country or -1 if not found
+     * Get the place of the specified organisation.
+     * @param c               A database connection
+     * @param organisationId  The organisation's unique identifier
+     * @return the identifier of the place where the given organisation is located or -1 if not found
      * @throws SQLException if a database access error occurs
-     * Some towns have the same name as a country.  LEFT JOIN Place
-     * twice with PlaceIsPartOfPlace.  Only countries will have the
-     * first version PlaceIsPartOfPlace's fields set to non-NULL
-     * values and the second version PlaceIsPartOfPlace's fields set
-     * to NULL.
      */
-    static public long getCountryId(Connection c, String country) throws SQLException {
-        long countryId = -1;
-        String countryQuery =
-            "   SELECT Place.id " +
-            "     FROM Place " +
-            "LEFT JOIN PlaceIsPartOfPlace AS P " +
-            "       ON Place.id = P.place1Id " +
-            "LEFT JOIN PlaceIsPartOfPlace AS R " +
-            "       ON P.place2Id = R.place1Id " +
-            "    WHERE Place.name = \"" + country + "\"" +
-            "      AND P.place1Id IS NOT NULL" +
-            "      AND R.place1Id IS NULL";
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(countryQuery)) {
-            if (r.next())
-                countryId = r.getLong("Place.id");
-        }
-        return countryId;
+    static public long getOrganisationPlaceId(Connection c, long organisationId) throws SQLException {
+        return DimensionCache.get(c).getOrganisationPlaceId(organisationId);
     }
 
     //   Tags.
@@ -205,17 +275,7 @@ public class LdbcUtils {
      * @throws SQLException if a database access error occurs
      */
     static public String getTagName(Connection c, long tagId) throws SQLException {
-        String tagName = null;
-        String tagQuery =
-            "  SELECT Tag.name " +
-            "    FROM Tag " +
-            "   WHERE Tag.id = " + tagId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(tagQuery)) {
-            if (r.next())
-                tagName = r.getString("Tag.name");
-        }
-        return tagName;
+        return DimensionCache.get(c).getTagName(tagId);
     }
 
     /**
@@ -226,17 +286,7 @@ public class LdbcUtils {
      * @throws SQLException if a database access error occurs
      */
     static public long getTagId(Connection c, String tag) throws SQLException {
-        long tagId = -1;
-        String tagQuery =
-            "  SELECT Tag.id " +
-            "    FROM Tag " +
-            "   WHERE Tag.name = \"" + tag + "\"";
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(tagQuery)) {
-            if (r.next())
-                tagId = r.getLong("Tag.id");
-        }
-        return tagId;
+        return DimensionCache.get(c).getTagId(tag);
     }
 
     //   Tag Classes.
@@ -249,23 +299,18 @@ public class LdbcUtils {
      * @throws SQLException if a database access error occurs
      */
     static public long getTagClassId(Connection c, String tagClass) throws SQLException {
-        long tagClassId = -1;
-        String tagClassIdQuery =
-            "  SELECT TagClass.id " +
-            "    FROM TagClass " +
-            "   WHERE TagClass.name = \"" + tagClass + "\"";
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(tagClassIdQuery)) {
-            if (r.next())
-                tagClassId = r.getLong("TagClass.id");
-        }
-        return tagClassId;
+        return DimensionCache.get(c).getTagClassId(tagClass);
     }
 
     //  Relationships.
 
     //   Has Creator.
 
+    private static final String messageQuery =
+        "  SELECT MessageHasCreatorPerson.messageId " +
+        "    FROM MessageHasCreatorPerson " +
+        "   WHERE MessageHasCreatorPerson.personId = ?";
+
     /**
      * Find all messages created by the given person.
      * @param c         A database connection
@@ -275,12 +320,9 @@ public class LdbcUtils {
      */
     static public List<Long> getMessagesCreatedBy(Connection c, long personId) throws SQLException {
         List<Long> messages = new ArrayList<>();
-        String messageQuery =
-            "  SELECT MessageHasCreatorPerson.messageId " +
-            "    FROM MessageHasCreatorPerson " +
-            "   WHERE MessageHasCreatorPerson.personId = " + personId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(messageQuery)) {
+        PreparedStatement s = StatementCache.prepare(c, messageQuery);
+        s.setLong(1, personId);
+        try (ResultSet r = s.executeQuery()) {
             while (r.next())
                 messages.add(r.getLong("MessageHasCreatorPerson.messageId"));
         }
@@ -295,19 +337,46 @@ public class LdbcUtils {
      * @throws SQLException if a database access error occurs
      */
     static public long getAuthorOf(Connection c, long messageId) throws SQLException {
-        long authorId = -1;
-        String authorQuery =
-            "  SELECT MessageHasCreatorPerson.personId " +
-            "    FROM MessageHasCreatorPerson " +
-            "   WHERE MessageHasCreatorPerson.messageId = " + messageId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(authorQuery)) {
-            if (r.next())
-                authorId = r.getLong("MessageHasCreatorPerson.personId");
+        long authorId = MessageCache.current().getCreatorId(messageId);
+        if (authorId == MessageCache.notCached) {
+            long[] metadata = fetchMessageMetadata(c, messageId);
+            authorId = metadata == null ? -1 : metadata[0];
         }
         return authorId;
     }
 
+    private static final String metadataQuery =
+        "   SELECT MessageHasCreatorPerson.personId, " +
+        "          CommentReplyOfMessage.messageId " +
+        "     FROM MessageHasCreatorPerson " +
+        "LEFT JOIN CommentReplyOfMessage " +
+        "       ON CommentReplyOfMessage.commentId = MessageHasCreatorPerson.messageId " +
+        "    WHERE MessageHasCreatorPerson.messageId = ?";
+
+    /**
+     * Read the creator and the parent of the given message and cache them.
+     * @param c          A database connection
+     * @param messageId  The message's unique identifier
+     * @return the identifiers of the creator and of the parent (-1 for a post) of the given message or null if not found
+     * @throws SQLException if a database access error occurs
+     */
+    private static long[] fetchMessageMetadata(Connection c, long messageId) throws SQLException {
+        long[] metadata = null;
+        PreparedStatement s = StatementCache.prepare(c, metadataQuery);
+        s.setLong(1, messageId);
+        try (ResultSet r = s.executeQuery()) {
+            if (r.next()) {
+                long parentId = r.getLong("CommentReplyOfMessage.messageId");
+                if (r.wasNull())
+                    parentId = MessageCache.noParent;
+                metadata = new long[] { r.getLong("MessageHasCreatorPerson.personId"), parentId };
+            }
+        }
+        if (metadata != null)
+            MessageCache.current().put(messageId, metadata[0], metadata[1]);
+        return metadata;
+    }
+
     //   Reply Of.
 
     /**
@@ -319,19 +388,19 @@ public class LdbcUtils {
      * A post does not have a parent.
      */
     static public long getParentMessageId(Connection c, long messageId) throws SQLException {
-        long parentMessageId = -1;
-        String parentMessageQuery =
-            "  SELECT CommentReplyOfMessage.messageId " +
-            "    FROM CommentReplyOfMessage " +
-            "   WHERE CommentReplyOfMessage.commentId = " + messageId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(parentMessageQuery)) {
-            if (r.next())
-                parentMessageId = r.getLong("CommentReplyOfMessage.messageId");
+        long parentMessageId = MessageCache.current().getParentId(messageId);
+        if (parentMessageId == MessageCache.notCached) {
+            long[] metadata = fetchMessageMetadata(c, messageId);
+            parentMessageId = metadata == null ? -1 : metadata[1];
         }
         return parentMessageId;
     }
 
+    private static final String rootPostQuery =
+        "  SELECT MessageRootPost.rootPostId " +
+        "    FROM MessageRootPost " +
+        "   WHERE MessageRootPost.messageId = ?";
+
     /**
      * Return the original post of the given message.
      *
@@ -340,12 +409,24 @@ public class LdbcUtils {
      * the original post associated with the given message, following
      * the Reply Of relationship.  If the given message is a post,
      * this function returns that post.
+     *
+     * The MessageRootPost table records the original post of every
+     * message, so this takes a single read.  Should a message be
+     * missing from that table, we follow the Reply Of relationship
+     * one message at a time instead.
      * @param c          A database connection
      * @param messageId  The message's unique identifier
      * @return the identifier of the original post associated with the given message
      * @throws SQLException if a database access error occurs
      */
     static public long getParentPostId(Connection c, long messageId) throws SQLException {
+        PreparedStatement s = StatementCache.prepare(c, rootPostQuery);
+        s.setLong(1, messageId);
+        try (ResultSet r = s.executeQuery()) {
+            if (r.next())
+                return r.getLong("MessageRootPost.rootPostId");
+        }
+
         long parentPostId;
         long nextId = messageId;
         do {
@@ -370,6 +451,11 @@ public class LdbcUtils {
 
     //   Container Of.
 
+    private static final String postForumQuery =
+        "   SELECT ForumContainerOfPost.forumId " +
+        "     FROM ForumContainerOfPost " +
+        "    WHERE ForumContainerOfPost.postId = ?";
+
     /**
      * Return the forum containing the given post.
      * @param c       A database connection
@@ -379,12 +465,9 @@ public class LdbcUtils {
      */
     static public long getForumOfPost(Connection c, long postId) throws SQLException {
         long forumId = -1;
-        String forumQuery =
-            "   SELECT ForumContainerOfPost.forumId " +
-            "     FROM ForumContainerOfPost " +
-            "    WHERE ForumContainerOfPost.postId = " + postId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(forumQuery)) {
+        PreparedStatement s = StatementCache.prepare(c, postForumQuery);
+        s.setLong(1, postId);
+        try (ResultSet r = s.executeQuery()) {
             if (r.next())
                 forumId = r.getLong("ForumContainerOfPost.forumId");
         }
@@ -393,6 +476,12 @@ public class LdbcUtils {
 
     //   Email.
 
+    private static final String emailQuery =
+        "  SELECT PersonEmailEmailAddress.email " +
+        "    FROM PersonEmailEmailAddress " +
+        "   WHERE PersonEmailEmailAddress.personId = ? " +
+        "ORDER BY PersonEmailEmailAddress.email";
+
     /**
      * Get the email addresses of the specified person.
      * @param c         A database connection
@@ -402,13 +491,9 @@ public class LdbcUtils {
      */
     static public List<String> getEmails(Connection c, long personId) throws SQLException {
         List<String> emails = new ArrayList<>();
-        String emailQuery =
-            "  SELECT PersonEmailEmailAddress.email " +
-            "    FROM PersonEmailEmailAddress " +
-            "   WHERE PersonEmailEmailAddress.personId = " + personId + " " +
-            "ORDER BY PersonEmailEmailAddress.email";
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(emailQuery)) {
+        PreparedStatement s = StatementCache.prepare(c, emailQuery);
+        s.setLong(1, personId);
+        try (ResultSet r = s.executeQuery()) {
             while (r.next())
                 emails.add(r.getString("PersonEmailEmailAddress.email"));
         }
@@ -417,6 +502,11 @@ public class LdbcUtils {
 
     //   HasInterest
 
+    private static final String tagQuery =
+        "  SELECT PersonHasInterestTag.tagId " +
+        "    FROM PersonHasInterestTag " +
+        "   WHERE PersonHasInterestTag.personId = ?";
+
     /**
      * Get the tags in which the specified person has interest.
      * @param c         A database connection
@@ -426,12 +516,9 @@ public class LdbcUtils {
      */
     static public Set<Long> getTags(Connection c, long personId) throws SQLException {
         Set<Long> tags = new HashSet<>();
-        String tagQuery =
-            "  SELECT PersonHasInterestTag.tagId " +
-            "    FROM PersonHasInterestTag " +
-            "   WHERE PersonHasInterestTag.personId = " + personId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(tagQuery)) {
+        PreparedStatement s = StatementCache.prepare(c, tagQuery);
+        s.setLong(1, personId);
+        try (ResultSet r = s.executeQuery()) {
             while (r.next())
                 tags.add(r.getLong("PersonHasInterestTag.tagId"));
         }
@@ -440,6 +527,12 @@ public class LdbcUtils {
 
     //   Knows.
 
+    private static final String friendshipQuery =
+        "  SELECT PersonKnowsPerson.person1Id " +
+        "    FROM PersonKnowsPerson " +
+        "   WHERE PersonKnowsPerson.person1Id = ? " +
+        "     AND PersonKnowsPerson.person2Id = ?";
+
     /**
      * Return true if two persons know each other.
      * @param c          A database connection
@@ -450,19 +543,21 @@ public class LdbcUtils {
      */
     static public boolean areTheyFriend(Connection c, long person1Id, long person2Id) throws SQLException {
         boolean areTheyFriend = false;
-        String friendQuery =
-            "  SELECT PersonKnowsPerson.person1Id " +
-            "    FROM PersonKnowsPerson " +
-            "   WHERE PersonKnowsPerson.person1Id = " + person1Id +
-            "     AND PersonKnowsPerson.person2Id = " + person2Id;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(friendQuery)) {
+        PreparedStatement s = StatementCache.prepare(c, friendshipQuery);
+        s.setLong(1, person1Id);
+        s.setLong(2, person2Id);
+        try (ResultSet r = s.executeQuery()) {
             if (r.next())
                 areTheyFriend = true;
         }
         return areTheyFriend;
     }
 
+    private static final String friendQuery =
+        "   SELECT PersonKnowsPerson.person2Id " +
+        "     FROM PersonKnowsPerson " +
+        "    WHERE PersonKnowsPerson.person1Id = ?";
+
     /**
      * Find the given person's friends.
      * @param c         A database connection
@@ -472,20 +567,61 @@ public class LdbcUtils {
      */
     public static List<Long> findFriends(Connection c, long personId) throws SQLException {
         List<Long> friends = new ArrayList<>();
-        String friendQuery =
-            "   SELECT PersonKnowsPerson.person2Id " +
-            "     FROM PersonKnowsPerson " +
-            "    WHERE PersonKnowsPerson.person1Id = " + personId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(friendQuery)) {
+        PreparedStatement s = StatementCache.prepare(c, friendQuery);
+        s.setLong(1, personId);
+        try (ResultSet r = s.executeQuery()) {
             while (r.next())
                 friends.add(r.getLong("PersonKnowsPerson.person2Id"));
         }
         return friends;
     }
 
+    // The friends of several persons.
+    private static final String[] friendsQueries = withInLists(
+        "   SELECT PersonKnowsPerson.person1Id, " +
+        "          PersonKnowsPerson.person2Id " +
+        "     FROM PersonKnowsPerson " +
+        "    WHERE PersonKnowsPerson.person1Id IN ({ids})");
+
+    /**
+     * Find the friends of several persons at once.
+     *
+     * We fetch the friends of as many persons as an IN list allows
+     * with each SQL query rather than issuing one query per person.
+     *
+     * @param c          A database connection
+     * @param personIds  The persons' unique identifiers
+     * @return a map from each given person with at least one friend to the list of their friends
+     * @throws SQLException if a database access error occurs
+     */
+    public static Long2ObjectHashMap<LongArrayDeque> findFriends(Connection c, LongArrayDeque personIds) throws SQLException {
+        Long2ObjectHashMap<LongArrayDeque> friends = new Long2ObjectHashMap<>(personIds.size());
+        long[] ids = personIds.toArray();
+        for (int from = 0; from < ids.length; from += maxInListSize) {
+            int to = Math.min(from + maxInListSize, ids.length);
+            PreparedStatement s = prepareInList(c, friendsQueries, ids, from, to, 1);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next()) {
+                    long personId = r.getLong("PersonKnowsPerson.person1Id");
+                    LongArrayDeque personFriends = friends.get(personId);
+                    if (personFriends == null) {
+                        personFriends = new LongArrayDeque();
+                        friends.put(personId, personFriends);
+                    }
+                    personFriends.add(r.getLong("PersonKnowsPerson.person2Id"));
+                }
+            }
+        }
+        return friends;
+    }
+
     //   Speaks.
 
+    private static final String languageQuery =
+        "  SELECT PersonSpeaksLanguage.language " +
+        "    FROM PersonSpeaksLanguage " +
+        "   WHERE PersonSpeaksLanguage.personId = ?";
+
     /**
      * Get the languages spoken by the specified person.
      * @param c         A database connection
@@ -495,12 +631,9 @@ public class LdbcUtils {
      */
     static public List<String> getLanguages(Connection c, long personId) throws SQLException {
         List<String> languages = new ArrayList<>();
-        String languageQuery =
-            "  SELECT PersonSpeaksLanguage.language " +
-            "    FROM PersonSpeaksLanguage " +
-            "   WHERE PersonSpeaksLanguage.personId = " + personId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(languageQuery)) {
+        PreparedStatement s = StatementCache.prepare(c, languageQuery);
+        s.setLong(1, personId);
+        try (ResultSet r = s.executeQuery()) {
             while (r.next())
                 languages.add(r.getString("PersonSpeaksLanguage.language"));
         }
@@ -509,6 +642,12 @@ public class LdbcUtils {
 
     //   Post Has Tag.
 
+    private static final String postTagQuery =
+        "  SELECT PostHasTagTag.tagId " +
+        "    FROM PostHasTagTag " +
+        "   WHERE PostHasTagTag.tagId = ? " +
+        "     AND PostHasTagTag.postId = ?";
+
     /**
      * Return true if the specified post contains the given tag.
      * @param c       A database connection
@@ -519,13 +658,10 @@ public class LdbcUtils {
      */
     static public boolean doesPostHaveTag(Connection c, long postId, long tagId) throws SQLException {
         boolean doesPostHaveTag = false;
-        String tagQuery =
-            "  SELECT PostHasTagTag.tagId " +
-            "    FROM PostHasTagTag " +
-            "   WHERE PostHasTagTag.tagId = " + tagId + " " +
-            "     AND PostHasTagTag.postId = " + postId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(tagQuery)) {
+        PreparedStatement s = StatementCache.prepare(c, postTagQuery);
+        s.setLong(1, tagId);
+        s.setLong(2, postId);
+        try (ResultSet r = s.executeQuery()) {
             if (r.next())
                 doesPostHaveTag = true;
         }
@@ -538,21 +674,11 @@ public class LdbcUtils {
      * Return the tag class of the given tag.
      * @param c      A database connection
      * @param tagId  The tag's unique identifier
-     * @return the tag class of the given tag
+     * @return the tag class of the given tag or -1 if not found
      * @throws SQLException if a database access error occurs
      */
     static public long getTypeTagClassIdOf(Connection c, long tagId) throws SQLException {
-        long tagClassId = 0;
-        String tagClassQuery =
-            "  SELECT TagHasTypeTagClass.tagClassId " +
-            "    FROM TagHasTypeTagClass " +
-            "   WHERE TagHasTypeTagClass.tagId = " + tagId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(tagClassQuery)) {
-            if (r.next())
-                tagClassId = r.getLong("TagHasTypeTagClass.tagClassId");
-        }
-        return tagClassId;
+        return DimensionCache.get(c).getTypeTagClassIdOf(tagId);
     }
 
     //   Is Subclass Of.
@@ -562,30 +688,21 @@ public class LdbcUtils {
      * @param c                 A database connection
      * @param tagClassId        Tag class's unique identifier
      * @param targetTagClassId  Target class's unique identifier
-     * @return true if tag class is target tag class or one of its subclasses
+     * @return true if tag class is one of the (direct or indirect) subclasses of target tag class
      * @throws SQLException if a database access error occurs
      */
     static public boolean isTagClassSubclassOfTagClass(Connection c, long tagClassId, long targetTagClassId) throws SQLException {
-        boolean isSubclass = false;
-        String subClassQuery =
-            "  SELECT TagClassIsSubclassOfTagClass.tagClass2Id " +
-            "    FROM TagClassIsSubclassOfTagClass " +
-            "   WHERE TagClassIsSubclassOfTagClass.tagClass1Id = " + tagClassId;
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(subClassQuery)) {
-            if (r.next()) {
-                long overclassId = r.getLong("TagClassIsSubclassOfTagClass.tagClass2Id");
-                if (overclassId == targetTagClassId)
-                    isSubclass = true;
-                else
-                    isSubclass = isTagClassSubclassOfTagClass(c, overclassId, targetTagClassId);
-            }
-        }
-        return isSubclass;
+        return tagClassId != targetTagClassId
+            && DimensionCache.get(c).isTagClassWithinTagClass(tagClassId, targetTagClassId);
     }
 
     // More complex queries involving more than one table.
 
+    private static final String placeQuery =
+        "  SELECT PersonIsLocatedInPlace.placeId " +
+        "    FROM PersonIsLocatedInPlace " +
+        "   WHERE PersonIsLocatedInPlace.personId = ?";
+
     /**
      * Find the location of the specified person.
      * @param c         A database connection
@@ -595,19 +712,22 @@ public class LdbcUtils {
      */
     static public String findPlace(Connection c, long personId) throws SQLException {
         String place = null;
-        String placeQuery =
-            "  SELECT Place.name " +
-            "    FROM PersonIsLocatedInPlace, Place " +
-            "   WHERE PersonIsLocatedInPlace.personId = " + personId + " " +
-            "     AND PersonIsLocatedInPlace.placeId = Place.id";
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(placeQuery)) {
+        DimensionCache dimensions = DimensionCache.get(c);
+        PreparedStatement s = StatementCache.prepare(c, placeQuery);
+        s.setLong(1, personId);
+        try (ResultSet r = s.executeQuery()) {
             if (r.next())
-                place = r.getString("Place.name");
+                place = dimensions.getPlaceName(r.getLong("PersonIsLocatedInPlace.placeId"));
         }
         return place;
     }
 
+    private static final String schoolQuery =
+        "  SELECT PersonStudyAtOrganisation.organisationId, " +
+        "         PersonStudyAtOrganisation.classYear " +
+        "    FROM PersonStudyAtOrganisation " +
+        "   WHERE PersonStudyAtOrganisation.personId = ?";
+
     /**
      * Find the schools attended by the specified person.
      * @param c         A database connection
@@ -617,29 +737,28 @@ public class LdbcUtils {
      */
     static public List<List<Object>> findSchools(Connection c, long personId) throws SQLException {
         List<List<Object>> schools = new ArrayList<>();
-        String schoolQuery =
-            "  SELECT Organisation.name, " +
-            "    PersonStudyAtOrganisation.classYear, " +
-            "    Place.name " +
-            "    FROM PersonStudyAtOrganisation, Organisation, " +
-            "         Place, OrganisationIsLocatedInPlace " +
-            "   WHERE PersonStudyAtOrganisation.personId = " + personId + " " +
-            "     AND PersonStudyAtOrganisation.organisationId = Organisation.id " +
-            "     AND OrganisationIsLocatedInPlace.organisationId = Organisation.id " +
-            "     AND OrganisationIsLocatedInPlace.placeId = Place.id";
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(schoolQuery)) {
+        DimensionCache dimensions = DimensionCache.get(c);
+        PreparedStatement s = StatementCache.prepare(c, schoolQuery);
+        s.setLong(1, personId);
+        try (ResultSet r = s.executeQuery()) {
             while (r.next()) {
+                long organisationId = r.getLong("PersonStudyAtOrganisation.organisationId");
                 List<Object> school = new ArrayList<>();
-                school.add(r.getString("Organisation.name"));
+                school.add(dimensions.getOrganisationName(organisationId));
                 school.add(r.getInt("PersonStudyAtOrganisation.classYear"));
-                school.add(r.getString("Place.name"));
+                school.add(dimensions.getPlaceName(dimensions.getOrganisationPlaceId(organisationId)));
                 schools.add(school);
             }
         }
         return schools;
     }
 
+    private static final String organizationQuery =
+        "  SELECT PersonWorkAtOrganisation.organisationId, " +
+        "         PersonWorkAtOrganisation.workFrom " +
+        "    FROM PersonWorkAtOrganisation " +
+        "   WHERE PersonWorkAtOrganisation.personId = ?";
+
     /**
      * Find the organizations by the specified person.
      * @param c         A database connection
@@ -649,27 +768,309 @@ public class LdbcUtils {
      */
     static public List<List<Object>> findOrganizations(Connection c, long personId) throws SQLException {
         List<List<Object>> organizations = new ArrayList<>();
-        String organizationQuery =
-            "  SELECT Organisation.name, " +
-            "    PersonWorkAtOrganisation.workFrom, " +
-            "    Place.name " +
-            "    FROM PersonWorkAtOrganisation, Organisation, " +
-            "         Place, OrganisationIsLocatedInPlace " +
-            "   WHERE PersonWorkAtOrganisation.personId = " + personId + " " +
-            "     AND PersonWorkAtOrganisation.organisationId = Organisation.id " +
-            "     AND OrganisationIsLocatedInPlace.organisationId = Organisation.id " +
-            "     AND OrganisationIsLocatedInPlace.placeId = Place.id";
-        try (Statement s = c.createStatement();
-             ResultSet r = s.executeQuery(organizationQuery)) {
+        DimensionCache dimensions = DimensionCache.get(c);
+        PreparedStatement s = StatementCache.prepare(c, organizationQuery);
+        s.setLong(1, personId);
+        try (ResultSet r = s.executeQuery()) {
             while (r.next()) {
+                long organisationId = r.getLong("PersonWorkAtOrganisation.organisationId");
                 List<Object> organization = new ArrayList<>();
-                organization.add(r.getString("Organisation.name"));
+                organization.add(dimensions.getOrganisationName(organisationId));
                 organization.add(r.getInt("PersonWorkAtOrganisation.workFrom"));
-                organization.add(r.getString("Place.name"));
+                organization.add(dimensions.getPlaceName(dimensions.getOrganisationPlaceId(organisationId)));
                 organizations.add(organization);
             }
         }
         return organizations;
     }
 
+    // Queries involving many persons at once.  Each returns a map
+    // with an entry for every given person.
+
+    // The profiles of several persons.  Persons without a location
+    // still get a row.
+    private static final String[] profilesQueries = withInLists(
+        "   SELECT Person.id, " +
+        "          Person.firstName, " +
+        "          Person.lastName, " +
+        "          Person.gender, " +
+        "          Person.birthday, " +
+        "          Person.creationDate, " +
+        "          Person.locationIP, " +
+        "          Person.browserUsed, " +
+        "          PersonIsLocatedInPlace.placeId " +
+        "     FROM Person " +
+        "LEFT JOIN PersonIsLocatedInPlace " +
+        "       ON PersonIsLocatedInPlace.personId = Person.id " +
+        "    WHERE Person.id IN ({ids})");
+
+    /**
+     * Get the profiles of the specified persons.
+     *
+     * <p>We look the persons up in the person cache first and fetch
+     * the missing ones all at once, caching them in turn.
+     *
+     * @param c          A database connection
+     * @param personIds  The persons' unique identifiers
+     * @return the profile of each given person found
+     * @throws SQLException if a database access error occurs
+     */
+    static public Long2ObjectHashMap<PersonProfile> getPersonProfiles(Connection c, LongArrayDeque personIds) throws SQLException {
+        PersonCache cache = PersonCache.current();
+        Long2ObjectHashMap<PersonProfile> profiles = new Long2ObjectHashMap<>(personIds.size());
+        LongArrayDeque missingIds = new LongArrayDeque();
+        for (int i = 0; i < personIds.size(); i++) {
+            PersonProfile profile = cache.get(personIds.get(i));
+            if (profile != null)
+                profiles.put(personIds.get(i), profile);
+            else
+                missingIds.add(personIds.get(i));
+        }
+        long[] ids = missingIds.toArray();
+        for (int from = 0; from < ids.length; from += maxInListSize) {
+            int to = Math.min(from + maxInListSize, ids.length);
+            PreparedStatement s = prepareInList(c, profilesQueries, ids, from, to, 1);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next()) {
+                    long cityId = r.getLong("PersonIsLocatedInPlace.placeId");
+                    if (r.wasNull())
+                        cityId = -1;
+                    PersonProfile profile = new PersonProfile(
+                        r.getLong("Person.id"),
+                        r.getString("Person.firstName"),
+                        r.getString("Person.lastName"),
+                        r.getString("Person.gender"),
+                        r.getLong("Person.birthday"),
+                        r.getLong("Person.creationDate"),
+                        r.getString("Person.locationIP"),
+                        r.getString("Person.browserUsed"),
+                        cityId);
+                    profiles.put(profile.personId(), profile);
+                    cache.put(profile);
+                }
+            }
+        }
+        return profiles;
+    }
+
+    /**
+     * Get the profile of the specified person.
+     * @param c         A database connection
+     * @param personId  The person's unique identifier
+     * @return the profile of the given person or null if not found
+     * @throws SQLException if a database access error occurs
+     */
+    static public PersonProfile getPersonProfile(Connection c, long personId) throws SQLException {
+        LongArrayDeque personIds = new LongArrayDeque(1);
+        personIds.add(personId);
+        return getPersonProfiles(c, personIds).get(personId);
+    }
+
+    /**
+     * Get the first name, last name, gender, and city of the specified persons.
+     * @param c          A database connection
+     * @param personIds  The persons' unique identifiers
+     * @return the summary of each given person (with null attributes if not found)
+     * @throws SQLException if a database access error occurs
+     */
+    static public Long2ObjectHashMap<PersonSummary> getPersonSummaries(Connection c, LongArrayDeque personIds) throws SQLException {
+        Long2ObjectHashMap<PersonProfile> profiles = getPersonProfiles(c, personIds);
+        DimensionCache dimensions = DimensionCache.get(c);
+        Long2ObjectHashMap<PersonSummary> summaries = new Long2ObjectHashMap<>(personIds.size());
+        for (int i = 0; i < personIds.size(); i++) {
+            long personId = personIds.get(i);
+            PersonProfile profile = profiles.get(personId);
+            if (profile == null)
+                summaries.put(personId, new PersonSummary(personId, null, null, null, null));
+            else
+                summaries.put(personId, new PersonSummary(
+                    personId,
+                    profile.firstName(),
+                    profile.lastName(),
+                    profile.gender(),
+                    dimensions.getPlaceName(profile.cityId())));
+        }
+        return summaries;
+    }
+
+    // The email addresses of several persons.
+    private static final String[] emailsQueries = withInLists(
+        "  SELECT PersonEmailEmailAddress.personId, " +
+        "         PersonEmailEmailAddress.email " +
+        "    FROM PersonEmailEmailAddress " +
+        "   WHERE PersonEmailEmailAddress.personId IN ({ids}) " +
+        "ORDER BY PersonEmailEmailAddress.personId, " +
+        "         PersonEmailEmailAddress.email");
+
+    /**
+     * Get the email addresses of the specified persons.
+     * @param c          A database connection
+     * @param personIds  The persons' unique identifiers
+     * @return a (possibly empty) list of emails associated with each given person
+     * @throws SQLException if a database access error occurs
+     */
+    static public Map<Long, List<String>> getEmails(Connection c, long[] personIds) throws SQLException {
+        Map<Long, List<String>> emails = new HashMap<>();
+        for (long personId : personIds)
+            emails.put(personId, new ArrayList<String>());
+        for (int from = 0; from < personIds.length; from += maxInListSize) {
+            int to = Math.min(from + maxInListSize, personIds.length);
+            PreparedStatement s = prepareInList(c, emailsQueries, personIds, from, to, 1);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next())
+                    emails.get(r.getLong("PersonEmailEmailAddress.personId")).add(r.getString("PersonEmailEmailAddress.email"));
+            }
+        }
+        return emails;
+    }
+
+    // The languages spoken by several persons.
+    private static final String[] languagesQueries = withInLists(
+        "  SELECT PersonSpeaksLanguage.personId, " +
+        "         PersonSpeaksLanguage.language " +
+        "    FROM PersonSpeaksLanguage " +
+        "   WHERE PersonSpeaksLanguage.personId IN ({ids})");
+
+    /**
+     * Get the languages spoken by the specified persons.
+     * @param c          A database connection
+     * @param personIds  The persons' unique identifiers
+     * @return a (possibly empty) list of languages spoken by each given person
+     * @throws SQLException if a database access error occurs
+     */
+    static public Map<Long, List<String>> getLanguages(Connection c, long[] personIds) throws SQLException {
+        Map<Long, List<String>> languages = new HashMap<>();
+        for (long personId : personIds)
+            languages.put(personId, new ArrayList<String>());
+        for (int from = 0; from < personIds.length; from += maxInListSize) {
+            int to = Math.min(from + maxInListSize, personIds.length);
+            PreparedStatement s = prepareInList(c, languagesQueries, personIds, from, to, 1);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next())
+                    languages.get(r.getLong("PersonSpeaksLanguage.personId")).add(r.getString("PersonSpeaksLanguage.language"));
+            }
+        }
+        return languages;
+    }
+
+    // The locations of several persons.
+    private static final String[] placesQueries = withInLists(
+        "  SELECT PersonIsLocatedInPlace.personId, " +
+        "         PersonIsLocatedInPlace.placeId " +
+        "    FROM PersonIsLocatedInPlace " +
+        "   WHERE PersonIsLocatedInPlace.personId IN ({ids})");
+
+    /**
+     * Find the location of the specified persons.
+     * @param c          A database connection
+     * @param personIds  The persons' unique identifiers
+     * @return the current location of each given person or null if not found
+     * @throws SQLException if a database access error occurs
+     */
+    static public Map<Long, String> findPlaces(Connection c, long[] personIds) throws SQLException {
+        Map<Long, String> places = new HashMap<>();
+        for (long personId : personIds)
+            places.put(personId, null);
+        DimensionCache dimensions = DimensionCache.get(c);
+        for (int from = 0; from < personIds.length; from += maxInListSize) {
+            int to = Math.min(from + maxInListSize, personIds.length);
+            PreparedStatement s = prepareInList(c, placesQueries, personIds, from, to, 1);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next())
+                    places.put(r.getLong("PersonIsLocatedInPlace.personId"), dimensions.getPlaceName(r.getLong("PersonIsLocatedInPlace.placeId")));
+            }
+        }
+        return places;
+    }
+
+    // The schools attended by several persons.
+    private static final String[] schoolsQueries = withInLists(
+        "  SELECT PersonStudyAtOrganisation.personId, " +
+        "         PersonStudyAtOrganisation.organisationId, " +
+        "         PersonStudyAtOrganisation.classYear " +
+        "    FROM PersonStudyAtOrganisation " +
+        "   WHERE PersonStudyAtOrganisation.personId IN ({ids})");
+
+    /**
+     * Find the schools attended by the specified persons.
+     * @param c          A database connection
+     * @param personIds  The persons' unique identifiers
+     * @return a (possibly empty) list of schools attended by each given person
+     * @throws SQLException if a database access error occurs
+     */
+    static public Map<Long, List<List<Object>>> findSchools(Connection c, long[] personIds) throws SQLException {
+        Map<Long, List<List<Object>>> schools = new HashMap<>();
+        for (long personId : personIds)
+            schools.put(personId, new ArrayList<List<Object>>());
+        DimensionCache dimensions = DimensionCache.get(c);
+        for (int from = 0; from < personIds.length; from += maxInListSize) {
+            int to = Math.min(from + maxInListSize, personIds.length);
+            PreparedStatement s = prepareInList(c, schoolsQueries, personIds, from, to, 1);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next()) {
+                    long organisationId = r.getLong("PersonStudyAtOrganisation.organisationId");
+                    List<Object> school = new ArrayList<>();
+                    school.add(dimensions.getOrganisationName(organisationId));
+                    school.add(r.getInt("PersonStudyAtOrganisation.classYear"));
+                    school.add(dimensions.getPlaceName(dimensions.getOrganisationPlaceId(organisationId)));
+                    schools.get(r.getLong("PersonStudyAtOrganisation.personId")).add(school);
+                }
+            }
+        }
+        return schools;
+    }
+
+    // The organizations of several persons.
+    private static final String[] organizationsQueries = withInLists(
+        "  SELECT PersonWorkAtOrganisation.personId, " +
+        "         PersonWorkAtOrganisation.organisationId, " +
+        "         PersonWorkAtOrganisation.workFrom " +
+        "    FROM PersonWorkAtOrganisation " +
+        "   WHERE PersonWorkAtOrganisation.personId IN ({ids})");
+
+    /**
+     * Find the organizations of the specified persons.
+     * @param c          A database connection
+     * @param personIds  The persons' unique identifiers
+     * @return a (possibly empty) list of organizations for which each given person has worked
+     * @throws SQLException if a database access error occurs
+     */
+    static public Map<Long, List<List<Object>>> findOrganizations(Connection c, long[] personIds) throws SQLException {
+        Map<Long, List<List<Object>>> organizations = new HashMap<>();
+        for (long personId : personIds)
+            organizations.put(personId, new ArrayList<List<Object>>());
+        DimensionCache dimensions = DimensionCache.get(c);
+        for (int from = 0; from < personIds.length; from += maxInListSize) {
+            int to = Math.min(from + maxInListSize, personIds.length);
+            PreparedStatement s = prepareInList(c, organizationsQueries, personIds, from, to, 1);
+            try (ResultSet r = s.executeQuery()) {
+                while (r.next()) {
+                    long organisationId = r.getLong("PersonWorkAtOrganisation.organisationId");
+                    List<Object> organization = new ArrayList<>();
+                    organization.add(dimensions.getOrganisationName(organisationId));
+                    organization.add(r.getInt("PersonWorkAtOrganisation.workFrom"));
+                    organization.add(dimensions.getPlaceName(dimensions.getOrganisationPlaceId(organisationId)));
+                    organizations.get(r.getLong("PersonWorkAtOrganisation.personId")).add(organization);
+                }
+            }
+        }
+        return organizations;
+    }
+
+    /**
+     * Return every query these helpers prepare, for sessions to prepare them up front.
+     * @return the queries, including every version of the queries with IN lists
+     */
+    public static List<String> preparedQueries() {
+        List<String> queries = new ArrayList<>();
+        Collections.addAll(queries,
+            forumQuery, messageQuery, metadataQuery, rootPostQuery, postForumQuery, emailQuery, tagQuery,
+            friendshipQuery, friendQuery, languageQuery, postTagQuery, placeQuery, schoolQuery,
+            organizationQuery);
+        for (String[] inListQueries : new String[][] { friendsQueries, profilesQueries, emailsQueries, languagesQueries,
+                                                       placesQueries, schoolsQueries, organizationsQueries })
+            Collections.addAll(queries, inListQueries);
+        return queries;
+    }
+
 }
@@ -0,0 +1,200 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.utils;
+
+import java.util.Arrays;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The MessageCache class caches the creator and the parent of
+ * recently read or added messages.
+ *
+ * <p>Neither the creator nor the parent of a message ever changes, so
+ * LdbcUtils.getAuthorOf, getParentMessageId, and isMessageAPost
+ * answer from this cache when they can, and update queries 6 and 7
+ * add the messages they create.
+ *
+ * <p>The cache fits a fixed memory budget: it keeps three parallel
+ * arrays of longs (message, creator, and parent) and one of
+ * referenced bits, allocated once, with no object per message.  The
+ * arrays form a set-associative table: a message may only sit in one
+ * of the few slots of the set its identifier hashes to.  When a set
+ * is full, we evict with the CLOCK algorithm within the set: a hand
+ * sweeps the slots, clearing referenced bits, and evicts the first
+ * message not read since the last sweep.  A parent of -1 marks a
+ * post; a message identifier of -1 marks a free slot.
+ */
+public class MessageCache {
+
+    /** The default memory budget of the cache in bytes. */
+    public static final long defaultBudget = 64L << 20;
+
+    /** The parent of a post. */
+    public static final long noParent = -1;
+
+    /** The value returned for messages not in the cache. */
+    public static final long notCached = Long.MIN_VALUE;
+
+    // The number of bytes taken by one slot.
+    private static final int bytesPerSlot = 3 * 8 + 1;
+
+    // The number of slots per set.
+    private static final int ways = 4;
+
+    // The largest number of sets (so the arrays stay within bounds).
+    private static final int maxSetCount = 1 << 28;
+
+    // The number of locks guarding the sets (a power of two).
+    private static final int lockCount = 64;
+
+    // The cache used by the queries.
+    private static volatile MessageCache current = new MessageCache(defaultBudget);
+
+    private final long[] messageIds;
+    private final long[] creatorIds;
+    private final long[] parentIds;
+    private final boolean[] referenced;
+    // The position of the CLOCK hand of every set.
+    private final byte[] hands;
+    private final int setMask;
+    private final Object[] locks = new Object[lockCount];
+
+    // The number of lookups that found a message.
+    private final AtomicLong hits = new AtomicLong();
+
+    // The number of lookups that found no message.
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Construct a message cache.
+     * @param budget  A bound on the memory taken by the cache in bytes (too small a budget disables caching)
+     */
+    public MessageCache(long budget) {
+        // Use the largest power of two number of sets within budget.
+        long sets = budget / (bytesPerSlot * ways + 1);
+        int setCount = 0;
+        if (sets > 0)
+            setCount = (int)Math.min(Long.highestOneBit(sets), maxSetCount);
+        messageIds = new long[setCount * ways];
+        creatorIds = new long[setCount * ways];
+        parentIds = new long[setCount * ways];
+        referenced = new boolean[setCount * ways];
+        hands = new byte[setCount];
+        setMask = setCount - 1;
+        Arrays.fill(messageIds, -1);
+        for (int i = 0; i < lockCount; i++)
+            locks[i] = new Object();
+    }
+
+    /**
+     * Return the cache used by the queries.
+     * @return the current cache
+     */
+    public static MessageCache current() { return current; }
+
+    /**
+     * Install a cache for use by the queries.
+     * @param cache  A cache
+     */
+    public static void setCurrent(MessageCache cache) { current = cache; }
+
+    /**
+     * Return the creator of the given message.
+     * @param messageId  The message's unique identifier
+     * @return the identifier of the message's creator or notCached if the message is not cached
+     */
+    public long getCreatorId(long messageId) {
+        return lookup(messageId, creatorIds);
+    }
+
+    /**
+     * Return the parent of the given message.
+     * @param messageId  The message's unique identifier
+     * @return the identifier of the message's parent, noParent if the message is a post, or notCached if the message is not cached
+     */
+    public long getParentId(long messageId) {
+        return lookup(messageId, parentIds);
+    }
+
+    /**
+     * Cache a message, evicting another one if its set is full.
+     * @param messageId  The message's unique identifier
+     * @param creatorId  The identifier of the message's creator
+     * @param parentId   The identifier of the message's parent or noParent if the message is a post
+     */
+    public void put(long messageId, long creatorId, long parentId) {
+        if (hands.length == 0)
+            return;
+        int set = setOf(messageId);
+        int first = set * ways;
+        synchronized (locks[set & (lockCount - 1)]) {
+            int slot = -1;
+            for (int i = first; i < first + ways; i++) {
+                if (messageIds[i] == messageId) {
+                    slot = i;
+                    break;
+                }
+                if (slot == -1 && messageIds[i] == -1)
+                    slot = i;
+            }
+            if (slot == -1) {
+                int hand = hands[set];
+                while (referenced[first + hand]) {
+                    referenced[first + hand] = false;
+                    hand = (hand + 1) % ways;
+                }
+                slot = first + hand;
+                hands[set] = (byte)((hand + 1) % ways);
+            }
+            messageIds[slot] = messageId;
+            creatorIds[slot] = creatorId;
+            parentIds[slot] = parentId;
+            referenced[slot] = false;
+        }
+    }
+
+    /**
+     * Return the number of lookups that found a message so far.
+     * @return the number of cache hits
+     */
+    public long hits() { return hits.get(); }
+
+    /**
+     * Return the number of lookups that found no message so far.
+     * @return the number of cache misses
+     */
+    public long misses() { return misses.get(); }
+
+    /**
+     * Return the number of messages this cache can hold.
+     * @return the number of slots
+     */
+    public int capacity() { return messageIds.length; }
+
+    private long lookup(long messageId, long[] values) {
+        if (hands.length != 0) {
+            int set = setOf(messageId);
+            int first = set * ways;
+            synchronized (locks[set & (lockCount - 1)]) {
+                for (int i = first; i < first + ways; i++) {
+                    if (messageIds[i] == messageId) {
+                        referenced[i] = true;
+                        hits.incrementAndGet();
+                        return values[i];
+                    }
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return notCached;
+    }
+
+    private int setOf(long messageId) {
+        long h = messageId * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32)) & setMask;
+    }
+
+}
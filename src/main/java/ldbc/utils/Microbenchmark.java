@@ -6,11 +6,21 @@ package ldbc.queries;
 
 import com.zaxxer.hikari.HikariDataSource;
 
+import java.io.IOException;
+
+import java.sql.Connection;
 import java.sql.SQLException;
 
 import ldbc.glue.MySQLDbConnectionState;
 import ldbc.utils.Db;
 import ldbc.utils.Configuration;
+import ldbc.utils.ConnectedComponents;
+import ldbc.utils.DimensionCache;
+import ldbc.utils.EgoNetworkCache;
+import ldbc.utils.KnowsGraph;
+import ldbc.utils.LandmarkIndex;
+import ldbc.utils.MessageCache;
+import ldbc.utils.PersonCache;
 
 /**
  * The Microbenchmark class defines static functions to help run the
@@ -41,11 +51,27 @@ public class Microbenchmark {
             String url = "jdbc:mysql://" + config.host() + ":" + config.port() + "/" + config.database();
             String parameterFQN = config.parameterFilesDirectory() + "/" + queryParameterFilename;
 
-            MySQLDbConnectionState state = new MySQLDbConnectionState(url, config.user(), config.password());
+            if (config.beVerbose())
+                System.out.println(queryName + ": " + config.connectionSettings());
+            MySQLDbConnectionState state = new MySQLDbConnectionState(url, config.user(), config.password(), config.connectionSettings());
 
             HikariDataSource ds = state.getClient();
 
             try {
+                loadDimensionCache(ds);
+                if (config.useKnowsGraph() && config.knowsGraphFile() != null)
+                    KnowsGraph.setCurrent(KnowsGraph.open(config.knowsGraphFile()));
+                else if (config.useKnowsGraph())
+                    loadKnowsGraph(ds);
+                if (config.useConnectedComponents())
+                    loadConnectedComponents(ds);
+                if (KnowsGraph.current() != null && config.landmarkCount() > 0)
+                    LandmarkIndex.setCurrent(LandmarkIndex.build(KnowsGraph.current(), config.landmarkCount()));
+                EgoNetworkCache.setCurrent(new EgoNetworkCache(config.egoNetworkCacheSize()));
+                PersonCache.setCurrent(new PersonCache(config.personCacheSize()));
+                MessageCache.setCurrent(new MessageCache(config.messageCacheBudget()));
+                state.prepareSessions();
+
                 if (config.explain())
                     doExplainQueryWithParametersFromFile(query, ds, parameterFQN, queryParameterFileLinePattern);
                 else
@@ -60,6 +86,10 @@ public class Microbenchmark {
                 System.err.println(queryName + ": " + config.database() + ": " + e.getMessage());
                 System.exit(1);
             }
+            catch (IOException e) {
+                System.err.println(queryName + ": " + e.getMessage());
+                System.exit(1);
+            }
 
         }
         catch (Configuration.ConfigurationFileNotFoundException e) {
@@ -74,9 +104,54 @@ public class Microbenchmark {
             System.err.println(queryName + ": " + e.getMessage());
             System.exit(1);
         }
+        catch (Configuration.InvalidConfigurationException e) {
+            System.err.println(queryName + ": " + e.getMessage());
+            System.exit(1);
+        }
 
     }
 
+    /**
+     * Load the in-memory cache of static dimensions and make it available to the queries.
+     * @param ds  A database source
+     * @throws SQLException if a database access error occurs
+     */
+    private static void loadDimensionCache(HikariDataSource ds) throws SQLException {
+        try (Connection c = ds.getConnection()) {
+            DimensionCache.setCurrent(DimensionCache.load(c));
+            c.commit();
+        }
+    }
+
+    /**
+     * Load an in-memory snapshot of the Knows relationship and make it available to the queries.
+     * @param ds  A database source
+     * @throws SQLException if a database access error occurs
+     */
+    private static void loadKnowsGraph(HikariDataSource ds) throws SQLException {
+        try (Connection c = ds.getConnection()) {
+            KnowsGraph.setCurrent(KnowsGraph.load(c));
+            c.commit();
+        }
+    }
+
+    /**
+     * Index the connected components of the Knows relationship and make the index available to the queries.
+     * @param ds  A database source
+     * @throws SQLException if a database access error occurs
+     */
+    private static void loadConnectedComponents(HikariDataSource ds) throws SQLException {
+        KnowsGraph graph = KnowsGraph.current();
+        if (graph != null) {
+            ConnectedComponents.setCurrent(ConnectedComponents.build(graph));
+            return;
+        }
+        try (Connection c = ds.getConnection()) {
+            ConnectedComponents.setCurrent(ConnectedComponents.load(c));
+            c.commit();
+        }
+    }
+
     /**
      * Do execute a query, once per parameter line read from a file.
      * @param query  A function that executes queries with input from the substitution parameters
@@ -100,8 +175,13 @@ public class Microbenchmark {
 
         timer.stop();
 
-        if (measureLatency)
+        if (measureLatency) {
             timer.print(System.out);
+            PersonCache persons = PersonCache.current();
+            System.out.println("Person cache hits: " + persons.hits() + ", misses: " + persons.misses());
+            MessageCache messages = MessageCache.current();
+            System.out.println("Message cache hits: " + messages.hits() + ", misses: " + messages.misses());
+        }
 
     }
 
@@ -0,0 +1,180 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import ldbc.collections.Long2IntHashMap;
+
+import ldbc.helpers.PersonProfile;
+
+/**
+ * The PersonCache class caches the profiles of recently read persons.
+ *
+ * <p>Short read queries 1, 3, and 5 and the decoration of the results
+ * of complex read queries 3, 10, and 12 read the same persons over
+ * and over.  No update query changes a person once added, and update
+ * query 1 writes the profiles of new persons through to this cache,
+ * so cached profiles never go stale.
+ *
+ * <p>We bound the cache by the number of profiles it holds.  To let
+ * concurrent queries use it without contending for a single lock, we
+ * split it into segments by person identifier, each with its own lock.
+ * Every segment evicts with the CLOCK algorithm, an approximation of
+ * least recently used: a hand sweeps the slots in a circle, clearing
+ * the referenced bit of the profiles read since its last pass and
+ * evicting the first profile not read since.
+ */
+public class PersonCache {
+
+    /** The default bound on the number of profiles held by the cache. */
+    public static final int defaultCapacity = 200000;
+
+    // The number of segments (a power of two).
+    private static final int segmentCount = 16;
+
+    // The cache used by the queries.
+    private static volatile PersonCache current = new PersonCache(defaultCapacity);
+
+    // The segments of this cache.
+    private final Segment[] segments = new Segment[segmentCount];
+
+    // The number of lookups that found a profile.
+    private final AtomicLong hits = new AtomicLong();
+
+    // The number of lookups that found no profile.
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Construct a person cache.
+     * @param capacity  A bound on the number of profiles held by the cache (0 disables caching)
+     */
+    public PersonCache(int capacity) {
+        int segmentCapacity = (capacity + segmentCount - 1) / segmentCount;
+        for (int i = 0; i < segmentCount; i++)
+            segments[i] = new Segment(segmentCapacity);
+    }
+
+    /**
+     * Return the cache used by the queries.
+     * @return the current cache
+     */
+    public static PersonCache current() { return current; }
+
+    /**
+     * Install a cache for use by the queries.
+     * @param cache  A cache
+     */
+    public static void setCurrent(PersonCache cache) { current = cache; }
+
+    /**
+     * Return the cached profile of the given person.
+     * @param personId  The person's unique identifier
+     * @return the person's profile or null if not cached
+     */
+    public PersonProfile get(long personId) {
+        PersonProfile profile = segmentOf(personId).get(personId);
+        if (profile == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return profile;
+    }
+
+    /**
+     * Cache the profile of a person, evicting another one if the cache is full.
+     * @param profile  The person's profile
+     */
+    public void put(PersonProfile profile) {
+        segmentOf(profile.personId()).put(profile);
+    }
+
+    /**
+     * Return the number of lookups that found a profile so far.
+     * @return the number of cache hits
+     */
+    public long hits() { return hits.get(); }
+
+    /**
+     * Return the number of lookups that found no profile so far.
+     * @return the number of cache misses
+     */
+    public long misses() { return misses.get(); }
+
+    /**
+     * Return the number of profiles held by this cache.
+     * @return the number of cached profiles
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments)
+            size += segment.size();
+        return size;
+    }
+
+    private Segment segmentOf(long personId) {
+        // Use the high bits of the hash code; each segment's map
+        // uses the low ones.
+        return segments[(int)((personId * 0x9E3779B97F4A7C15L) >>> 60) & (segmentCount - 1)];
+    }
+
+    /**
+     * A segment of the cache, with a fixed number of slots.
+     */
+    private static class Segment {
+        // The slot of every cached person.
+        private final Long2IntHashMap slots;
+        private final long[] personIds;
+        private final PersonProfile[] profiles;
+        private final boolean[] referenced;
+        // The number of slots in use; all slots past this one are free.
+        private int used = 0;
+        // The next slot the CLOCK hand considers for eviction.
+        private int hand = 0;
+
+        private Segment(int capacity) {
+            slots = new Long2IntHashMap(capacity);
+            personIds = new long[capacity];
+            profiles = new PersonProfile[capacity];
+            referenced = new boolean[capacity];
+        }
+
+        private synchronized PersonProfile get(long personId) {
+            int i = slots.get(personId, -1);
+            if (i == -1)
+                return null;
+            referenced[i] = true;
+            return profiles[i];
+        }
+
+        private synchronized void put(PersonProfile profile) {
+            if (profiles.length == 0)
+                return;
+            int i = slots.get(profile.personId(), -1);
+            if (i != -1) {
+                profiles[i] = profile;
+                return;
+            }
+            if (used < profiles.length)
+                i = used++;
+            else {
+                while (referenced[hand]) {
+                    referenced[hand] = false;
+                    hand = (hand + 1) % profiles.length;
+                }
+                i = hand;
+                hand = (hand + 1) % profiles.length;
+                slots.remove(personIds[i]);
+            }
+            personIds[i] = profile.personId();
+            profiles[i] = profile;
+            referenced[i] = false;
+            slots.put(profile.personId(), i);
+        }
+
+        private synchronized int size() { return used; }
+    }
+
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.utils;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The StatementCache class keeps the prepared statements of every
+ * physical database connection so each SQL query is prepared once per
+ * connection rather than once per use.
+ *
+ * <p>The connection pool hands out a new wrapper around a physical
+ * connection every time and closes the statements prepared through
+ * that wrapper when it is returned.  We prepare the statements on the
+ * physical connection underneath instead, so they outlive the
+ * wrapper.  A physical connection is only used by one thread at a
+ * time, hence so are its statements.  For the same reason, the pool
+ * does not see what they leave uncommitted, so callers must borrow
+ * connections through {@link Transaction}, which rolls back what it
+ * did not commit.
+ *
+ * <p>The statements of a physical connection form its session.  The
+ * operations register the queries they run with prepareUpFront, and
+ * the first use of a physical connection prepares them all at once,
+ * so no operation pays for a server-side prepare in the middle of a
+ * run.  Queries not registered are prepared on first use instead.
+ *
+ * <p>Callers must neither close the statements they get nor keep
+ * them past the use of the connection, and must close the result
+ * sets they get from them before preparing the same query again.
+ * The cache never evicts a statement, so it must only hold a fixed
+ * set of queries.
+ */
+public class StatementCache {
+
+    // The prepared statements of every physical connection, by SQL query.
+    private static final Map<Connection, Map<String, PreparedStatement>> statements = new IdentityHashMap<>();
+
+    // The queries prepared as soon as a physical connection is first used.
+    private static final Set<String> upFrontQueries = new LinkedHashSet<>();
+
+    /** A minimal constructor. */
+    private StatementCache() {}
+
+    /**
+     * Return a prepared statement for a query on a connection.
+     * @param c    A database connection
+     * @param sql  An SQL query with parameters
+     * @return the statement prepared for the given query on the physical connection behind the given one
+     * @throws SQLException if a database access error occurs
+     */
+    public static PreparedStatement prepare(Connection c, String sql) throws SQLException {
+        Connection physical = c.unwrap(Connection.class);
+        Map<String, PreparedStatement> connectionStatements = statementsOf(physical);
+
+        PreparedStatement s = connectionStatements.get(sql);
+        if (s == null || s.isClosed()) {
+            s = physical.prepareStatement(sql);
+            connectionStatements.put(sql, s);
+        }
+        else
+            s.clearParameters();
+        return s;
+    }
+
+    /**
+     * Register queries to prepare on every physical connection as soon as it is first used.
+     * @param queries  SQL queries with parameters
+     */
+    public static void prepareUpFront(String... queries) {
+        prepareUpFront(Arrays.asList(queries));
+    }
+
+    /**
+     * Register queries to prepare on every physical connection as soon as it is first used.
+     * @param queries  SQL queries with parameters
+     */
+    public static synchronized void prepareUpFront(Collection<String> queries) {
+        upFrontQueries.addAll(queries);
+    }
+
+    /**
+     * Open the session of the physical connection behind a connection,
+     * preparing the registered queries unless already done.
+     * @param c  A database connection
+     * @throws SQLException if a database access error occurs
+     */
+    public static void openSession(Connection c) throws SQLException {
+        statementsOf(c.unwrap(Connection.class));
+    }
+
+    private static Map<String, PreparedStatement> statementsOf(Connection physical) throws SQLException {
+        Map<String, PreparedStatement> connectionStatements;
+        List<String> queries;
+        synchronized (StatementCache.class) {
+            connectionStatements = statements.get(physical);
+            if (connectionStatements != null)
+                return connectionStatements;
+
+            // Forget the connections the pool has retired.
+            Iterator<Connection> i = statements.keySet().iterator();
+            while (i.hasNext())
+                if (i.next().isClosed())
+                    i.remove();
+
+            connectionStatements = new HashMap<>();
+            statements.put(physical, connectionStatements);
+            queries = new ArrayList<>(upFrontQueries);
+        }
+
+        // Only the thread holding the connection uses its statements,
+        // so we prepare them outside the lock.
+        for (String sql : queries)
+            connectionStatements.put(sql, physical.prepareStatement(sql));
+        return connectionStatements;
+    }
+
+}
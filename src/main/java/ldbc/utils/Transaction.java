@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2019 Alain Kägi
+ */
+
+package ldbc.utils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+/**
+ * The Transaction class borrows a connection from a pool for the
+ * length of one transaction.
+ *
+ * <p>The statements of StatementCache run on the physical connection
+ * underneath the pool's wrapper, out of the pool's sight, so the pool
+ * does not roll back what they leave uncommitted when the connection
+ * is returned.  An operation that fails before committing would hand
+ * its open transaction, with its writes, locks, and snapshot, to the
+ * next borrower of the connection.  Closing a transaction that was
+ * not committed therefore rolls it back before returning the
+ * connection.  Use it in a try-with-resources statement:
+ *
+ * <pre>
+ *     try (Transaction t = new Transaction(ds)) {
+ *         Connection c = t.connection();
+ *         ...
+ *         t.commit();
+ *     }
+ * </pre>
+ */
+public class Transaction implements AutoCloseable {
+
+    private final Connection c;
+    private boolean committed = false;
+
+    /**
+     * Borrow a connection and start a transaction on it.
+     * @param ds  A pool of connections that do not commit automatically
+     * @throws SQLException if a database access error occurs
+     */
+    public Transaction(DataSource ds) throws SQLException {
+        c = ds.getConnection();
+    }
+
+    /**
+     * Return the connection of this transaction.
+     * @return a database connection
+     */
+    public Connection connection() { return c; }
+
+    /**
+     * Commit this transaction.
+     * @throws SQLException if a database access error occurs
+     */
+    public void commit() throws SQLException {
+        c.commit();
+        committed = true;
+    }
+
+    /**
+     * Roll this transaction back unless committed and return the connection to the pool.
+     * @throws SQLException if a database access error occurs
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (!committed)
+                c.rollback();
+        }
+        finally {
+            c.close();
+        }
+    }
+
+}